@@ -132,8 +132,8 @@ public class AngleJoint implements Joint {
 	public void applyImpulse() {
 		if (bounceSide == BOUNCE_NONE)
 			return;
-		Matrix2f rot1 = new Matrix2f(body1.getRotation());
-		Matrix2f rot2 = new Matrix2f(body2.getRotation());
+		Matrix2f rot1 = body1.getWorldGeometry().getRotation();
+		Matrix2f rot2 = body2.getWorldGeometry().getRotation();
 		Vector2f r1 = MathUtil.mul(rot1, anchor1);
 		Vector2f r2 = MathUtil.mul(rot2, anchor2);
 
@@ -211,8 +211,8 @@ public class AngleJoint implements Joint {
 		Vector2f VA = new Vector2f((float) Math.cos(RA), (float) Math.sin(RA));
 		Vector2f VB = new Vector2f((float) Math.cos(RB), (float) Math.sin(RB));
 
-		Matrix2f rot1 = new Matrix2f(body1.getRotation());
-		Matrix2f rot2 = new Matrix2f(body2.getRotation());
+		Matrix2f rot1 = body1.getWorldGeometry().getRotation();
+		Matrix2f rot2 = body2.getWorldGeometry().getRotation();
 		Vector2f r1 = MathUtil.mul(rot1, anchor1);
 		Vector2f r2 = MathUtil.mul(rot2, anchor2);
 
@@ -41,7 +41,12 @@
 package net.phys2d.raw;
 
 import net.phys2d.math.MathUtil;
+import net.phys2d.math.ROVector2f;
 import net.phys2d.math.Vector2f;
+import net.phys2d.raw.collide.CachingCollider;
+import net.phys2d.raw.collide.Collider;
+import net.phys2d.raw.collide.SeparatingAxis;
+import net.phys2d.raw.shapes.Shape;
 
 /**
  * A arbiter resolving contacts between a pair of bodies
@@ -51,6 +56,10 @@ import net.phys2d.math.Vector2f;
 public strictfp class Arbiter {
 	/** The maximum number of points of contact */
 	public static final int MAX_POINTS = 10;
+	/** The number of points of contact a manifold is reduced to */
+	public static final int REDUCED_POINTS = 2;
+	/** The minimum cosine between the normals of the two points kept by a reduction */
+	private static final float REDUCED_NORMAL_AGREEMENT = 0.7f;
 
 	/** The contacts being resolved by this arbiter */
 	private Contact[] contacts = new Contact[MAX_POINTS];
@@ -62,9 +71,22 @@ public strictfp class Arbiter {
 	private Body body2;
 	/** Combined friction between two bodies */
 	private float friction;
-        
-        /*scale temp variable*/
-        private Vector2f scaleTemp = new Vector2f();
+	/** The collider used between the two bodies */
+	private Collider collider;
+	/** The shape of the first body when the collider was chosen */
+	private Shape colliderShape1;
+	/** The shape of the second body when the collider was chosen */
+	private Shape colliderShape2;
+	/** The axis last found to separate the bodies, kept for the collider */
+	private SeparatingAxis separatingAxis = new SeparatingAxis();
+	/** The step the pair was last found in by the collision space */
+	int stamp;
+	/** The map holding this arbiter, or null if it isn't held */
+	ArbiterMap map;
+	/** The index of this arbiter in the first body's list of arbiters */
+	private int index1;
+	/** The index of this arbiter in the second body's list of arbiters */
+	private int index2;
 	
         
         Arbiter(Body b1, Body b2, boolean w)
@@ -90,6 +112,86 @@ public strictfp class Arbiter {
 
 	}
 	
+	/**
+	 * Create a new arbiter holding contacts that have already been 
+	 * found - this should only be done by the engine
+	 * 
+	 * @param b1 The first body in contact
+	 * @param b2 The second body in contact
+	 * @param newContacts The contacts found between the bodies, these are copied
+	 * @param numNewContacts The number of contacts found
+	 */
+	Arbiter(Body b1, Body b2, Contact[] newContacts, int numNewContacts) {
+		this(b1, b2);
+		
+		for (int i=0;i<numNewContacts;i++) {
+			contacts[i].set(newContacts[i]);
+		}
+		numContacts = numNewContacts;
+	}
+	
+	/**
+	 * Reduce a set of contacts to the two that best describe the manifold,
+	 * the deepest contact and the one furthest from it. Contacts are
+	 * reordered rather than copied so their feature pairs are kept for 
+	 * warm starting. Contacts pushing in clearly different directions, as
+	 * concave shapes touching in several places give, are left alone since
+	 * dropping any of them would let that part of the bodies sink in.
+	 * 
+	 * @param contacts The contacts found between two bodies
+	 * @param numContacts The number of contacts found
+	 * @return The number of contacts left at the start of the array
+	 */
+	static int reduce(Contact[] contacts, int numContacts) {
+		if (numContacts <= REDUCED_POINTS) {
+			return numContacts;
+		}
+		
+		int deepest = 0;
+		for (int i=1;i<numContacts;i++) {
+			if (contacts[i].separation < contacts[deepest].separation) {
+				deepest = i;
+			}
+		}
+		
+		Contact first = contacts[deepest];
+		int furthest = -1;
+		float maxDistance = -1;
+		for (int i=0;i<numContacts;i++) {
+			Contact c = contacts[i];
+			if (c.normal.dot(first.normal) < REDUCED_NORMAL_AGREEMENT) {
+				return numContacts;
+			}
+			float dx = c.position.x - first.position.x;
+			float dy = c.position.y - first.position.y;
+			float distance = (dx * dx) + (dy * dy);
+			
+			if ((i != deepest) && (distance > maxDistance)) {
+				maxDistance = distance;
+				furthest = i;
+			}
+		}
+		
+		// the contact at the start is moved to where the deepest was
+		swap(contacts, 0, deepest);
+		swap(contacts, 1, furthest == 0 ? deepest : furthest);
+		
+		return REDUCED_POINTS;
+	}
+	
+	/**
+	 * Swap two contacts in an array
+	 * 
+	 * @param contacts The array of contacts
+	 * @param i The index of the first contact
+	 * @param j The index of the second contact
+	 */
+	private static void swap(Contact[] contacts, int i, int j) {
+		Contact temp = contacts[i];
+		contacts[i] = contacts[j];
+		contacts[j] = temp;
+	}
+	
 	/**
 	 * Check if this arbiter has two bodies that are resting
 	 * 
@@ -99,6 +201,16 @@ public strictfp class Arbiter {
 		return body1.isResting() && body2.isResting();
 	}
 	
+	/**
+	 * Check if either of the bodies of this arbiter is asleep, in which case
+	 * their whole island is and the arbiter needn't be solved
+	 * 
+	 * @return True if the arbiter concerns a sleeping body
+	 */
+	boolean isAsleep() {
+		return body1.isAsleep() || body2.isAsleep();
+	}
+	
 	/**
 	 * Perform the collision analysis between the two bodies 
 	 * arbitrated
@@ -106,9 +218,34 @@ public strictfp class Arbiter {
 	 * @param dt The amount of time passed since last collision check
 	 */
 	public void collide(float dt) {
-		numContacts = Collide.collide(contacts, body1, body2, dt);
+		Collider collider = getCollider();
+		
+		if (collider instanceof CachingCollider) {
+			numContacts = ((CachingCollider) collider).collide(contacts, body1, body2, separatingAxis);
+		} else {
+			numContacts = collider.collide(contacts, body1, body2);
+		}
 	} 
 	
+	/**
+	 * Get the collider used between the two bodies. The collider is
+	 * looked up once and kept until either body's shape changes.
+	 * 
+	 * @return The collider for the two bodies
+	 */
+	Collider getCollider() {
+		Shape shape1 = body1.getShape();
+		Shape shape2 = body2.getShape();
+		
+		if ((collider == null) || (shape1 != colliderShape1) || (shape2 != colliderShape2)) {
+			collider = Collide.getCollider(body1, body2);
+			colliderShape1 = shape1;
+			colliderShape2 = shape2;
+		}
+		
+		return collider;
+	}
+	
 	/**
 	 * Get one of the two contacts handled being handled by this
 	 * arbiter
@@ -132,6 +269,15 @@ public strictfp class Arbiter {
 		}
 	}
 
+	/**
+	 * Get the combined friction between the two bodies
+	 * 
+	 * @return The friction applied at each contact
+	 */
+	float getFriction() {
+		return friction;
+	}
+	
 	/**
 	 * Retrieve the contacts being resolved by this arbiter
 	 * 
@@ -170,52 +316,60 @@ public strictfp class Arbiter {
 	
 	/**
 	 * Update this arbiter from a second set of data determined
-	 * as the simulation continues
+	 * as the simulation continues. The accumulated impulses of contacts 
+	 * whose features match are carried into the new contacts before they
+	 * are copied, so the new contacts are modified.
 	 * 
 	 * @param newContacts The new contacts that have been found
 	 * @param numNewContacts The number of new contacts discovered
 	 */
 	void update(Contact[] newContacts, int numNewContacts) {
-		Contact[] mergedContacts = new Contact[MAX_POINTS];
-		for (int i=0;i<mergedContacts.length;i++) {
-			mergedContacts[i] = new Contact();
-		}
-		
 		for (int i = 0; i < numNewContacts; ++i)
 		{
 			Contact cNew = newContacts[i];
-			int k = -1;
 			for (int j = 0; j < numContacts; ++j)
 			{
 				Contact cOld = contacts[j];
 				if (cNew.feature.equals(cOld.feature))
 				{
-					k = j;
+					cNew.accumulatedNormalImpulse = cOld.accumulatedNormalImpulse;
+					cNew.accumulatedTangentImpulse = cOld.accumulatedTangentImpulse;
 					break;
 				}
 			}
-
-			if (k > -1)
-			{
-				Contact c = mergedContacts[i];
-				Contact cOld = contacts[k];
-				c.set(cNew);
-				c.accumulatedNormalImpulse = cOld.accumulatedNormalImpulse;
-				c.accumulatedTangentImpulse = cOld.accumulatedTangentImpulse;
-			}
-			else
-			{
-				mergedContacts[i].set(newContacts[i]);
-			}
 		}
 
 		for (int i = 0; i < numNewContacts; ++i) {
-			contacts[i].set(mergedContacts[i]);
+			contacts[i].set(newContacts[i]);
 		}
 
 		numContacts = numNewContacts;
 	}
 
+	/**
+	 * Set the index of this arbiter in one of its bodies' list of arbiters
+	 * 
+	 * @param body The body whose list holds this arbiter
+	 * @param index The index of this arbiter in the list
+	 */
+	void setIndex(Body body, int index) {
+		if (body == body1) {
+			index1 = index;
+		} else {
+			index2 = index;
+		}
+	}
+	
+	/**
+	 * Get the index of this arbiter in one of its bodies' list of arbiters
+	 * 
+	 * @param body The body whose list holds this arbiter
+	 * @return The index of this arbiter in the list
+	 */
+	int getIndex(Body body) {
+		return body == body1 ? index1 : index2;
+	}
+	
 	/**
 	 * Check if this arbiter affects the specified body
 	 * 
@@ -240,39 +394,55 @@ public strictfp class Arbiter {
 		float allowedPenetration = 0.01f;
 		float biasFactor = 0.8f;
 		
+		Body b1 = body1;
+		Body b2 = body2;
+		float invMass1 = b1.getInvMass();
+		float invMass2 = b2.getInvMass();
+		float invI1 = b1.getInvI();
+		float invI2 = b2.getInvI();
+		float combinedRestitution = (b1.getRestitution() * b2.getRestitution());
+		
 		for (int i = 0; i < numContacts; ++i)
 		{
 			Contact c = contacts[i];
 			c.normal.normalise();
+			float nx = c.normal.x;
+			float ny = c.normal.y;
 			
-			Vector2f r1 = new Vector2f(c.position);
-			r1.sub(body1.getPosition());
-			Vector2f r2 = new Vector2f(c.position);
-			r2.sub(body2.getPosition());
+			float r1x = c.position.x - b1.getPosition().getX();
+			float r1y = c.position.y - b1.getPosition().getY();
+			float r2x = c.position.x - b2.getPosition().getX();
+			float r2y = c.position.y - b2.getPosition().getY();
+			c.r1.set(r1x, r1y);
+			c.r2.set(r2x, r2y);
 
 			// Precompute normal mass, tangent mass, and bias.
-			float rn1 = r1.dot(c.normal);
-			float rn2 = r2.dot(c.normal);
-			float kNormal = body1.getInvMass() + body2.getInvMass();
-			kNormal += body1.getInvI() * (r1.dot(r1) - rn1 * rn1) + body2.getInvI() * (r2.dot(r2) - rn2 * rn2);
+			float rn1 = (r1x * nx) + (r1y * ny);
+			float rn2 = (r2x * nx) + (r2y * ny);
+			float r1r1 = (r1x * r1x) + (r1y * r1y);
+			float r2r2 = (r2x * r2x) + (r2y * r2y);
+			float kNormal = invMass1 + invMass2;
+			kNormal += invI1 * (r1r1 - rn1 * rn1) + invI2 * (r2r2 - rn2 * rn2);
 			c.massNormal = damping / kNormal;
 			
-			Vector2f tangent = MathUtil.cross(c.normal, 1.0f);
-			float rt1 = r1.dot(tangent);
-			float rt2 = r2.dot(tangent);
-			float kTangent = body1.getInvMass() + body2.getInvMass();
-			kTangent += body1.getInvI() * (r1.dot(r1) - rt1 * rt1) + body2.getInvI() * (r2.dot(r2) - rt2 * rt2);
+			// the tangent is the normal crossed with 1
+			float tx = ny;
+			float ty = -nx;
+			c.tangent.set(tx, ty);
+			float rt1 = (r1x * tx) + (r1y * ty);
+			float rt2 = (r2x * tx) + (r2y * ty);
+			float kTangent = invMass1 + invMass2;
+			kTangent += invI1 * (r1r1 - rt1 * rt1) + invI2 * (r2r2 - rt2 * rt2);
 			c.massTangent = damping / kTangent;
 
 			// Compute restitution
 			// Relative velocity at contact 
-			Vector2f relativeVelocity =  new Vector2f(body2.getVelocity());
-			relativeVelocity.add(MathUtil.cross(r2, body2.getAngularVelocity()));
-			relativeVelocity.sub(body1.getVelocity());
-			relativeVelocity.sub(MathUtil.cross(r1, body1.getAngularVelocity()));
+			float w1 = b1.getAngularVelocity();
+			float w2 = b2.getAngularVelocity();
+			float dvx = b2.getVelocity().getX() + (w2 * r2y) - b1.getVelocity().getX() - (w1 * r1y);
+			float dvy = b2.getVelocity().getY() + (-w2 * r2x) - b1.getVelocity().getY() - (-w1 * r1x);
 			
-			float combinedRestitution = (body1.getRestitution() * body2.getRestitution());
-			float relVel = c.normal.dot(relativeVelocity);
+			float relVel = (nx * dvx) + (ny * dvy);
 			c.restitution = combinedRestitution * -relVel;
 			c.restitution = Math.max(c.restitution, 0);
 			
@@ -287,18 +457,15 @@ public strictfp class Arbiter {
 			c.accumulatedNormalImpulse *= damping;
 			
 			// Apply normal + friction impulse
-			Vector2f impulse = MathUtil.scale(c.normal, c.accumulatedNormalImpulse);
-			impulse.add(MathUtil.scale(tangent, c.accumulatedTangentImpulse));
+			float px = (nx * c.accumulatedNormalImpulse) + (tx * c.accumulatedTangentImpulse);
+			float py = (ny * c.accumulatedNormalImpulse) + (ty * c.accumulatedTangentImpulse);
 			
-                        
-                        body1.adjustVelocity(MathUtil.scale(impulse, -body1.getInvMass()));
-                        body1.adjustAngularVelocity(-body1.getInvI() * MathUtil.cross(r1, impulse));
+			b1.adjustVelocity(px * -invMass1, py * -invMass1);
+			b1.adjustAngularVelocity(-invI1 * ((r1x * py) - (r1y * px)));
 
-
-
-                        body2.adjustVelocity(MathUtil.scale(impulse, body2.getInvMass()));
-                        body2.adjustAngularVelocity(body2.getInvI() * MathUtil.cross(r2, impulse));
-                        
+			b2.adjustVelocity(px * invMass2, py * invMass2);
+			b2.adjustAngularVelocity(invI2 * ((r2x * py) - (r2y * px)));
+			
 			// rest bias
 			c.biasImpulse = 0;
 		}
@@ -306,133 +473,115 @@ public strictfp class Arbiter {
 
 	/**
 	 * Apply the impulse accumlated at the contact points maintained
-	 * by this arbiter.
+	 * by this arbiter. This uses the contact offsets and tangents 
+	 * worked out by {@link #preStep(float, float, float)}.
 	 */
-	void applyImpulse()
-        {
-            Body b1 = body1;
-            Body b2 = body2;
-
-            for (int i = 0; i < numContacts; ++i)
-            {
-                Contact c = contacts[i];
-
-                Vector2f r1 = new Vector2f(c.position);
-                r1.sub(b1.getPosition());
-                Vector2f r2 = new Vector2f(c.position);
-                r2.sub(b2.getPosition());
-
-                // Relative velocity at contact
-                Vector2f relativeVelocity =  new Vector2f(b2.getVelocity());
-                relativeVelocity.add(MathUtil.cross(b2.getAngularVelocity(), r2));
-                relativeVelocity.sub(b1.getVelocity());
-                relativeVelocity.sub(MathUtil.cross(b1.getAngularVelocity(), r1));
-
-                // Compute normal impulse with bias.
-                float vn = relativeVelocity.dot(c.normal);
-
-                // bias caculations are now handled seperately hence we only
-                // handle the real impulse caculations here
-                //float normalImpulse = c.massNormal * ((c.restitution - vn) + c.bias);
-                float normalImpulse = c.massNormal * (c.restitution - vn);
-
-                // Clamp the accumulated impulse
-                float oldNormalImpulse = c.accumulatedNormalImpulse;
-                c.accumulatedNormalImpulse = Math.max(oldNormalImpulse + normalImpulse, 0.0f);
-                normalImpulse = c.accumulatedNormalImpulse - oldNormalImpulse;
-
-                // Apply contact impulse
-
-                Vector2f impulse = MathUtil.scale(c.normal, normalImpulse);
-                
-                scaleTemp.set(impulse);
-                scaleTemp.scale(-b1.getInvMass()); 
-          
-                
-                b1.adjustVelocity(scaleTemp);
-                b1.adjustAngularVelocity(-(b1.getInvI() * MathUtil.cross(r1, impulse)));
-                
-
-                scaleTemp.set(impulse);
-                scaleTemp.scale(b2.getInvMass()); 
-                       
-                
-                b2.adjustVelocity(scaleTemp);
-                b2.adjustAngularVelocity(b2.getInvI() * MathUtil.cross(r2, impulse));
-                
-
-                // Compute bias impulse
-                // NEW STUFF FOR SEPERATING BIAS
-                relativeVelocity.set(b2.getBiasedVelocity());
-                relativeVelocity.add(MathUtil.cross(b2.getBiasedAngularVelocity(), r2));
-                relativeVelocity.sub(b1.getBiasedVelocity());
-                relativeVelocity.sub(MathUtil.cross(b1.getBiasedAngularVelocity(), r1));
-                float vnb = relativeVelocity.dot(c.normal);
-
-                float biasImpulse = c.massNormal * (-vnb + c.bias);
-                float oldBiasImpulse = c.biasImpulse;
-                c.biasImpulse = Math.max(oldBiasImpulse + biasImpulse, 0.0f);
-                biasImpulse = c.biasImpulse - oldBiasImpulse;
-
-                Vector2f Pb = MathUtil.scale(c.normal, biasImpulse);
-
-                scaleTemp.set(Pb);
-                scaleTemp.scale(-b1.getInvMass()); 
-                
-                
-                b1.adjustBiasedVelocity(scaleTemp);
-                b1.adjustBiasedAngularVelocity(-(b1.getInvI() * MathUtil.cross(r1, Pb)));
-                
-                scaleTemp.set(Pb);
-                scaleTemp.scale(b2.getInvMass()); 
-                
-               
-                b2.adjustBiasedVelocity(scaleTemp);
-                b2.adjustBiasedAngularVelocity((b2.getInvI() * MathUtil.cross(r2, Pb)));
-                
-
-                // END NEW STUFF
-
-                //
-                // Compute friction (tangent) impulse
-                //
-                float maxTangentImpulse = friction * c.accumulatedNormalImpulse;
-
-                // Relative velocity at contact
-                relativeVelocity.set(b2.getVelocity());
-                relativeVelocity.add(MathUtil.cross(b2.getAngularVelocity(), r2));
-                relativeVelocity.sub(b1.getVelocity());
-                relativeVelocity.sub(MathUtil.cross(b1.getAngularVelocity(), r1));
-
-                Vector2f tangent = MathUtil.cross(c.normal, 1.0f);
-                float vt = relativeVelocity.dot(tangent);
-                float tangentImpulse = c.massTangent * (-vt);
-
-                // Clamp friction
-                float oldTangentImpulse = c.accumulatedTangentImpulse;
-                c.accumulatedTangentImpulse = MathUtil.clamp(oldTangentImpulse + tangentImpulse, -maxTangentImpulse, maxTangentImpulse);
-                tangentImpulse = c.accumulatedTangentImpulse - oldTangentImpulse;
-
-                // Apply contact impulse
-                impulse = MathUtil.scale(tangent, tangentImpulse);
-                
-                scaleTemp.set(impulse);
-                scaleTemp.scale(-b1.getInvMass());
-
-                
-                b1.adjustVelocity(scaleTemp);
-                b1.adjustAngularVelocity(-b1.getInvI() * MathUtil.cross(r1, impulse));
-                
-                
-                scaleTemp.set(impulse);
-                scaleTemp.scale(b2.getInvMass());
-
-                
-                b2.adjustVelocity(scaleTemp);
-                b2.adjustAngularVelocity(b2.getInvI() * MathUtil.cross(r2, impulse));
-                
-            }
+	void applyImpulse() {
+		Body b1 = body1;
+		Body b2 = body2;
+		float invMass1 = b1.getInvMass();
+		float invMass2 = b2.getInvMass();
+		float invI1 = b1.getInvI();
+		float invI2 = b2.getInvI();
+		ROVector2f v1 = b1.getVelocity();
+		ROVector2f v2 = b2.getVelocity();
+		ROVector2f vb1 = b1.getBiasedVelocity();
+		ROVector2f vb2 = b2.getBiasedVelocity();
 
+		for (int i = 0; i < numContacts; ++i)
+		{
+			Contact c = contacts[i];
+			float nx = c.normal.x;
+			float ny = c.normal.y;
+			float r1x = c.r1.x;
+			float r1y = c.r1.y;
+			float r2x = c.r2.x;
+			float r2y = c.r2.y;
+
+			// Relative velocity at contact
+			float w1 = b1.getAngularVelocity();
+			float w2 = b2.getAngularVelocity();
+			float dvx = v2.getX() + (-w2 * r2y) - v1.getX() - (-w1 * r1y);
+			float dvy = v2.getY() + (w2 * r2x) - v1.getY() - (w1 * r1x);
+
+			// Compute normal impulse with bias.
+			float vn = (dvx * nx) + (dvy * ny);
+
+			// bias caculations are now handled seperately hence we only
+			// handle the real impulse caculations here
+			//float normalImpulse = c.massNormal * ((c.restitution - vn) + c.bias);
+			float normalImpulse = c.massNormal * (c.restitution - vn);
+
+			// Clamp the accumulated impulse
+			float oldNormalImpulse = c.accumulatedNormalImpulse;
+			c.accumulatedNormalImpulse = Math.max(oldNormalImpulse + normalImpulse, 0.0f);
+			normalImpulse = c.accumulatedNormalImpulse - oldNormalImpulse;
+
+			// Apply contact impulse
+			float px = nx * normalImpulse;
+			float py = ny * normalImpulse;
+			
+			b1.adjustVelocity(px * -invMass1, py * -invMass1);
+			b1.adjustAngularVelocity(-(invI1 * ((r1x * py) - (r1y * px))));
+			
+			b2.adjustVelocity(px * invMass2, py * invMass2);
+			b2.adjustAngularVelocity(invI2 * ((r2x * py) - (r2y * px)));
+
+			// Compute bias impulse
+			// NEW STUFF FOR SEPERATING BIAS
+			float wb1 = b1.getBiasedAngularVelocity();
+			float wb2 = b2.getBiasedAngularVelocity();
+			dvx = vb2.getX() + (-wb2 * r2y) - vb1.getX() - (-wb1 * r1y);
+			dvy = vb2.getY() + (wb2 * r2x) - vb1.getY() - (wb1 * r1x);
+			float vnb = (dvx * nx) + (dvy * ny);
+
+			float biasImpulse = c.massNormal * (-vnb + c.bias);
+			float oldBiasImpulse = c.biasImpulse;
+			c.biasImpulse = Math.max(oldBiasImpulse + biasImpulse, 0.0f);
+			biasImpulse = c.biasImpulse - oldBiasImpulse;
+
+			float pbx = nx * biasImpulse;
+			float pby = ny * biasImpulse;
+			
+			b1.adjustBiasedVelocity(pbx * -invMass1, pby * -invMass1);
+			b1.adjustBiasedAngularVelocity(-(invI1 * ((r1x * pby) - (r1y * pbx))));
+			
+			b2.adjustBiasedVelocity(pbx * invMass2, pby * invMass2);
+			b2.adjustBiasedAngularVelocity((invI2 * ((r2x * pby) - (r2y * pbx))));
+
+			// END NEW STUFF
+
+			//
+			// Compute friction (tangent) impulse
+			//
+			float maxTangentImpulse = friction * c.accumulatedNormalImpulse;
+
+			// Relative velocity at contact
+			w1 = b1.getAngularVelocity();
+			w2 = b2.getAngularVelocity();
+			dvx = v2.getX() + (-w2 * r2y) - v1.getX() - (-w1 * r1y);
+			dvy = v2.getY() + (w2 * r2x) - v1.getY() - (w1 * r1x);
+
+			float tx = c.tangent.x;
+			float ty = c.tangent.y;
+			float vt = (dvx * tx) + (dvy * ty);
+			float tangentImpulse = c.massTangent * (-vt);
+
+			// Clamp friction
+			float oldTangentImpulse = c.accumulatedTangentImpulse;
+			c.accumulatedTangentImpulse = MathUtil.clamp(oldTangentImpulse + tangentImpulse, -maxTangentImpulse, maxTangentImpulse);
+			tangentImpulse = c.accumulatedTangentImpulse - oldTangentImpulse;
+
+			// Apply contact impulse
+			px = tx * tangentImpulse;
+			py = ty * tangentImpulse;
+			
+			b1.adjustVelocity(px * -invMass1, py * -invMass1);
+			b1.adjustAngularVelocity(-invI1 * ((r1x * py) - (r1y * px)));
+			
+			b2.adjustVelocity(px * invMass2, py * invMass2);
+			b2.adjustAngularVelocity(invI2 * ((r2x * py) - (r2y * px)));
+		}
 	}
 	
 	/**
@@ -478,8 +627,13 @@ public strictfp class Arbiter {
 		return false;
 	}
         
-        protected String keyCode()
+        /**
+         * Get the key identifying the pair of bodies this arbiter resolves
+         * 
+         * @return The key of the pair, see <code>PairList.getKey()</code>
+         */
+        protected long keyCode()
         {
-            return String.valueOf(body1.hashCode()) + String.valueOf(body2.hashCode());
+            return PairList.getKey(body1, body2);
         }
 }
@@ -0,0 +1,310 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+/**
+ * A map from pairs of bodies to the arbiter resolving them. The pairs are 
+ * keyed by the packed ID of the two bodies (see <code>PairList.getKey()</code>)
+ * so looking up an arbiter doesn't build or hash any strings.
+ * <p>
+ * The arbiters are held in a dense array which is iterated by index, e.g.
+ * <code>for (int i=0;i<map.size();i++) map.getArbiter(i)</code>. The order
+ * is the order the arbiters were added in except that removing an arbiter
+ * moves the last arbiter into its place, so the order only ever depends
+ * on the sequence of calls made. Iterate backwards to remove arbiters 
+ * while iterating.
+ * <p>
+ * Each arbiter held is also noted in the lists kept by its two bodies, so
+ * the arbiters concerning a single body can be found without searching.
+ */
+public class ArbiterMap {
+	/** The value of an unused slot in the hash table */
+	private static final int EMPTY = -1;
+	
+	/** The keys of the arbiters in the order they're iterated */
+	private long[] keys = new long[32];
+	/** The arbiters in the order they're iterated */
+	private Arbiter[] arbiters = new Arbiter[32];
+	/** The number of arbiters in the map */
+	private int size;
+	/** The hash table of indices into the dense arrays, linear probed */
+	private int[] table = new int[64];
+	
+	/**
+	 * Create an empty map
+	 */
+	public ArbiterMap() {
+		clearTable();
+	}
+	
+	/**
+	 * Get the number of arbiters in the map
+	 * 
+	 * @return The number of arbiters in the map
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Get an arbiter by its position in the iteration order
+	 * 
+	 * @param i The index of the arbiter
+	 * @return The arbiter at the given index
+	 */
+	public Arbiter getArbiter(int i) {
+		return arbiters[i];
+	}
+	
+	/**
+	 * Get the arbiter for a pair
+	 * 
+	 * @param key The key of the pair
+	 * @return The arbiter for the pair or null if there isn't one
+	 */
+	public Arbiter get(long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return null;
+		}
+		return arbiters[table[slot]];
+	}
+	
+	/**
+	 * Check if the map holds an arbiter for a pair
+	 * 
+	 * @param key The key of the pair
+	 * @return True if the map holds an arbiter for the pair
+	 */
+	public boolean containsKey(long key) {
+		return find(key) >= 0;
+	}
+	
+	/**
+	 * Put the arbiter for a pair in the map, replacing any arbiter already
+	 * held for the pair in the same position.
+	 * 
+	 * @param key The key of the pair
+	 * @param arbiter The arbiter for the pair
+	 */
+	public void put(long key, Arbiter arbiter) {
+		int slot = find(key);
+		if (slot >= 0) {
+			unlink(arbiters[table[slot]]);
+			arbiters[table[slot]] = arbiter;
+			link(arbiter);
+			return;
+		}
+		
+		if (size == arbiters.length) {
+			long[] tempKeys = new long[size * 2];
+			System.arraycopy(keys, 0, tempKeys, 0, size);
+			keys = tempKeys;
+			Arbiter[] temp = new Arbiter[size * 2];
+			System.arraycopy(arbiters, 0, temp, 0, size);
+			arbiters = temp;
+		}
+		if ((size + 1) * 2 > table.length) {
+			table = new int[table.length * 2];
+			clearTable();
+			for (int i=0;i<size;i++) {
+				insert(keys[i], i);
+			}
+		}
+		
+		keys[size] = key;
+		arbiters[size] = arbiter;
+		insert(key, size);
+		size++;
+		link(arbiter);
+	}
+	
+	/**
+	 * Remove the arbiter for a pair
+	 * 
+	 * @param key The key of the pair
+	 * @return The arbiter removed or null if the map didn't hold one
+	 */
+	public Arbiter remove(long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return null;
+		}
+		
+		Arbiter arbiter = arbiters[table[slot]];
+		removeSlot(slot);
+		return arbiter;
+	}
+	
+	/**
+	 * Remove the arbiter at a given position in the iteration order. The 
+	 * last arbiter is moved into its place.
+	 * 
+	 * @param i The index of the arbiter to remove
+	 * @return The arbiter removed
+	 */
+	public Arbiter removeArbiter(int i) {
+		Arbiter arbiter = arbiters[i];
+		removeSlot(find(keys[i]));
+		return arbiter;
+	}
+	
+	/**
+	 * Remove all the arbiters from the map
+	 */
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		
+		for (int i=0;i<size;i++) {
+			unlink(arbiters[i]);
+			arbiters[i] = null;
+		}
+		size = 0;
+		clearTable();
+	}
+	
+	/**
+	 * Find the slot in the hash table holding a key
+	 * 
+	 * @param key The key to look for
+	 * @return The slot holding the key or -1 if the key isn't held
+	 */
+	private int find(long key) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != EMPTY) {
+			if (keys[table[slot]] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Insert an index into the hash table
+	 * 
+	 * @param key The key of the entry
+	 * @param index The index of the entry in the dense arrays
+	 */
+	private void insert(long key, int index) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = index;
+	}
+	
+	/**
+	 * Remove the entry held in a slot of the hash table, moving the last
+	 * entry into the dense arrays position it leaves.
+	 * 
+	 * @param slot The slot to remove
+	 */
+	private void removeSlot(int slot) {
+		int index = table[slot];
+		int mask = table.length - 1;
+		unlink(arbiters[index]);
+		
+		// shift back any entries that probed past the emptied slot
+		table[slot] = EMPTY;
+		int next = (slot + 1) & mask;
+		while (table[next] != EMPTY) {
+			int home = hash(keys[table[next]]) & mask;
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				table[slot] = table[next];
+				table[next] = EMPTY;
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+		
+		size--;
+		if (index != size) {
+			keys[index] = keys[size];
+			arbiters[index] = arbiters[size];
+			table[find(keys[index])] = index;
+		}
+		arbiters[size] = null;
+	}
+	
+	/**
+	 * Note an arbiter in the lists of its bodies
+	 * 
+	 * @param arbiter The arbiter now held by this map
+	 */
+	private void link(Arbiter arbiter) {
+		arbiter.map = this;
+		arbiter.getBody1().addArbiter(arbiter);
+		arbiter.getBody2().addArbiter(arbiter);
+	}
+	
+	/**
+	 * Remove an arbiter from the lists of its bodies
+	 * 
+	 * @param arbiter The arbiter no longer held by this map
+	 */
+	private void unlink(Arbiter arbiter) {
+		arbiter.map = null;
+		arbiter.getBody1().removeArbiter(arbiter);
+		arbiter.getBody2().removeArbiter(arbiter);
+	}
+	
+	/**
+	 * Mark every slot of the hash table unused
+	 */
+	private void clearTable() {
+		for (int i=0;i<table.length;i++) {
+			table[i] = EMPTY;
+		}
+	}
+	
+	/**
+	 * Hash a pair key
+	 * 
+	 * @param key The key to hash
+	 * @return The hash of the key
+	 */
+	private int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32);
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+import net.phys2d.raw.collide.SeparatingAxis;
+
+/**
+ * The separating axes kept for pairs of bodies, keyed by the packed ID of
+ * the two bodies (see <code>PairList.getKey()</code>). An axis is kept for 
+ * as long as the broad phase keeps reporting its pair, whether or not the
+ * bodies touch, so pairs whose bounds overlap while they're apart can stop
+ * after testing the one axis that separated them last step.
+ * <p>
+ * Each axis is stamped when it's looked up and the axes not stamped in a
+ * step are dropped at its end. The axis objects dropped are kept for reuse.
+ */
+class AxisCache {
+	/** The value of an unused slot in the hash table */
+	private static final int EMPTY = -1;
+	
+	/** The keys of the pairs held */
+	private long[] keys = new long[32];
+	/** The axes of the pairs held */
+	private SeparatingAxis[] axes = new SeparatingAxis[32];
+	/** The step each axis was last looked up in */
+	private int[] stamps = new int[32];
+	/** The number of axes held */
+	private int size;
+	/** The hash table of indices into the dense arrays, linear probed */
+	private int[] table = new int[64];
+	
+	/**
+	 * Create an empty cache
+	 */
+	AxisCache() {
+		clearTable();
+	}
+	
+	/**
+	 * Get the axis kept for a pair, starting an empty one if the pair 
+	 * hasn't one yet. The axis is kept until the end of the step.
+	 * 
+	 * @param key The key of the pair
+	 * @param stamp The stamp of the current step
+	 * @return The axis kept for the pair
+	 */
+	SeparatingAxis get(long key, int stamp) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != EMPTY) {
+			int index = table[slot];
+			if (keys[index] == key) {
+				stamps[index] = stamp;
+				return axes[index];
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		if (size == keys.length) {
+			long[] tempKeys = new long[size * 2];
+			System.arraycopy(keys, 0, tempKeys, 0, size);
+			keys = tempKeys;
+			SeparatingAxis[] tempAxes = new SeparatingAxis[size * 2];
+			System.arraycopy(axes, 0, tempAxes, 0, size);
+			axes = tempAxes;
+			int[] tempStamps = new int[size * 2];
+			System.arraycopy(stamps, 0, tempStamps, 0, size);
+			stamps = tempStamps;
+		}
+		if ((size + 1) * 2 > table.length) {
+			table = new int[table.length * 2];
+			rebuildTable();
+		}
+		
+		if (axes[size] == null) {
+			axes[size] = new SeparatingAxis();
+		}
+		keys[size] = key;
+		stamps[size] = stamp;
+		insert(key, size);
+		return axes[size++];
+	}
+	
+	/**
+	 * Drop the axes of the pairs that weren't looked up in a step
+	 * 
+	 * @param stamp The stamp of the step
+	 */
+	void retain(int stamp) {
+		int kept = 0;
+		for (int i=0;i<size;i++) {
+			if (stamps[i] != stamp) {
+				axes[i].clear();
+				continue;
+			}
+			if (kept != i) {
+				// swap so the dropped axis is left past the end for reuse
+				SeparatingAxis temp = axes[kept];
+				axes[kept] = axes[i];
+				axes[i] = temp;
+				keys[kept] = keys[i];
+				stamps[kept] = stamps[i];
+			}
+			kept++;
+		}
+		
+		if (kept != size) {
+			size = kept;
+			rebuildTable();
+		}
+	}
+	
+	/**
+	 * Drop all the axes held
+	 */
+	void clear() {
+		for (int i=0;i<size;i++) {
+			axes[i].clear();
+		}
+		size = 0;
+		clearTable();
+	}
+	
+	/**
+	 * Insert an index into the hash table
+	 * 
+	 * @param key The key of the entry
+	 * @param index The index of the entry in the dense arrays
+	 */
+	private void insert(long key, int index) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = index;
+	}
+	
+	/**
+	 * Rebuild the hash table from the dense arrays
+	 */
+	private void rebuildTable() {
+		clearTable();
+		for (int i=0;i<size;i++) {
+			insert(keys[i], i);
+		}
+	}
+	
+	/**
+	 * Mark every slot of the hash table unused
+	 */
+	private void clearTable() {
+		for (int i=0;i<table.length;i++) {
+			table[i] = EMPTY;
+		}
+	}
+	
+	/**
+	 * Hash a pair key
+	 * 
+	 * @param key The key to hash
+	 * @return The hash of the key
+	 */
+	private int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32);
+	}
+}
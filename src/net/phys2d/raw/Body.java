@@ -41,9 +41,12 @@
 package net.phys2d.raw;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import net.phys2d.math.ROVector2f;
 import net.phys2d.math.Vector2f;
+import net.phys2d.raw.shapes.AABox;
+import net.phys2d.raw.shapes.AbstractShape;
 import net.phys2d.raw.shapes.DynamicShape;
 import net.phys2d.raw.shapes.Shape;
 
@@ -57,6 +60,8 @@ public strictfp class Body {
 	private static int NEXT_ID = 0;
 	/** The maximum value indicating that body won't move */
 	public static final float INFINITE_MASS = Float.MAX_VALUE;
+	/** Whether each class of body keeps the velocity validation of this class */
+	private static final HashMap<Class<?>, Boolean> DEFAULT_VALIDATION = new HashMap<Class<?>, Boolean>();
         
         /**
          * CollisionSpace this body belongs to.
@@ -99,6 +104,10 @@ public strictfp class Body {
                 
 	/** The shape representing this body */
 	private Shape shape;
+	/** The bounds of the shape in world coordinates as of the last update */
+	private AABox worldBounds = new AABox(0,0,0,0);
+	/** The cached geometry of the shape in world space */
+	private WorldGeometry worldGeometry = new WorldGeometry();
 	
 	/** The friction on the surface of this body */
 	private float surfaceFriction;
@@ -122,8 +131,12 @@ public strictfp class Body {
 	private float restitution = 0f;
 	/** The list of bodies excluded from colliding with this body */
 	private BodyList excluded = new BodyList();
+	/** The pairs of this body and those excluded, for checking quickly */
+	private PairSet excludedPairs = new PairSet();
         /** The list of bodies that will collide with this body regardless of mask */
         private BodyList included = new BodyList();
+	/** The pairs of this body and those included, for checking quickly */
+	private PairSet includedPairs = new PairSet();
 	/** True if this body is effected by gravity */
 	private boolean gravity = true;
 	
@@ -131,6 +144,10 @@ public strictfp class Body {
 	private long bitmask = 0; //0xFFFFFFFFFFFFFFFFL;
         /** The overlap group bitmask (collision with no physics)*/
         private long overlapMask = 0;
+	/** The category this body is paired by, see CategoryFilter */
+	private int category;
+	/** True if this body only reports overlaps, see setSensor() */
+	private boolean sensor;
 	/** A hook for the library's user's data */
 	private Object userData = null;
 	/** The old position */
@@ -171,6 +188,8 @@ public strictfp class Body {
 	
 	/** True if this body has been added to the simulation */
 	private boolean added = false;
+	/** True if this body's class doesn't override validateVelocity() */
+	private final boolean defaultValidation = hasDefaultValidation(getClass());
 	
 	/** The maximum velocity the the body can travel at on each axis */
 	private Vector2f maxVelocity;
@@ -186,6 +205,21 @@ public strictfp class Body {
          */
         private boolean mutableFriction = false;
         
+	/** The index of this body in the world's array solver, -1 when not being solved */
+	int solverIndex = -1;
+	/** The proxy of this body in the space's index of static bodies, -1 when not indexed */
+	int staticProxy = -1;
+	/** The index of this body while islands are being built, -1 otherwise */
+	int islandIndex = -1;
+	/** True if this body's island has been put to sleep */
+	private boolean asleep;
+	/** The time this body has spent moving slower than the sleep tolerances */
+	private float sleepTime;
+	/** The arbiters held for this body by its collision space */
+	private Arbiter[] arbiters = new Arbiter[4];
+	/** The number of arbiters held for this body */
+	private int arbiterCount;
+        
         
 	/**
 	 * Create a new un-named body
@@ -577,6 +611,110 @@ public strictfp class Body {
 		}
 	}
 	
+	/**
+	 * Check if this body has been put to sleep along with the rest of the 
+	 * bodies it touches. Sleeping bodies are not moved, solved or collided 
+	 * against each other until something wakes them.
+	 * 
+	 * @return True if this body is asleep
+	 */
+	public boolean isAsleep() {
+		return asleep;
+	}
+	
+	/**
+	 * Wake this body up. Any sleeping bodies it touches will be woken with 
+	 * it on the next step.
+	 */
+	public void wakeUp() {
+		asleep = false;
+		sleepTime = 0;
+	}
+	
+	/**
+	 * Put this body to sleep, stopping it dead
+	 */
+	void sleep() {
+		asleep = true;
+		velocity.set(0.0f, 0.0f);
+		biasedVelocity.set(0.0f, 0.0f);
+		angularVelocity = 0.0f;
+		biasedAngularVelocity = 0.0f;
+		force.set(0.0f, 0.0f);
+		torque = 0.0f;
+	}
+	
+	/**
+	 * Update the time this body has spent moving slowly
+	 * 
+	 * @param dt The amount of time that has passed
+	 * @param linearTolerance The squared speed below which the body is considered still
+	 * @param angularTolerance The angular speed below which the body is considered still
+	 * @return The time this body has been still for
+	 */
+	float updateSleepTime(float dt, float linearTolerance, float angularTolerance) {
+		if (!canRest() || (velocity.lengthSquared() > linearTolerance) 
+			|| (Math.abs(angularVelocity) > angularTolerance)) {
+			sleepTime = 0;
+		} else {
+			sleepTime += dt;
+		}
+		
+		return sleepTime;
+	}
+	
+	/**
+	 * Note an arbiter held for this body - this should only be done 
+	 * by the arbiter map holding it
+	 * 
+	 * @param arbiter The arbiter held for this body
+	 */
+	void addArbiter(Arbiter arbiter) {
+		if (arbiterCount == arbiters.length) {
+			Arbiter[] temp = new Arbiter[arbiterCount * 2];
+			System.arraycopy(arbiters, 0, temp, 0, arbiterCount);
+			arbiters = temp;
+		}
+		arbiter.setIndex(this, arbiterCount);
+		arbiters[arbiterCount++] = arbiter;
+	}
+	
+	/**
+	 * Forget an arbiter no longer held for this body. The last arbiter
+	 * is moved into its place.
+	 * 
+	 * @param arbiter The arbiter no longer held
+	 */
+	void removeArbiter(Arbiter arbiter) {
+		int index = arbiter.getIndex(this);
+		arbiterCount--;
+		if (index != arbiterCount) {
+			arbiters[index] = arbiters[arbiterCount];
+			arbiters[index].setIndex(this, index);
+		}
+		arbiters[arbiterCount] = null;
+	}
+	
+	/**
+	 * Get the number of arbiters held for this body, both those resolving
+	 * its contacts and those noting its overlaps
+	 * 
+	 * @return The number of arbiters held for this body
+	 */
+	int getArbiterCount() {
+		return arbiterCount;
+	}
+	
+	/**
+	 * Get an arbiter held for this body
+	 * 
+	 * @param i The index of the arbiter
+	 * @return The arbiter at the given index
+	 */
+	Arbiter getArbiter(int i) {
+		return arbiters[i];
+	}
+	
 	/**
 	 * Check if this body is static
 	 * 
@@ -639,7 +777,7 @@ public strictfp class Body {
 		if (other.equals(this)) {
 			return;
 		}
-		if (!excluded.contains(other)) {
+		if (excludedPairs.add(this, other)) {
 			excluded.add(other);
 			other.addExcludedBody(this);
 		}
@@ -655,11 +793,21 @@ public strictfp class Body {
 		if (other.equals(this)) {
 			return;
 		}
-		if (excluded.contains(other)) {
+		if (excludedPairs.remove(this, other)) {
 			excluded.remove(other);
 			other.removeExcludedBody(this);
 		}
 	}
+	
+	/**
+	 * Check if this body is not allowed to collide with another
+	 * 
+	 * @param other The body to check for
+	 * @return True if the body is in the excluded list of this body
+	 */
+	public boolean isExcluded(Body other) {
+		return excludedPairs.contains(this, other);
+	}
         
         /**
          * Add a body that this body will collide with regardless of bitmask
@@ -670,7 +818,7 @@ public strictfp class Body {
             if(other.equals(this))
                 return;
             
-            if(!included.contains(other))
+            if(includedPairs.add(this, other))
             {
                 included.add(other);
                 other.addIncludedBody(this);
@@ -682,12 +830,22 @@ public strictfp class Body {
             if(other.equals(this))
                 return;
             
-            if(included.contains(other))
+            if(includedPairs.remove(this, other))
             {
                 included.remove(other);
                 other.removeIncludedBody(this);
             }
         }
+        
+	/**
+	 * Check if this body will collide with another regardless of bitmask
+	 * 
+	 * @param other The body to check for
+	 * @return True if the body is in the included list of this body
+	 */
+	public boolean isIncluded(Body other) {
+		return includedPairs.contains(this, other);
+	}
 	
 	/**
 	 * Get the list of bodies that can not collide with this body
@@ -761,6 +919,7 @@ public strictfp class Body {
 
 		this.shape = shape;
 		setMass(m);
+		updateWorldBounds();
 	}
 
 	/**
@@ -770,6 +929,8 @@ public strictfp class Body {
 	 */
 	public void setShape(Shape shape) {
 		this.shape = shape;
+		updateWorldBounds();
+		staticMoved();
 		//setMass(mass);
 	}
 	
@@ -808,9 +969,11 @@ public strictfp class Body {
                 //if mutable friction, recalculate all arbiter frictions
                 if(this.mutableFriction && this.collisionSpace != null)
                 {
-                    for(Arbiter arbiter: this.collisionSpace.arbiters.values())
+                    ArbiterMap arbiters = this.collisionSpace.arbiters;
+                    for(int i = 0; i < arbiterCount; i++)
                     {
-                        if(arbiter.concerns(this))
+                        Arbiter arbiter = this.arbiters[i];
+                        if(arbiter.map == arbiters)
                         {
                             //recalculate the arbiter friction
                             arbiter.init();
@@ -825,7 +988,9 @@ public strictfp class Body {
 	 * @param rotation The new rotation of the body
 	 */
 	public void setRotation(float rotation) {
+		wakeUp();
 		this.rotation = rotation;
+		staticMoved();
 	}
 	
 	/**
@@ -890,6 +1055,46 @@ public strictfp class Body {
 		return shape;
 	}
 	
+	/**
+	 * Get the tight bounds of this body's shape in world coordinates. The 
+	 * bounds are updated once per step, before the broad phase, so they 
+	 * won't reflect changes to the body made since. The offsets of the box
+	 * give its centre in world coordinates.
+	 * 
+	 * @return The bounds of this body in world coordinates
+	 */
+	public AABox getWorldBounds() {
+		return worldBounds;
+	}
+	
+	/**
+	 * Update the world bounds of this body to its current position and
+	 * rotation. Shapes that don't extend <code>AbstractShape</code> use
+	 * their rotation independent bounds.
+	 */
+	public void updateWorldBounds() {
+		if (shape instanceof AbstractShape) {
+			((AbstractShape) shape).getWorldBounds(position, rotation, worldBounds);
+		} else {
+			AABox bounds = shape.getBounds();
+			worldBounds.set(position.getX() + bounds.getOffsetX(), 
+							position.getY() + bounds.getOffsetY(), 
+							bounds.getWidth(), bounds.getHeight());
+		}
+	}
+	
+	/**
+	 * Get the geometry of this body's shape in world space. The geometry is 
+	 * recomputed if the body has moved, rotated or changed shape since it 
+	 * was last retrieved.
+	 * 
+	 * @return The geometry of this body's shape in world space
+	 */
+	public WorldGeometry getWorldGeometry() {
+		worldGeometry.validate(this);
+		return worldGeometry;
+	}
+	
 	/**
 	 * Set the position of this body, this will also set the previous position
 	 * to the same value.
@@ -898,8 +1103,10 @@ public strictfp class Body {
 	 * @param y The y position of this body
 	 */
 	public void setPosition(float x, float y) {
+		wakeUp();
 		position.set(x,y);
 		lastPosition.set(x,y);
+		staticMoved();
 	}
 	
 	/**
@@ -911,8 +1118,10 @@ public strictfp class Body {
 	 * @param y The y position of this body
 	 */
 	public void move(float x, float y) {
+		wakeUp();
 		lastPosition.set(position);
 		position.set(x,y);
+		staticMoved();
 	}
 	
 	/**
@@ -1016,6 +1225,7 @@ public strictfp class Body {
 		lastPosition.set(position);
 		position.x += delta.getX() * scale;
 		position.y += delta.getY() * scale;
+		staticMoved();
 	}
 	
 	/**
@@ -1028,6 +1238,7 @@ public strictfp class Body {
 	public void adjustPosition(Vector2f delta) {
 		lastPosition.set(position);
 		position.add(delta);
+		staticMoved();
 	}
 
 	/**
@@ -1037,6 +1248,18 @@ public strictfp class Body {
 	 */
 	public void adjustRotation(float delta) {
 		rotation += delta;
+		staticMoved();
+	}
+	
+	/**
+	 * Notify the space this body is in that a static body has moved or 
+	 * changed shape, so that its entry in the index of static bodies is 
+	 * moved to match
+	 */
+	private void staticMoved() {
+		if (added && isStatic() && (collisionSpace != null)) {
+			collisionSpace.staticBodyMoved(this);
+		}
 	}
 	
 	/**
@@ -1089,6 +1312,7 @@ public strictfp class Body {
 		if (!isMoveable()) {
 			return;
 		}
+		wakeUp();
 		lastVelocity.set(velocity);
 		velocity.set(delta);
 		
@@ -1101,11 +1325,22 @@ public strictfp class Body {
 	 * @param delta The amount to change the velocity by
 	 */
 	public void adjustVelocity(Vector2f delta) {
+		adjustVelocity(delta.x, delta.y);
+	}
+	
+	/** 
+	 * Adjust the velocity of this body
+	 * 
+	 * @param dx The amount to change the x component of the velocity by
+	 * @param dy The amount to change the y component of the velocity by
+	 */
+	public void adjustVelocity(float dx, float dy) {
 		if (!isMoveable()) {
 			return;
 		}
 		lastVelocity.set(velocity);
-		velocity.add(delta);
+		velocity.x += dx;
+		velocity.y += dy;
 		
 		validateVelocity();
 	}
@@ -1164,6 +1399,7 @@ public strictfp class Body {
 	 * @param f The force to be applied
 	 */
 	public void addForce(Vector2f f) {
+		wakeUp();
 		force.add(f);
 	}
 	
@@ -1172,6 +1408,7 @@ public strictfp class Body {
          * body to exceed its soft max velocity)
          */
         public void addSoftForce(Vector2f f){
+            wakeUp();
             this.softForce.add(f);
         }
         
@@ -1233,10 +1470,21 @@ public strictfp class Body {
 	 * @param delta The amount to change the velocity by
 	 */
 	public void adjustBiasedVelocity(Vector2f delta) {
+		adjustBiasedVelocity(delta.x, delta.y);
+	}
+	
+	/** 
+	 * Adjust the bias velocity of this body
+	 * 
+	 * @param dx The amount to change the x component of the velocity by
+	 * @param dy The amount to change the y component of the velocity by
+	 */
+	public void adjustBiasedVelocity(float dx, float dy) {
 		if (!isMoveable()) {
 			return;
 		}
-		biasedVelocity.add(delta);
+		biasedVelocity.x += dx;
+		biasedVelocity.y += dy;
 	}
 	
 	/** 
@@ -1251,6 +1499,35 @@ public strictfp class Body {
 		biasedAngularVelocity += delta;
 	}
 	
+	/**
+	 * Set the velocities worked out by the array solver
+	 * 
+	 * @param x The x component of the velocity
+	 * @param y The y component of the velocity
+	 * @param lastX The x component of the velocity before its last change
+	 * @param lastY The y component of the velocity before its last change
+	 * @param angular The angular velocity
+	 * @param lastAngular The angular velocity before its last change
+	 */
+	void setSolvedVelocity(float x, float y, float lastX, float lastY, float angular, float lastAngular) {
+		velocity.set(x, y);
+		lastVelocity.set(lastX, lastY);
+		angularVelocity = angular;
+		lastAngularVelocity = lastAngular;
+	}
+	
+	/**
+	 * Set the bias velocities worked out by the array solver
+	 * 
+	 * @param x The x component of the bias velocity
+	 * @param y The y component of the bias velocity
+	 * @param angular The bias angular velocity
+	 */
+	void setSolvedBias(float x, float y, float angular) {
+		biasedVelocity.set(x, y);
+		biasedAngularVelocity = angular;
+	}
+	
 	/**
 	 * Reset the bias velocity (done every time step)
 	 */
@@ -1306,6 +1583,57 @@ public strictfp class Body {
 		this.overlapMask = overlapMask;
 	}
 	
+	/**
+	 * Get the category this body is paired by
+	 * 
+	 * @return The category of this body
+	 */
+	public int getCategory() {
+		return category;
+	}
+	
+	/**
+	 * Set the category this body is paired by. The collision space's 
+	 * <code>CategoryFilter</code> decides which categories are paired at
+	 * all, bodies in categories that aren't paired never collide or 
+	 * overlap whatever their bitmasks or included bodies.
+	 * 
+	 * @param category The category of this body, 0 to <code>CategoryFilter.MAX_CATEGORIES</code> - 1
+	 */
+	public void setCategory(int category) {
+		if ((category < 0) || (category >= CategoryFilter.MAX_CATEGORIES)) {
+			throw new IllegalArgumentException("Category must be between 0 and "+(CategoryFilter.MAX_CATEGORIES-1));
+		}
+		this.category = category;
+	}
+	
+	/**
+	 * Check if this body is a sensor
+	 * 
+	 * @return True if this body only reports the bodies it overlaps
+	 */
+	public boolean isSensor() {
+		return sensor;
+	}
+	
+	/**
+	 * Indicate whether this body is a sensor, e.g. a trigger zone or a
+	 * pickup. A sensor never collides, it only reports the bodies that 
+	 * start and stop overlapping it through <code>collisionOccured</code> 
+	 * and <code>separationOccured</code>. The collision event carries the
+	 * first point, normal and depth found between the two, the separation
+	 * event carries no point or normal just as for solid bodies. Sensors 
+	 * overlap the bodies they'd collide or overlap with through their 
+	 * category, bitmasks, overlap masks and included and excluded lists. 
+	 * No arbiters are kept for sensors so they cost far less than overlap 
+	 * masks.
+	 * 
+	 * @param sensor True if this body should only report overlaps
+	 */
+	public void setSensor(boolean sensor) {
+		this.sensor = sensor;
+	}
+	
 	/**
 	 * Set one or more individual bits.
 	 * 
@@ -1386,10 +1714,48 @@ public strictfp class Body {
             return softMaxVelocity;
         }
         
+	/**
+	 * Check whether a class of body keeps the velocity validation of this 
+	 * class, rather than overriding <code>validateVelocity()</code>
+	 * 
+	 * @param type The class of body to check
+	 * @return True if the class doesn't override the validation
+	 */
+	private static synchronized boolean hasDefaultValidation(Class<?> type) {
+		Boolean result = DEFAULT_VALIDATION.get(type);
+		if (result == null) {
+			result = Boolean.TRUE;
+			for (Class<?> c=type;c!=Body.class;c=c.getSuperclass()) {
+				try {
+					c.getDeclaredMethod("validateVelocity");
+					result = Boolean.FALSE;
+					break;
+				} catch (NoSuchMethodException e) {
+					// not overridden at this level
+				}
+			}
+			DEFAULT_VALIDATION.put(type, result);
+		}
+		
+		return result.booleanValue();
+	}
+	
+	/**
+	 * Check whether this body uses the velocity validation of this class. 
+	 * The array solver only applies this validation, bodies that override 
+	 * it are solved with the object solver.
+	 * 
+	 * @return True if <code>validateVelocity()</code> isn't overridden
+	 */
+	boolean hasDefaultValidation() {
+		return defaultValidation;
+	}
+	
 	/**
 	 * Validate the velocity value thats just been applied. Correct
 	 * it if it breaks any rules. The primary rule is maximum velocity
-	 * setting
+	 * setting. Bodies that override this are solved with the object solver,
+	 * see <code>World.setSolver()</code>.
 	 */
 	protected void validateVelocity() {
 		if (maxVelocity == null) {
@@ -53,7 +53,9 @@ public interface BroadCollisionStrategy {
 	 * Perform the broad phase strategy. The implementation of this method
 	 * is expected to determine a set of lists of bodies to collided against
 	 * each other and then pass these lists back through the context for
-	 * collision detection and response.
+	 * collision detection and response. Strategies that find individual 
+	 * pairs should pass them back through <code>resolvePairs</code> so
+	 * each pair is only checked once.
 	 * 
 	 * @param context The context that can actually perform the collision
 	 * checking.
@@ -0,0 +1,145 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+/**
+ * The table of which categories of body may be paired for collision. Each
+ * body belongs to one of <code>MAX_CATEGORIES</code> categories (see 
+ * <code>Body.setCategory()</code>) and the table holds, for each category,
+ * a mask of the categories it pairs with. The table is kept symmetric. 
+ * <p>
+ * Unlike the bitmasks of the bodies the table is checked by the broad 
+ * phase strategies before they test the bounds of a pair, so bodies that 
+ * can't be paired cost next to nothing however close they are. By default
+ * every category pairs with every other.
+ */
+public class CategoryFilter {
+	/** The number of categories */
+	public static final int MAX_CATEGORIES = 64;
+	
+	/** The mask of the categories each category pairs with */
+	private long[] masks = new long[MAX_CATEGORIES];
+	
+	/**
+	 * Create a new filter pairing every category with every other
+	 */
+	public CategoryFilter() {
+		for (int i=0;i<MAX_CATEGORIES;i++) {
+			masks[i] = 0xFFFFFFFFFFFFFFFFL;
+		}
+	}
+	
+	/**
+	 * Indicate whether two categories may be paired
+	 * 
+	 * @param a The first category
+	 * @param b The second category
+	 * @param collides True if bodies in the categories may be paired
+	 */
+	public void setCollides(int a, int b, boolean collides) {
+		check(a);
+		check(b);
+		
+		if (collides) {
+			masks[a] |= 1L << b;
+			masks[b] |= 1L << a;
+		} else {
+			masks[a] &= ~(1L << b);
+			masks[b] &= ~(1L << a);
+		}
+	}
+	
+	/**
+	 * Set all the categories a category pairs with, e.g. a projectile
+	 * category that pairs with only the enemy category. The masks of the 
+	 * other categories are updated to match.
+	 * 
+	 * @param category The category to set the mask of
+	 * @param mask The mask with a bit set for each category paired with 
+	 */
+	public void setMask(int category, long mask) {
+		check(category);
+		
+		for (int i=0;i<MAX_CATEGORIES;i++) {
+			setCollides(category, i, (mask & (1L << i)) != 0);
+		}
+	}
+	
+	/**
+	 * Get the categories a category pairs with
+	 * 
+	 * @param category The category to get the mask of
+	 * @return The mask with a bit set for each category paired with
+	 */
+	public long getMask(int category) {
+		return masks[category];
+	}
+	
+	/**
+	 * Check if two categories may be paired
+	 * 
+	 * @param a The first category
+	 * @param b The second category
+	 * @return True if bodies in the categories may be paired
+	 */
+	public boolean collides(int a, int b) {
+		return (masks[a] & (1L << b)) != 0;
+	}
+	
+	/**
+	 * Check if two bodies may be paired by their categories
+	 * 
+	 * @param a The first body
+	 * @param b The second body
+	 * @return True if the categories of the bodies may be paired
+	 */
+	public boolean collides(Body a, Body b) {
+		return (masks[a.getCategory()] & (1L << b.getCategory())) != 0;
+	}
+	
+	/**
+	 * Check a category is in range
+	 * 
+	 * @param category The category to check
+	 */
+	private void check(int category) {
+		if ((category < 0) || (category >= MAX_CATEGORIES)) {
+			throw new IllegalArgumentException("Category must be between 0 and "+(MAX_CATEGORIES-1));
+		}
+	}
+}
@@ -42,12 +42,11 @@ package net.phys2d.raw;
 
 import net.phys2d.raw.collide.Collider;
 import net.phys2d.raw.collide.ColliderFactory;
-import net.phys2d.raw.collide.ColliderUnavailableException;
 
 /**
- * A static utility for resolve the collision between shapes
- * 
- * TODO: make this nonstatic to allow a user to provide his/her own factory
+ * A static utility for resolve the collision between shapes. Colliders for
+ * new shapes can be registered with the factory returned by
+ * <code>getColliderFactory()</code>.
  * 
  * @author Kevin Glass
  */
@@ -56,6 +55,27 @@ public strictfp class Collide {
 	/** The factory that provides us with colliders */
 	private static ColliderFactory collFactory = new ColliderFactory();
 
+	/**
+	 * Get the factory that provides the colliders
+	 * 
+	 * @return The factory that provides the colliders
+	 */
+	public static ColliderFactory getColliderFactory() {
+		return collFactory;
+	}
+	
+	/**
+	 * Get the collider to use between two bodies. Bodies without a suitable
+	 * collider get one that never finds any contacts.
+	 * 
+	 * @param bodyA The first body
+	 * @param bodyB The second body
+	 * @return The collider for the two bodies' shapes
+	 */
+	public static Collider getCollider(Body bodyA, Body bodyB) {
+		return collFactory.getCollider(bodyA.getShape(), bodyB.getShape());
+	}
+	
 	/**
 	 * Perform the collision between two bodies
 	 * 
@@ -67,15 +87,6 @@ public strictfp class Collide {
 	 */
 	public static int collide(Contact[] contacts, Body bodyA, Body bodyB, float dt)
 	{
-		Collider collider;
-		try {
-			collider = collFactory.createCollider(bodyA, bodyB);
-		} catch (ColliderUnavailableException e) {
-			System.out.println(e.getMessage()
-					+ "\n Ignoring any possible collision between the bodies in question");
-			return 0;
-		}
-		
-		return collider.collide(contacts, bodyA, bodyB);
+		return getCollider(bodyA, bodyB).collide(contacts, bodyA, bodyB);
 	}
 }
@@ -52,4 +52,22 @@ public interface CollisionContext {
 	 * @param dt The time thats passed since last collision check
 	 */
 	public void resolve(BodyList bodies, float dt);
+	
+	/**
+	 * Resolve and store the collisions between the bodies of each pair in 
+	 * the list. Pairs should appear in the list only once.
+	 * 
+	 * @param pairs The pairs of bodies to be resolved
+	 * @param dt The time thats passed since last collision check
+	 */
+	public void resolvePairs(PairList pairs, float dt);
+	
+	/**
+	 * Get the filter deciding which categories of body may be paired. 
+	 * Strategies may use this to skip pairs before testing their bounds,
+	 * the pairs are filtered again when resolved.
+	 * 
+	 * @return The filter deciding which categories of body may be paired
+	 */
+	public CategoryFilter getCategoryFilter();
 }
@@ -2,32 +2,85 @@ package net.phys2d.raw;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import net.phys2d.math.ROVector2f;
 import net.phys2d.math.Vector2f;
+import net.phys2d.raw.collide.CachingCollider;
+import net.phys2d.raw.collide.Collider;
+import net.phys2d.raw.collide.SeparatingAxis;
+import net.phys2d.raw.shapes.AABox;
+import net.phys2d.raw.strategies.DynamicAABBTree;
 
 /**
  * A space that will resolve collisions and report them to registered 
  * listeners.
+ * <p>
+ * Note for subclasses: the protected <code>arbiters</code> and 
+ * <code>overlapList</code> fields were <code>LinkedHashMap&lt;String,Arbiter&gt;</code>
+ * keyed by the bodies' IDs joined into a string. They're now 
+ * <code>ArbiterMap</code>s keyed by <code>PairList.getKey()</code> and iterated
+ * by index, so subclasses using them need updating. The arbiters are still
+ * held in the order they were added, except that removing one moves the 
+ * last into its place.
  * 
  * @author Kevin Glass
  */
 public class CollisionSpace implements CollisionContext {
+	/** The least number of pairs worth splitting between narrow phase tasks */
+	private static final int MIN_NARROW_PHASE_BATCH = 64;
+	
 	/** The bodies contained in the world */
 	protected BodyList bodies = new BodyList(); 
-	/** The arbiters that have been required in the world */
-	protected LinkedHashMap<String,Arbiter> arbiters = new LinkedHashMap<>(); 
-        /** The arbiters that are responsible for bodies that overlap but will not apply impulse to one another */
-        protected LinkedHashMap<String,Arbiter> overlapList = new LinkedHashMap<>();
+	/** The bodies that can move, these are passed to the broad phase strategy */
+	protected BodyList dynamicBodies = new BodyList();
+	/** The static bodies, these are kept in their own index */
+	protected BodyList staticBodies = new BodyList();
+	/** The index of the static bodies, only rebuilt when they're added or removed */
+	private DynamicAABBTree staticIndex = new DynamicAABBTree(0);
+	/** True if the static index needs rebuilding before the next collision */
+	private boolean staticIndexDirty;
+	/** The pairs of static and dynamic bodies found this step */
+	private PairList staticPairs = new PairList();
+	/** The callback collecting the static bodies touching a dynamic body */
+	private StaticQuery staticQuery = new StaticQuery();
+	/** The arbiters that have been required in the world, keyed by <code>PairList.getKey()</code>
+	 * (this was a <code>LinkedHashMap</code> keyed by string, see the class notes) */
+	protected ArbiterMap arbiters = new ArbiterMap(); 
+        /** The arbiters that are responsible for bodies that overlap but will not apply impulse to one another,
+         * keyed as <code>arbiters</code> (this was a <code>LinkedHashMap</code> keyed by string, see the class notes) */
+        protected ArbiterMap overlapList = new ArbiterMap();
 	/** The broad phase collision strategy we're using */
 	protected BroadCollisionStrategy collisionStrategy;
 	/** The list of listeners that should be notified of collisions */
 	protected ArrayList listeners = new ArrayList();
 	/** The total time passed */
 	protected float totalTime;
+	/** The step counter used to spot pairs the broad phase has lost */
+	private int stamp;
 	/** The bitmask that determine which bits are used for collision detection */
 	private long bitmask = 0xFFFFFFFFFFFFFFFFL;
+	/** The candidate pairs are tested into when resolved as they're found, also used to filter sensor pairs */
+	private Candidate scratch = new Candidate();
+	/** The pool the narrow phase is run on, or null to resolve pairs as they're found */
+	private ForkJoinPool narrowPhasePool;
+	/** The pairs found this step, queued when the narrow phase runs on a pool */
+	private PairList candidates = new PairList();
+	/** The candidates the queued pairs are tested into */
+	private Candidate[] pending = new Candidate[0];
+	/** True if the contacts between a pair are reduced to a two point manifold */
+	private boolean manifoldReduction = true;
+	/** The filter deciding which categories of body are paired */
+	private CategoryFilter categoryFilter = new CategoryFilter();
+	/** The pairs involving a sensor that overlap this step */
+	private PairList sensorPairs = new PairList();
+	/** The pairs involving a sensor that overlapped last step */
+	private PairList lastSensorPairs = new PairList();
+	/** The separating axes kept for the pairs the broad phase reports */
+	private AxisCache axes = new AxisCache();
+	/** The contacts sensor pairs are collided into, only their number is used */
+	private Contact[] sensorContacts = new Contact[Arbiter.MAX_POINTS];
 	
 	/**
 	 * Create a new collision space based on a given strategy for 
@@ -37,6 +90,9 @@ public class CollisionSpace implements CollisionContext {
 	 */
 	public CollisionSpace(BroadCollisionStrategy strategy) {
 		this.collisionStrategy = strategy;
+		for (int i=0;i<sensorContacts.length;i++) {
+			sensorContacts[i] = new Contact();
+		}
 	}
 	
 	/**
@@ -65,16 +121,221 @@ public class CollisionSpace implements CollisionContext {
 	 */
 	public void collide(float dt) {
 		totalTime += dt;
-		collisionStrategy.collideBodies(this, bodies, dt);
+		stamp++;
+		
+		PairList temp = lastSensorPairs;
+		lastSensorPairs = sensorPairs;
+		sensorPairs = temp;
+		sensorPairs.clear();
+		
+		for (int i=0;i<dynamicBodies.size();i++) {
+			Body body = dynamicBodies.get(i);
+			if (!body.disabled()) {
+				body.updateWorldBounds();
+			}
+		}
+		
+		collisionStrategy.collideBodies(this, dynamicBodies, dt);
+		collideStatic(dt);
+		
+		if (narrowPhasePool != null) {
+			resolveCandidates();
+		}
+		
+		dropLostPairs(arbiters);
+		dropLostPairs(overlapList);
+		dropLostSensorPairs();
+		axes.retain(stamp);
+	}
+	
+	/**
+	 * Report the pairs involving a sensor that overlapped last step but 
+	 * not this step. Pairs of sleeping bodies aren't looked for so they're
+	 * kept until the bodies wake.
+	 */
+	private void dropLostSensorPairs() {
+		for (int i=0;i<lastSensorPairs.size();i++) {
+			Body bi = lastSensorPairs.getBodyA(i);
+			Body bj = lastSensorPairs.getBodyB(i);
+			if (sensorPairs.contains(bi, bj)) {
+				continue;
+			}
+			
+			if (bi.added() && bj.added() && isSleeping(bi, bj)) {
+				sensorPairs.add(bi, bj);
+			} else {
+				notifySeparation(bi, bj);
+			}
+		}
+	}
+	
+	/**
+	 * Check whether a pair involving a sensor overlaps, reporting the pair 
+	 * if it's just started to. The pair is filtered and collided the same 
+	 * way as solid bodies so the two always agree, but no arbiter is kept.
+	 * The first contact found is only used to describe the overlap to 
+	 * listeners.
+	 * 
+	 * @param bi The first body of the pair
+	 * @param bj The second body of the pair
+	 */
+	private void resolveSensor(Body bi, Body bj) {
+		// the masses don't matter since nothing is pushed apart
+		if (!accepts(scratch, bi, bj, false)) {
+			return;
+		}
+		if (!bi.getWorldBounds().touches(bj.getWorldBounds())) {
+			return;
+		}
+		if (Collide.getCollider(bi, bj).collide(sensorContacts, bi, bj) == 0) {
+			return;
+		}
+		
+		if (sensorPairs.add(bi, bj) && !lastSensorPairs.contains(bi, bj)) {
+			// the contacts are reused for the next pair so the event gets
+			// its own copy
+			Contact c = sensorContacts[0];
+			notifyCollision(bi, bj, new Vector2f(c.getPosition()), new Vector2f(c.getNormal()), c.getSeparation());
+		}
+	}
+	
+	/**
+	 * Drop the arbiters of the pairs that weren't found this step. The 
+	 * broad phase no longer sees these bodies near each other so they've 
+	 * separated, unless one has left the space in which case the arbiter
+	 * is dropped quietly. Pairs of sleeping bodies aren't looked for so 
+	 * they're kept until the bodies wake.
+	 * 
+	 * @param map The map of arbiters to check
+	 */
+	private void dropLostPairs(ArbiterMap map) {
+		for (int i=map.size()-1;i>=0;i--) {
+			// listeners told of a separation may have dropped more arbiters
+			if (i >= map.size()) {
+				continue;
+			}
+			Arbiter arbiter = map.getArbiter(i);
+			if (arbiter.stamp == stamp) {
+				continue;
+			}
+			
+			Body body1 = arbiter.getBody1();
+			Body body2 = arbiter.getBody2();
+			if (!body1.added() || !body2.added()) {
+				map.removeArbiter(i);
+			} else if (!isSleeping(body1, body2)) {
+				long key = PairList.getKey(body1, body2);
+				arbiters.remove(key);
+				overlapList.remove(key);
+				notifySeparation(body1, body2);
+			}
+		}
+	}
+	
+	/**
+	 * Collide the dynamic bodies against the index of static bodies
+	 * 
+	 * @param dt The amount of time since last collision
+	 */
+	private void collideStatic(float dt) {
+		if (staticIndexDirty) {
+			rebuildStaticIndex();
+		}
+		
+		staticPairs.clear();
+		
+		if (staticBodies.size() > 0) {
+			for (int i=0;i<dynamicBodies.size();i++) {
+				Body body = dynamicBodies.get(i);
+				if (body.disabled()) {
+					continue;
+				}
+				
+				AABox bounds = body.getWorldBounds();
+				float halfWidth = bounds.getWidth() / 2;
+				float halfHeight = bounds.getHeight() / 2;
+				
+				staticQuery.body = body;
+				staticIndex.query(bounds.getOffsetX() - halfWidth, bounds.getOffsetY() - halfHeight,
+								  bounds.getOffsetX() + halfWidth, bounds.getOffsetY() + halfHeight,
+								  staticQuery);
+			}
+			staticQuery.body = null;
+		}
+		
+		resolvePairs(staticPairs, dt);
+	}
+	
+	/**
+	 * Rebuild the index of static bodies from their current positions
+	 */
+	private void rebuildStaticIndex() {
+		staticIndex.clear();
+		
+		for (int i=0;i<staticBodies.size();i++) {
+			Body body = staticBodies.get(i);
+			body.updateWorldBounds();
+			
+			AABox bounds = body.getWorldBounds();
+			float halfWidth = bounds.getWidth() / 2;
+			float halfHeight = bounds.getHeight() / 2;
+			body.staticProxy = staticIndex.createProxy(bounds.getOffsetX() - halfWidth, bounds.getOffsetY() - halfHeight,
+													   bounds.getOffsetX() + halfWidth, bounds.getOffsetY() + halfHeight,
+													   body);
+		}
+		
+		staticIndexDirty = false;
+	}
+	
+	/**
+	 * Move the entry of a single static body in the index to its current 
+	 * bounds. This is called by the body when it's moved, rotated or given
+	 * a new shape, only its own proxy is touched.
+	 * 
+	 * @param body The static body that has moved
+	 */
+	void staticBodyMoved(Body body) {
+		if (staticIndexDirty || (body.staticProxy == -1)) {
+			// the rebuild before the next collision will pick it up
+			return;
+		}
+		
+		body.updateWorldBounds();
+		AABox bounds = body.getWorldBounds();
+		float halfWidth = bounds.getWidth() / 2;
+		float halfHeight = bounds.getHeight() / 2;
+		staticIndex.moveProxy(body.staticProxy, bounds.getOffsetX() - halfWidth, bounds.getOffsetY() - halfHeight,
+							  bounds.getOffsetX() + halfWidth, bounds.getOffsetY() + halfHeight);
+	}
+	
+	/**
+	 * Notify the space that static bodies have been moved, the index of 
+	 * static bodies will be rebuilt before the next collision. Moving, 
+	 * rotating or reshaping a static body updates its own entry in the 
+	 * index automatically, so this is only needed for changes the space 
+	 * can't see such as a shape being changed in place.
+	 */
+	public void staticBodiesMoved() {
+		staticIndexDirty = true;
 	}
 
 	/**
 	 * Remove all the elements from this space
 	 */
 	public void clear() {
+		for (int i=0;i<staticBodies.size();i++) {
+			staticBodies.get(i).staticProxy = -1;
+		}
 		bodies.clear();
+		dynamicBodies.clear();
+		staticBodies.clear();
+		staticIndex.clear();
+		staticPairs.clear();
+		sensorPairs.clear();
+		lastSensorPairs.clear();
 		arbiters.clear();
                 overlapList.clear();
+		axes.clear();
 	}
 	
 	/**
@@ -84,7 +345,14 @@ public class CollisionSpace implements CollisionContext {
 	 */
 	public void add(Body body) {
 		body.setAdded(true);
+		body.wakeUp();
 		bodies.add(body);
+		if (body.isStatic()) {
+			staticBodies.add(body);
+			staticIndexDirty = true;
+		} else {
+			dynamicBodies.add(body);
+		}
                 body.setCollisionSpace(this); 
 	}
 	
@@ -96,6 +364,13 @@ public class CollisionSpace implements CollisionContext {
 	public void remove(Body body) {
 		body.setAdded(false);
 		bodies.remove(body);
+		if (body.isStatic()) {
+			staticBodies.remove(body);
+			body.staticProxy = -1;
+			staticIndexDirty = true;
+		} else {
+			dynamicBodies.remove(body);
+		}
                 
 	}
 	
@@ -108,6 +383,36 @@ public class CollisionSpace implements CollisionContext {
 		return bodies;
 	}
 	
+	/**
+	 * Exclude every body in a group from colliding with the others in the
+	 * group, e.g. the parts of a ragdoll.
+	 * 
+	 * @param group The bodies to exclude from colliding with each other
+	 */
+	public void addExcludedGroup(BodyList group) {
+		for (int i=0;i<group.size();i++) {
+			Body body = group.get(i);
+			for (int j=i+1;j<group.size();j++) {
+				body.addExcludedBody(group.get(j));
+			}
+		}
+	}
+	
+	/**
+	 * Allow every body in a group to collide with the others in the group 
+	 * again
+	 * 
+	 * @param group The bodies to allow to collide with each other
+	 */
+	public void removeExcludedGroup(BodyList group) {
+		for (int i=0;i<group.size();i++) {
+			Body body = group.get(i);
+			for (int j=i+1;j<group.size();j++) {
+				body.removeExcludedBody(group.get(j));
+			}
+		}
+	}
+	
 	/**
 	 * Set the strategy used to determine the bodies for collision in the
 	 * broad phase.
@@ -159,20 +464,10 @@ public class CollisionSpace implements CollisionContext {
          */
         public void nullifyArbiters(Body b)
         {
-              for(Arbiter arb: arbiters.values())
-              {
-                  if(arb.concerns(b))
-                  {
-                      arbiters.remove(arb.keyCode());
-                  }
-              }
-             
-              for(Arbiter arb: overlapList.values())
+              for(int i = b.getArbiterCount() - 1; i >= 0; i--)
               {
-                  if(arb.concerns(b))
-                  {
-                      overlapList.remove(arb.keyCode());
-                  }
+                  Arbiter arb = b.getArbiter(i);
+                  arb.map.remove(PairList.getKey(arb.getBody1(), arb.getBody2()));
               }
         }
         
@@ -190,133 +485,462 @@ public class CollisionSpace implements CollisionContext {
 			
 			for (int j = i+1; j < bodyList.size(); ++j)
 			{
-				Body bj = bodyList.get(j);
-                                
-                                boolean doBitmask = true;
-                                boolean doOverlap = true;
-                                
-                                //if the body is in the others included list, always do the collision
-                                if(!bi.getIncludedList().contains(bj))
-                                {
-                                
-                                    if ( !(bi.getBitmask() == 0 || bj.getBitmask() == 0) && (bi.getBitmask() & bj.getBitmask()) != 0 )
-                                        doBitmask = false;
+				resolve(bi, bodyList.get(j), dt);
+			}
+		}
+	}
+	
+	/**
+	 * @see net.phys2d.raw.CollisionContext#resolvePairs(net.phys2d.raw.PairList, float)
+	 */
+	public void resolvePairs(PairList pairs, float dt) 
+	{
+		for (int i = 0; i < pairs.size(); ++i)
+		{
+			Body bi = pairs.getBodyA(i);
+			if (bi.disabled()) {
+				continue;
+			}
+			
+			resolve(bi, pairs.getBodyB(i), dt);
+		}
+	}
+	
+	/**
+	 * Resolve and store the collision between a single pair of bodies. If
+	 * the narrow phase runs on a pool the pair is only queued, it's
+	 * resolved along with the rest of the step's pairs once the broad 
+	 * phase is complete.
+	 * 
+	 * @param bi The first body of the pair
+	 * @param bj The second body of the pair
+	 * @param dt The time thats passed since last collision check
+	 */
+	private void resolve(Body bi, Body bj, float dt) 
+	{
+		if (!categoryFilter.collides(bi, bj)) {
+			return;
+		}
+		if (bi.isSensor() || bj.isSensor()) {
+			resolveSensor(bi, bj);
+			return;
+		}
+		
+		if (narrowPhasePool != null) {
+			// pairs that are apart with no arbiter to drop have nothing to do
+			long key = PairList.getKey(bi, bj);
+			if (bi.getWorldBounds().touches(bj.getWorldBounds())
+				|| arbiters.containsKey(key) || overlapList.containsKey(key)) {
+				candidates.add(bi, bj);
+			}
+			return;
+		}
+		
+		if (prepare(scratch, bi, bj, true)) {
+			collide(scratch);
+		}
+		merge(scratch);
+	}
+	
+	/**
+	 * Run the narrow phase over the pairs queued this step. The pairs are
+	 * prepared in turn, their contacts found on the pool and the results
+	 * merged back in turn in the order the pairs were found, so the 
+	 * arbiters and events come out the same as resolving each pair as it's
+	 * found.
+	 */
+	private void resolveCandidates() {
+		int count = candidates.size();
+		if (pending.length < count) {
+			Candidate[] temp = new Candidate[Math.max(count, pending.length * 2)];
+			System.arraycopy(pending, 0, temp, 0, pending.length);
+			for (int i=pending.length;i<temp.length;i++) {
+				temp[i] = new Candidate();
+			}
+			pending = temp;
+		}
+		
+		for (int i=0;i<count;i++) {
+			Candidate candidate = pending[i];
+			if (prepare(candidate, candidates.getBodyA(i), candidates.getBodyB(i), false)) {
+				// bring the cached geometry up to date while only one 
+				// thread is looking at it
+				candidate.body1.getWorldGeometry();
+				candidate.body2.getWorldGeometry();
+			}
+		}
+		
+		narrowPhasePool.invoke(new NarrowPhaseTask(0, count));
+		
+		for (int i=0;i<count;i++) {
+			merge(pending[i]);
+			pending[i].clear();
+		}
+		candidates.clear();
+	}
+	
+	/**
+	 * Check whether a pair of bodies should be collided at all, noting the
+	 * kinds of collision they have
+	 * 
+	 * @param candidate The candidate to note the kinds of collision in
+	 * @param bi The first body of the pair
+	 * @param bj The second body of the pair
+	 * @param checkMass True if pairs of bodies that can't be moved should be rejected
+	 * @return True if the pair should be collided
+	 */
+	private boolean accepts(Candidate candidate, Body bi, Body bj, boolean checkMass) {
+		if (isSleeping(bi, bj)) {
+			return false;
+		}
+		
+                boolean doBitmask = true;
+                boolean doOverlap = true;
+                
+                //if the body is in the others included list, always do the collision
+                if(!bi.isIncluded(bj))
+                {
+                
+                    if ( !(bi.getBitmask() == 0 || bj.getBitmask() == 0) && (bi.getBitmask() & bj.getBitmask()) != 0 )
+                        doBitmask = false;
 
-                                    if ( (bi.getOverlapMask() == 0 || bj.getOverlapMask() == 0) || (bi.getOverlapMask() & bj.getOverlapMask()) == 0)
-                                        doOverlap = false;
+                    if ( (bi.getOverlapMask() == 0 || bj.getOverlapMask() == 0) || (bi.getOverlapMask() & bj.getOverlapMask()) == 0)
+                        doOverlap = false;
 
-                                    if (bj.disabled()) {
-                                            continue;
-                                    }
-                                    if (!doBitmask && !doOverlap){
-                                            continue;
-                                    }
-                                    if (bi.getExcludedList().contains(bj)) {
-                                            continue;
-                                    }
-                                    if (bi.getInvMass() == 0.0f && bj.getInvMass() == 0.0f) {
-                                            continue;
-                                    }
-                                }
-                                else
-                                {
-                                    doOverlap = false;
-                                }
-				if (!bi.getShape().getBounds().touches(bi.getPosition().getX(), 
-                                                                        bi.getPosition().getY(), 
-                                                                        bj.getShape().getBounds(), 
-                                                                        bj.getPosition().getX(), 
-                                                                        bj.getPosition().getY())) 
-                                {
-                                       //if the objects arnt touching anymore remove the arbiter
-                                        boolean removePhysics;
-                                        boolean removeOverlap;
-					removePhysics = arbiters.remove(String.valueOf(bi.hashCode())+String.valueOf(bj.hashCode()))!=null;
-                                        removeOverlap =overlapList.remove(String.valueOf(bi.hashCode())+String.valueOf(bj.hashCode()))!=null;
-                                        
-                                        if(removePhysics || removeOverlap)
-                                        {
-                                            notifySeparation(bi,bj);
-                                        }
-                                        
-					continue;
-				}
-				
-				Arbiter newArb = new Arbiter(bi, bj);
-				newArb.collide(dt);
-				
-				if (newArb.getNumContacts() > 0)
-				{
-					
-                                        if (doOverlap)
-                                        {
-                                            if (!overlapList.containsKey(newArb.keyCode()))
-                                            {
-                                                Contact c = newArb.getContact(0);
-                                                notifyCollision(bi,bj,c.getPosition(),c.getNormal(),c.getSeparation());
-                                                overlapList.put(newArb.keyCode(),newArb);
-                                            }
-                                        }
-                                        else if (doBitmask)
-                                        {
-                                            bi.collided(bj);
-					    bj.collided(bi);
-                                        
-                                            if (arbiters.containsKey(newArb.keyCode())) 
-                                            {
-                                                    Arbiter arb = arbiters.get(newArb.keyCode());
-                                                    arb.update(newArb.getContacts(), newArb.getNumContacts());
-                                            } 
-                                            else 
-                                            {
-                                                    Contact c = newArb.getContact(0);
+                    if (bj.disabled()) {
+                            return false;
+                    }
+                    if (!doBitmask && !doOverlap){
+                            return false;
+                    }
+                    if (bi.isExcluded(bj)) {
+                            return false;
+                    }
+                    if (checkMass && bi.getInvMass() == 0.0f && bj.getInvMass() == 0.0f) {
+                            return false;
+                    }
+                }
+                else
+                {
+                    doOverlap = false;
+                }
+                
+                candidate.doBitmask = doBitmask;
+                candidate.doOverlap = doOverlap;
+                return true;
+	}
+	
+	/**
+	 * Check if a pair of bodies is asleep. Sleeping bodies only need 
+	 * colliding against bodies that are awake, their arbiters are kept 
+	 * as they were until they wake.
+	 * 
+	 * @param bi The first body of the pair
+	 * @param bj The second body of the pair
+	 * @return True if neither body is awake and at least one is asleep
+	 */
+	private boolean isSleeping(Body bi, Body bj) {
+		return (bi.isAsleep() || bj.isAsleep()) 
+			&& (bi.isAsleep() || bi.isStatic()) && (bj.isAsleep() || bj.isStatic());
+	}
+	
+	/**
+	 * Mark the arbiters held for a pair as found this step
+	 * 
+	 * @param key The key of the pair
+	 */
+	private void keep(long key) {
+		Arbiter arbiter = arbiters.get(key);
+		if (arbiter != null) {
+			arbiter.stamp = stamp;
+		}
+		arbiter = overlapList.get(key);
+		if (arbiter != null) {
+			arbiter.stamp = stamp;
+		}
+	}
+	
+	/**
+	 * Prepare a pair of bodies for the narrow phase, working out whether
+	 * they need colliding and which way round. Only reads the state of
+	 * the space.
+	 * 
+	 * @param candidate The candidate to prepare
+	 * @param bi The first body of the pair
+	 * @param bj The second body of the pair
+	 * @param checkMass True if pairs of bodies that can't be moved should be rejected,
+	 * false if that's left to the merge since an earlier pair may make them moveable
+	 * @return True if the pair needs colliding
+	 */
+	private boolean prepare(Candidate candidate, Body bi, Body bj, boolean checkMass) {
+		candidate.bodyA = bi;
+		candidate.bodyB = bj;
+		candidate.key = PairList.getKey(bi, bj);
+		candidate.numContacts = 0;
+		
+		if (!accepts(candidate, bi, bj, checkMass)) {
+			candidate.state = Candidate.REJECTED;
+			return false;
+		}
+		// a pair checked with its masses is merged straight after so the 
+		// check still holds then
+		candidate.checked = checkMass;
+		if (!bi.getWorldBounds().touches(bj.getWorldBounds())) {
+			candidate.state = Candidate.APART;
+			return false;
+		}
+		
+		// collide in the order of any existing arbiter so that its contact
+		// normals still point the same way when updated
+		Arbiter existing = arbiters.get(candidate.key);
+		candidate.existing = existing;
+		if (existing != null) {
+			candidate.body1 = existing.getBody1();
+			candidate.body2 = existing.getBody2();
+			candidate.collider = existing.getCollider();
+		} else {
+			candidate.body1 = bi;
+			candidate.body2 = bj;
+			candidate.collider = Collide.getCollider(bi, bj);
+		}
+		// the axis is kept by pair rather than by arbiter so that pairs 
+		// whose bounds overlap while they're apart keep it too
+		if (candidate.collider instanceof CachingCollider) {
+			candidate.axis = axes.get(candidate.key, stamp);
+		} else {
+			candidate.axis = null;
+		}
+		candidate.state = Candidate.TOUCHING;
+		return true;
+	}
+	
+	/**
+	 * Find the contacts between a prepared pair of bodies. Only touches 
+	 * the candidate and the separating axis kept for the pair so any 
+	 * number of candidates may be collided at once.
+	 * 
+	 * @param candidate The candidate to collide
+	 */
+	private void collide(Candidate candidate) {
+		Contact[] contacts = candidate.contacts;
+		for (int i=0;i<contacts.length;i++) {
+			contacts[i].accumulatedNormalImpulse = 0;
+			contacts[i].accumulatedTangentImpulse = 0;
+		}
+		
+		int numContacts;
+		if ((candidate.axis != null) && (candidate.collider instanceof CachingCollider)) {
+			numContacts = ((CachingCollider) candidate.collider).collide(contacts, candidate.body1, candidate.body2, candidate.axis);
+		} else {
+			numContacts = candidate.collider.collide(contacts, candidate.body1, candidate.body2);
+		}
+		if (manifoldReduction) {
+			numContacts = Arbiter.reduce(contacts, numContacts);
+		}
+		candidate.numContacts = numContacts;
+	}
+	
+	/**
+	 * Store the result of colliding a pair of bodies, updating the arbiters 
+	 * and notifying listeners
+	 * 
+	 * @param candidate The candidate whose result should be stored
+	 */
+	private void merge(Candidate candidate) {
+		long key = candidate.key;
+		if (candidate.state != Candidate.APART) {
+			// the pair was found so anything held for it stays unless 
+			// it's dropped below
+			keep(key);
+		}
+		if (candidate.state == Candidate.REJECTED) {
+			return;
+		}
+		
+		Body bi = candidate.bodyA;
+		Body bj = candidate.bodyB;
+		
+		// earlier pairs may have changed what collides since a pooled pair
+		// was prepared, e.g. by waking a resting body
+		if (!candidate.checked && !accepts(candidate, bi, bj, true)) {
+			return;
+		}
+		boolean doBitmask = candidate.doBitmask;
+		boolean doOverlap = candidate.doOverlap;
+		
+		if (candidate.state == Candidate.APART) 
+                {
+                       //if the objects arnt touching anymore remove the arbiter
+                        boolean removePhysics;
+                        boolean removeOverlap;
+			removePhysics = arbiters.remove(key)!=null;
+                        removeOverlap =overlapList.remove(key)!=null;
+                        
+                        if(removePhysics || removeOverlap)
+                        {
+                            notifySeparation(bi,bj);
+                        }
+                        
+			return;
+		}
+		
+		Arbiter existing = candidate.existing;
+		Body body1 = candidate.body1;
+		Body body2 = candidate.body2;
+		Contact[] contacts = candidate.contacts;
+		int numContacts = candidate.numContacts;
+		
+		if (numContacts > 0)
+		{
+			
+                        if (doOverlap)
+                        {
+                            if (!overlapList.containsKey(key))
+                            {
+                                Contact c = contacts[0];
+                                notifyCollision(bi,bj,c.getPosition(),c.getNormal(),c.getSeparation());
+                                Arbiter newOverlap = new Arbiter(body1, body2, contacts, numContacts);
+                                newOverlap.stamp = stamp;
+                                overlapList.put(key,newOverlap);
+                            }
+                        }
+                        else if (doBitmask)
+                        {
+                            bi.collided(bj);
+			    bj.collided(bi);
+                        
+                            if (existing != null) 
+                            {
+                                    existing.update(contacts, numContacts);
+                            } 
+                            else 
+                            {
+                                    Contact c = contacts[0];
 
-                                                    notifyCollision(bi,bj,c.getPosition(),c.getNormal(),c.getSeparation());
-                                                    arbiters.put(newArb.keyCode(),newArb);
-                                                    newArb.init();
-                                            }
-                                        }
-                                        else
-                                            continue;
-				}
-				else
-				{                                   
-                                        if (doOverlap && overlapList.containsKey(newArb.keyCode()))
-                                        {
-                                            
-                                          //check if the smaller shape is inside the bigger one
-                                            Body smaller, bigger;
-                                            if((bi.getShape().getBounds().getHeight() * bi.getShape().getBounds().getWidth()) > (bj.getShape().getBounds().getHeight() * bj.getShape().getBounds().getWidth()))
-                                            {
-                                                bigger = bi;
-                                                smaller = bj;
-                                            }
-                                            else
-                                            {
-                                                bigger = bj;
-                                                smaller = bi;
-                                            }
-                                            
-                                            if(!bigger.getShape().contains(new Vector2f(smaller.getPosition()), bigger.getPosition(), bigger.getRotation()))
-                                            {                        
-                                                overlapList.remove(newArb.keyCode());
-                                                notifySeparation(bi,bj);
-                                            }
-                                           
-                                            
-                                        }
-                                        else if( doBitmask && arbiters.containsKey(newArb.keyCode()))
-                                        {
-                                            arbiters.remove(newArb.keyCode());
-                                            overlapList.remove(newArb.keyCode());
-                                            notifySeparation(bi,bj);
-                                        }                                
-                                        
-				}
-			}
+                                    notifyCollision(bi,bj,c.getPosition(),c.getNormal(),c.getSeparation());
+                                    Arbiter newArb = new Arbiter(body1, body2, contacts, numContacts);
+                                    newArb.stamp = stamp;
+                                    arbiters.put(key,newArb);
+                                    newArb.init();
+                            }
+                        }
+                        else
+                            return;
 		}
+		else
+		{                                   
+                        if (doOverlap && overlapList.containsKey(key))
+                        {
+                            
+                          //check if the smaller shape is inside the bigger one
+                            Body smaller, bigger;
+                            if((bi.getShape().getBounds().getHeight() * bi.getShape().getBounds().getWidth()) > (bj.getShape().getBounds().getHeight() * bj.getShape().getBounds().getWidth()))
+                            {
+                                bigger = bi;
+                                smaller = bj;
+                            }
+                            else
+                            {
+                                bigger = bj;
+                                smaller = bi;
+                            }
+                            
+                            if(!contains(bigger, smaller.getPosition()))
+                            {                        
+                                overlapList.remove(key);
+                                notifySeparation(bi,bj);
+                            }
+                           
+                            
+                        }
+                        else if( doBitmask && arbiters.containsKey(key))
+                        {
+                            arbiters.remove(key);
+                            overlapList.remove(key);
+                            notifySeparation(bi,bj);
+                        }                                
+                        
+		}
+	}
+
+	/**
+	 * Check if the shape of a body contains a point. Shapes with vertices
+	 * are tested against the body's cached world geometry.
+	 * 
+	 * @param body The body whose shape should be checked
+	 * @param point The point to check for
+	 * @return True if the point is within the body's shape
+	 */
+	private boolean contains(Body body, ROVector2f point) {
+		WorldGeometry geometry = body.getWorldGeometry();
+		if (geometry.getVertices().length >= 3) {
+			return geometry.contains(point.getX(), point.getY());
+		}
+		
+		return body.getShape().contains(new Vector2f(point), body.getPosition(), body.getRotation());
+	}
+
+	/**
+	 * Indicate whether the contacts found between a pair of bodies should
+	 * be reduced to the two points that best describe them, the deepest
+	 * and the furthest from it. This is on by default, it saves solver
+	 * work and keeps stacks steadier at low iteration counts.
+	 * 
+	 * @param manifoldReduction True if contacts should be reduced
+	 */
+	public void setManifoldReduction(boolean manifoldReduction) {
+		this.manifoldReduction = manifoldReduction;
+	}
+	
+	/**
+	 * Check whether the contacts found between a pair of bodies are reduced
+	 * to a two point manifold
+	 * 
+	 * @return True if contacts are reduced
+	 */
+	public boolean isManifoldReduction() {
+		return manifoldReduction;
 	}
 
+	/**
+	 * Set the pool the narrow phase is run on. With a pool the pairs found
+	 * by the broad phase are queued, their contacts are found on the pool 
+	 * and the results are then stored in the order the pairs were found, so
+	 * arbiters and collision events come out the same as without a pool. 
+	 * Each pair is only collided once a step however often it's found.
+	 * 
+	 * @param pool The pool to run the narrow phase on, or null to resolve pairs as they're found
+	 */
+	public void setNarrowPhasePool(ForkJoinPool pool) {
+		this.narrowPhasePool = pool;
+	}
+	
+	/**
+	 * Get the pool the narrow phase is run on
+	 * 
+	 * @return The pool the narrow phase is run on, or null if pairs are resolved as they're found
+	 */
+	public ForkJoinPool getNarrowPhasePool() {
+		return narrowPhasePool;
+	}
+	
+	/**
+	 * @see net.phys2d.raw.CollisionContext#getCategoryFilter()
+	 */
+	public CategoryFilter getCategoryFilter() {
+		return categoryFilter;
+	}
+	
+	/**
+	 * Set the filter deciding which categories of body are paired, e.g. 
+	 * to share one filter between several spaces
+	 * 
+	 * @param filter The filter deciding which categories of body are paired
+	 */
+	public void setCategoryFilter(CategoryFilter filter) {
+		this.categoryFilter = filter;
+	}
+	
 	/**
 	 * Get the bitmask used to determine which
 	 * bits are allowed to collide.
@@ -360,4 +984,130 @@ public class CollisionSpace implements CollisionContext {
 	public void removeBit(long bitmask) {
 		this.bitmask -= bitmask & this.bitmask;
 	}
+	
+	/**
+	 * The callback collecting the static bodies touching a dynamic body
+	 * from the static index
+	 */
+	private class StaticQuery implements DynamicAABBTree.QueryCallback {
+		/** The dynamic body the index is being queried for */
+		private Body body;
+		
+		/**
+		 * @see net.phys2d.raw.strategies.DynamicAABBTree.QueryCallback#queryProxy(int)
+		 */
+		public boolean queryProxy(int proxy) {
+			Body other = (Body) staticIndex.getUserData(proxy);
+			if (categoryFilter.collides(other, body)
+				&& other.getWorldBounds().touches(body.getWorldBounds())) {
+				staticPairs.add(other, body);
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * A pair of bodies going through the narrow phase, holding what's 
+	 * needed to collide them and the contacts found
+	 */
+	private static class Candidate {
+		/** The pair was rejected by its masks, exclusions or state */
+		static final int REJECTED = 0;
+		/** The bounds of the pair don't touch */
+		static final int APART = 1;
+		/** The bounds of the pair touch so the pair has been collided */
+		static final int TOUCHING = 2;
+		
+		/** The first body of the pair as found */
+		private Body bodyA;
+		/** The second body of the pair as found */
+		private Body bodyB;
+		/** The key of the pair */
+		private long key;
+		/** One of the states above */
+		private int state;
+		/** True if the pair collides through its bitmasks */
+		private boolean doBitmask;
+		/** True if the pair overlaps through its overlap masks */
+		private boolean doOverlap;
+		/** True if the pair was fully checked when prepared, so doesn't need checking again on merge */
+		private boolean checked;
+		/** The arbiter already held for the pair, if any */
+		private Arbiter existing;
+		/** The first body to collide */
+		private Body body1;
+		/** The second body to collide */
+		private Body body2;
+		/** The collider used between the bodies */
+		private Collider collider;
+		/** The separating axis kept for the pair, if any */
+		private SeparatingAxis axis;
+		/** The contacts found between the bodies */
+		private Contact[] contacts = new Contact[Arbiter.MAX_POINTS];
+		/** The number of contacts found */
+		private int numContacts;
+		
+		/**
+		 * Create a new candidate
+		 */
+		Candidate() {
+			for (int i=0;i<contacts.length;i++) {
+				contacts[i] = new Contact();
+			}
+		}
+		
+		/**
+		 * Forget the bodies and arbiter of the pair
+		 */
+		void clear() {
+			bodyA = null;
+			bodyB = null;
+			existing = null;
+			body1 = null;
+			body2 = null;
+			collider = null;
+			axis = null;
+			checked = false;
+		}
+	}
+	
+	/**
+	 * The task colliding a run of the queued candidates. Long runs are 
+	 * split in two and forked.
+	 */
+	private class NarrowPhaseTask extends RecursiveAction {
+		/** The version of the serialised form, tasks are never serialised */
+		private static final long serialVersionUID = 1L;
+		/** The first candidate to collide */
+		private int first;
+		/** The candidate after the last to collide */
+		private int last;
+		
+		/**
+		 * Create a new task
+		 * 
+		 * @param first The first candidate to collide
+		 * @param last The candidate after the last to collide
+		 */
+		NarrowPhaseTask(int first, int last) {
+			this.first = first;
+			this.last = last;
+		}
+		
+		/**
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if (last - first > MIN_NARROW_PHASE_BATCH) {
+				int middle = (first + last) >>> 1;
+				invokeAll(new NarrowPhaseTask(first, middle), new NarrowPhaseTask(middle, last));
+			} else {
+				for (int i=first;i<last;i++) {
+					if (pending[i].state == Candidate.TOUCHING) {
+						collide(pending[i]);
+					}
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,245 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+import java.util.Arrays;
+
+/**
+ * Colours the arbiters and joints of an island so that no two constraints 
+ * of the same colour share a body that can move. The constraints of one
+ * colour can then be solved at the same time without any body being 
+ * updated by two threads. Colours are handed out greedily in the order
+ * the constraints come in, so the same island always gets the same 
+ * colouring.
+ * 
+ * Bodies are told apart by the index given to them by the island builder.
+ * Constraints that can't be given one of the colours are put in a last
+ * colour that must be solved on one thread.
+ */
+class ConstraintColoring {
+	/** The number of colours that can be solved in parallel */
+	static final int MAX_COLORS = 64;
+	
+	/** The colours already used by each body, a bit per colour */
+	private long[] used = new long[64];
+	/** The colour of each constraint while colouring */
+	private int[] colors = new int[64];
+	/** The arbiters, grouped by colour */
+	private Arbiter[] arbiters = new Arbiter[64];
+	/** The joints, grouped by colour */
+	private Joint[] joints = new Joint[16];
+	/** The index into the arbiters where each colour starts */
+	private int[] arbiterStart = new int[MAX_COLORS + 2];
+	/** The index into the joints where each colour starts */
+	private int[] jointStart = new int[MAX_COLORS + 2];
+	/** The number of colours used, including the last if it's used */
+	private int numColors;
+	
+	/**
+	 * Colour the constraints of an island
+	 * 
+	 * @param islands The islands the constraints have been grouped into
+	 * @param firstArbiter The index of the first arbiter of the island
+	 * @param lastArbiter The index after the last arbiter of the island
+	 * @param firstJoint The index of the first joint of the island
+	 * @param lastJoint The index after the last joint of the island
+	 */
+	void color(IslandBuilder islands, int firstArbiter, int lastArbiter, int firstJoint, int lastJoint) {
+		int numArbiters = lastArbiter - firstArbiter;
+		int numJoints = lastJoint - firstJoint;
+		
+		if (used.length < islands.size()) {
+			used = new long[islands.size() * 2];
+		}
+		if (colors.length < numArbiters + numJoints) {
+			colors = new int[(numArbiters + numJoints) * 2];
+		}
+		if (arbiters.length < numArbiters) {
+			arbiters = new Arbiter[numArbiters * 2];
+		}
+		if (joints.length < numJoints) {
+			joints = new Joint[numJoints * 2];
+		}
+		Arrays.fill(arbiterStart, 0);
+		Arrays.fill(jointStart, 0);
+		
+		numColors = 0;
+		for (int i=0;i<numArbiters;i++) {
+			Arbiter arbiter = islands.getArbiter(firstArbiter + i);
+			int color = pick(arbiter.getBody1(), arbiter.getBody2());
+			colors[i] = color;
+			arbiterStart[color + 1]++;
+		}
+		for (int i=0;i<numJoints;i++) {
+			Joint joint = islands.getJoint(firstJoint + i);
+			int color = pick(joint.getBody1(), joint.getBody2());
+			colors[numArbiters + i] = color;
+			jointStart[color + 1]++;
+		}
+		for (int i=0;i<numColors;i++) {
+			arbiterStart[i + 1] += arbiterStart[i];
+			jointStart[i + 1] += jointStart[i];
+		}
+		
+		// place each constraint at its colour's start, moving the start 
+		// along, then shift the starts back once all are placed
+		for (int i=0;i<numArbiters;i++) {
+			Arbiter arbiter = islands.getArbiter(firstArbiter + i);
+			arbiters[arbiterStart[colors[i]]++] = arbiter;
+			clear(arbiter.getBody1(), arbiter.getBody2());
+		}
+		for (int i=0;i<numJoints;i++) {
+			Joint joint = islands.getJoint(firstJoint + i);
+			joints[jointStart[colors[numArbiters + i]]++] = joint;
+			clear(joint.getBody1(), joint.getBody2());
+		}
+		for (int i=numColors;i>0;i--) {
+			arbiterStart[i] = arbiterStart[i - 1];
+			jointStart[i] = jointStart[i - 1];
+		}
+		arbiterStart[0] = 0;
+		jointStart[0] = 0;
+	}
+	
+	/**
+	 * Pick the first colour neither body has used yet and mark it used
+	 * 
+	 * @param a The first body of the constraint
+	 * @param b The second body of the constraint
+	 * @return The colour picked
+	 */
+	private int pick(Body a, Body b) {
+		long mask = 0;
+		if (!a.isStatic()) {
+			mask |= used[a.islandIndex];
+		}
+		if (!b.isStatic()) {
+			mask |= used[b.islandIndex];
+		}
+		
+		int color = Long.numberOfTrailingZeros(~mask);
+		if (color < MAX_COLORS) {
+			long bit = 1L << color;
+			if (!a.isStatic()) {
+				used[a.islandIndex] |= bit;
+			}
+			if (!b.isStatic()) {
+				used[b.islandIndex] |= bit;
+			}
+		}
+		
+		numColors = Math.max(numColors, color + 1);
+		return color;
+	}
+	
+	/**
+	 * Clear the colours used by the bodies of a constraint
+	 * 
+	 * @param a The first body of the constraint
+	 * @param b The second body of the constraint
+	 */
+	private void clear(Body a, Body b) {
+		if (!a.isStatic()) {
+			used[a.islandIndex] = 0;
+		}
+		if (!b.isStatic()) {
+			used[b.islandIndex] = 0;
+		}
+	}
+	
+	/**
+	 * Get the number of colours used. If the last colour is used its
+	 * constraints must be solved on one thread.
+	 * 
+	 * @return The number of colours used
+	 */
+	int getNumColors() {
+		return numColors;
+	}
+	
+	/**
+	 * Get the index of the first arbiter of a colour. The arbiters of the
+	 * colour run up to the first arbiter of the next colour.
+	 * 
+	 * @param color The colour, or the number of colours for the end of the last
+	 * @return The index of the colour's first arbiter
+	 */
+	int getFirstArbiter(int color) {
+		return arbiterStart[color];
+	}
+	
+	/**
+	 * Get the index of the first joint of a colour. The joints of the 
+	 * colour run up to the first joint of the next colour.
+	 * 
+	 * @param color The colour, or the number of colours for the end of the last
+	 * @return The index of the colour's first joint
+	 */
+	int getFirstJoint(int color) {
+		return jointStart[color];
+	}
+	
+	/**
+	 * Get an arbiter grouped by colour
+	 * 
+	 * @param i The index of the arbiter
+	 * @return The arbiter at the given index
+	 */
+	Arbiter getArbiter(int i) {
+		return arbiters[i];
+	}
+	
+	/**
+	 * Get a joint grouped by colour
+	 * 
+	 * @param i The index of the joint
+	 * @return The joint at the given index
+	 */
+	Joint getJoint(int i) {
+		return joints[i];
+	}
+	
+	/**
+	 * Forget the constraints coloured
+	 */
+	void clear() {
+		Arrays.fill(arbiters, 0, arbiterStart[numColors], null);
+		Arrays.fill(joints, 0, jointStart[numColors], null);
+		numColors = 0;
+	}
+}
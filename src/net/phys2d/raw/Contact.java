@@ -70,10 +70,18 @@ public strictfp class Contact {
 	float bias;
 	/** The pair of edges this contact is between */
 	FeaturePair feature = new FeaturePair();
+	/** The pair owned by this contact, never shared with a collider or another contact */
+	private FeaturePair ownFeature = feature;
 	/** The restitution at this point of contact */
 	float restitution;
 	/** The bias impulse accumulated */
 	float biasImpulse;
+	/** The offset of the contact from the first body, set before solving */
+	Vector2f r1 = new Vector2f();
+	/** The offset of the contact from the second body, set before solving */
+	Vector2f r2 = new Vector2f();
+	/** The tangent at the contact point, set before solving */
+	Vector2f tangent = new Vector2f();
 	
 	/**
 	 * Create a new contact point
@@ -137,6 +145,16 @@ public strictfp class Contact {
 		this.normal.set(normal);
 	}
 	
+	/**
+	 * Set the normal at the point of contact.
+	 * 
+	 * @param x The x component of the normal
+	 * @param y The y component of the normal
+	 */
+	public void setNormal(float x, float y) {
+		this.normal.set(x, y);
+	}
+	
 	/**
 	 * Set the position of the contact
 	 * 
@@ -146,6 +164,16 @@ public strictfp class Contact {
 		this.position.set(position);
 	}
 	
+	/**
+	 * Set the position of the contact
+	 * 
+	 * @param x The x coordinate of the contact
+	 * @param y The y coordinate of the contact
+	 */
+	public void setPosition(float x, float y) {
+		this.position.set(x, y);
+	}
+	
 	/**
 	 * Get the pairing identifing the location of the contact
 	 * 
@@ -163,6 +191,20 @@ public strictfp class Contact {
 	public void setFeature(FeaturePair pair) {
 		this.feature = pair;
 	}
+	
+	/**
+	 * Set the edges identifying the location of the contact. The edges are
+	 * written into a pair owned by this contact, so no pair is created.
+	 * 
+	 * @param inEdge1 The in edge of the first shape
+	 * @param inEdge2 The in edge of the second shape
+	 * @param outEdge1 The out edge of the first shape
+	 * @param outEdge2 The out edge of the second shape
+	 */
+	public void setFeature(int inEdge1, int inEdge2, int outEdge1, int outEdge2) {
+		ownFeature.set(inEdge1, inEdge2, outEdge1, outEdge2);
+		this.feature = ownFeature;
+	}
 
 	/**
 	 * Set the separation between bodies
@@ -0,0 +1,456 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+import java.util.Arrays;
+
+import net.phys2d.math.MathUtil;
+import net.phys2d.math.ROVector2f;
+
+/**
+ * Runs the contact iterations of a world step over flat arrays. The bodies
+ * touched by the arbiters are given an index and their velocities are
+ * copied into parallel float arrays, the contacts are copied into arrays 
+ * that refer to bodies by index. The impulses are then applied with exactly
+ * the same arithmetic as <code>Arbiter.applyImpulse()</code> and the
+ * results written back to the bodies and contacts. Velocities are limited 
+ * the way <code>Body.validateVelocity()</code> limits them, so bodies that
+ * override it mustn't be solved here.
+ * 
+ * The arrays are kept between steps and only grow.
+ */
+strictfp class ContactSolver {
+	/** The number of bodies and contacts space is made for at first */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/** The bodies being solved, in index order */
+	private Body[] bodies = new Body[INITIAL_CAPACITY];
+	/** The number of bodies being solved */
+	private int numBodies;
+	/** The x component of each body's velocity */
+	private float[] velocityX;
+	/** The y component of each body's velocity */
+	private float[] velocityY;
+	/** The x component of each body's velocity before its last change */
+	private float[] lastVelocityX;
+	/** The y component of each body's velocity before its last change */
+	private float[] lastVelocityY;
+	/** The maximum magnitude of each body's x velocity */
+	private float[] maxVelocityX;
+	/** The maximum magnitude of each body's y velocity */
+	private float[] maxVelocityY;
+	/** Each body's angular velocity */
+	private float[] angularVelocity;
+	/** Each body's angular velocity before its last change */
+	private float[] lastAngularVelocity;
+	/** The x component of each body's bias velocity */
+	private float[] biasedVelocityX;
+	/** The y component of each body's bias velocity */
+	private float[] biasedVelocityY;
+	/** Each body's bias angular velocity */
+	private float[] biasedAngularVelocity;
+	/** Each body's inverse mass */
+	private float[] invMass;
+	/** Each body's inverse inertia */
+	private float[] invI;
+	/** True if the body at an index can move */
+	private boolean[] moveable;
+	/** True if the body at an index can rotate */
+	private boolean[] rotatable;
+	
+	/** The contacts being solved, in order */
+	private Contact[] contacts = new Contact[INITIAL_CAPACITY];
+	/** The number of contacts being solved */
+	private int numContacts;
+	/** The index of the first body of each contact */
+	private int[] body1;
+	/** The index of the second body of each contact */
+	private int[] body2;
+	/** The x component of each contact's normal */
+	private float[] normalX;
+	/** The y component of each contact's normal */
+	private float[] normalY;
+	/** The x offset of each contact from its first body */
+	private float[] r1X;
+	/** The y offset of each contact from its first body */
+	private float[] r1Y;
+	/** The x offset of each contact from its second body */
+	private float[] r2X;
+	/** The y offset of each contact from its second body */
+	private float[] r2Y;
+	/** The mass applied through each contact's normal */
+	private float[] massNormal;
+	/** The mass applied through each contact's tangent */
+	private float[] massTangent;
+	/** The correction factor for each contact's penetration */
+	private float[] bias;
+	/** The restitution at each contact */
+	private float[] restitution;
+	/** The friction between the bodies of each contact */
+	private float[] friction;
+	/** The impulse accumulated along each contact's normal */
+	private float[] accumulatedNormalImpulse;
+	/** The impulse accumulated along each contact's tangent */
+	private float[] accumulatedTangentImpulse;
+	/** The bias impulse accumulated at each contact */
+	private float[] biasImpulse;
+	
+	/**
+	 * Create a new solver with room for a few bodies and contacts
+	 */
+	ContactSolver() {
+		allocateBodies(INITIAL_CAPACITY);
+		allocateContacts(INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Size the body arrays, keeping their contents
+	 * 
+	 * @param capacity The number of bodies to make room for
+	 */
+	private void allocateBodies(int capacity) {
+		bodies = Arrays.copyOf(bodies, capacity);
+		velocityX = grow(velocityX, capacity);
+		velocityY = grow(velocityY, capacity);
+		lastVelocityX = grow(lastVelocityX, capacity);
+		lastVelocityY = grow(lastVelocityY, capacity);
+		maxVelocityX = grow(maxVelocityX, capacity);
+		maxVelocityY = grow(maxVelocityY, capacity);
+		angularVelocity = grow(angularVelocity, capacity);
+		lastAngularVelocity = grow(lastAngularVelocity, capacity);
+		biasedVelocityX = grow(biasedVelocityX, capacity);
+		biasedVelocityY = grow(biasedVelocityY, capacity);
+		biasedAngularVelocity = grow(biasedAngularVelocity, capacity);
+		invMass = grow(invMass, capacity);
+		invI = grow(invI, capacity);
+		moveable = moveable == null ? new boolean[capacity] : Arrays.copyOf(moveable, capacity);
+		rotatable = rotatable == null ? new boolean[capacity] : Arrays.copyOf(rotatable, capacity);
+	}
+	
+	/**
+	 * Size the contact arrays, keeping their contents
+	 * 
+	 * @param capacity The number of contacts to make room for
+	 */
+	private void allocateContacts(int capacity) {
+		contacts = Arrays.copyOf(contacts, capacity);
+		body1 = body1 == null ? new int[capacity] : Arrays.copyOf(body1, capacity);
+		body2 = body2 == null ? new int[capacity] : Arrays.copyOf(body2, capacity);
+		normalX = grow(normalX, capacity);
+		normalY = grow(normalY, capacity);
+		r1X = grow(r1X, capacity);
+		r1Y = grow(r1Y, capacity);
+		r2X = grow(r2X, capacity);
+		r2Y = grow(r2Y, capacity);
+		massNormal = grow(massNormal, capacity);
+		massTangent = grow(massTangent, capacity);
+		bias = grow(bias, capacity);
+		restitution = grow(restitution, capacity);
+		friction = grow(friction, capacity);
+		accumulatedNormalImpulse = grow(accumulatedNormalImpulse, capacity);
+		accumulatedTangentImpulse = grow(accumulatedTangentImpulse, capacity);
+		biasImpulse = grow(biasImpulse, capacity);
+	}
+	
+	/**
+	 * Grow an array, keeping its contents
+	 * 
+	 * @param array The array to grow or null to create one
+	 * @param capacity The new length of the array
+	 * @return The grown array
+	 */
+	private static float[] grow(float[] array, int capacity) {
+		return array == null ? new float[capacity] : Arrays.copyOf(array, capacity);
+	}
+	
+	/**
+	 * Add the contacts of an arbiter to be solved. The arbiter must have
+	 * been through <code>preStep()</code> this step.
+	 * 
+	 * @param arbiter The arbiter whose contacts should be solved
+	 */
+	void add(Arbiter arbiter) {
+		int numNew = arbiter.getNumContacts();
+		if (numNew == 0) {
+			return;
+		}
+		
+		int index1 = indexOf(arbiter.getBody1());
+		int index2 = indexOf(arbiter.getBody2());
+		
+		if (numContacts + numNew > contacts.length) {
+			allocateContacts(Math.max(contacts.length * 2, numContacts + numNew));
+		}
+		
+		Contact[] arbiterContacts = arbiter.getContacts();
+		for (int i=0;i<numNew;i++) {
+			Contact c = arbiterContacts[i];
+			int k = numContacts++;
+			
+			contacts[k] = c;
+			body1[k] = index1;
+			body2[k] = index2;
+			normalX[k] = c.normal.x;
+			normalY[k] = c.normal.y;
+			r1X[k] = c.r1.x;
+			r1Y[k] = c.r1.y;
+			r2X[k] = c.r2.x;
+			r2Y[k] = c.r2.y;
+			massNormal[k] = c.massNormal;
+			massTangent[k] = c.massTangent;
+			bias[k] = c.bias;
+			restitution[k] = c.restitution;
+			friction[k] = arbiter.getFriction();
+			accumulatedNormalImpulse[k] = c.accumulatedNormalImpulse;
+			accumulatedTangentImpulse[k] = c.accumulatedTangentImpulse;
+			biasImpulse[k] = c.biasImpulse;
+		}
+	}
+	
+	/**
+	 * Get the index of a body in the arrays, copying its state in 
+	 * if it hasn't been seen yet. Static bodies are given a fresh index
+	 * each time and never marked, their state can't change so the copies
+	 * all agree and solvers running on other threads can share them.
+	 * 
+	 * @param body The body to find
+	 * @return The index of the body
+	 */
+	private int indexOf(Body body) {
+		if (body.solverIndex >= 0) {
+			return body.solverIndex;
+		}
+		
+		if (numBodies == bodies.length) {
+			allocateBodies(numBodies * 2);
+		}
+		
+		int i = numBodies++;
+		if (!body.isStatic()) {
+			body.solverIndex = i;
+		}
+		bodies[i] = body;
+		
+		ROVector2f velocity = body.getVelocity();
+		ROVector2f lastVelocity = body.getLastVelocity();
+		ROVector2f biasedVelocity = body.getBiasedVelocity();
+		ROVector2f maxVelocity = body.getMaxVelocity();
+		velocityX[i] = velocity.getX();
+		velocityY[i] = velocity.getY();
+		lastVelocityX[i] = lastVelocity.getX();
+		lastVelocityY[i] = lastVelocity.getY();
+		maxVelocityX[i] = maxVelocity == null ? Float.POSITIVE_INFINITY : maxVelocity.getX();
+		maxVelocityY[i] = maxVelocity == null ? Float.POSITIVE_INFINITY : maxVelocity.getY();
+		angularVelocity[i] = body.getAngularVelocity();
+		lastAngularVelocity[i] = body.getLastAngularVelocity();
+		biasedVelocityX[i] = biasedVelocity.getX();
+		biasedVelocityY[i] = biasedVelocity.getY();
+		biasedAngularVelocity[i] = body.getBiasedAngularVelocity();
+		invMass[i] = body.getInvMass();
+		invI[i] = body.getInvI();
+		moveable[i] = body.isMoveable();
+		rotatable[i] = body.isRotatable();
+		
+		return i;
+	}
+	
+	/**
+	 * Apply the contact impulses over the arrays
+	 * 
+	 * @param iterations The number of times to pass over the contacts
+	 */
+	void solve(int iterations) {
+		for (int it=0;it<iterations;it++) {
+			for (int i=0;i<numContacts;i++) {
+				int a = body1[i];
+				int b = body2[i];
+				float nx = normalX[i];
+				float ny = normalY[i];
+				float r1x = r1X[i];
+				float r1y = r1Y[i];
+				float r2x = r2X[i];
+				float r2y = r2Y[i];
+				float invMass1 = invMass[a];
+				float invMass2 = invMass[b];
+				float invI1 = invI[a];
+				float invI2 = invI[b];
+				
+				// Relative velocity at contact
+				float w1 = angularVelocity[a];
+				float w2 = angularVelocity[b];
+				float dvx = velocityX[b] + (-w2 * r2y) - velocityX[a] - (-w1 * r1y);
+				float dvy = velocityY[b] + (w2 * r2x) - velocityY[a] - (w1 * r1x);
+				float vn = (dvx * nx) + (dvy * ny);
+				
+				float normalImpulse = massNormal[i] * (restitution[i] - vn);
+				float oldNormalImpulse = accumulatedNormalImpulse[i];
+				accumulatedNormalImpulse[i] = Math.max(oldNormalImpulse + normalImpulse, 0.0f);
+				normalImpulse = accumulatedNormalImpulse[i] - oldNormalImpulse;
+				
+				float px = nx * normalImpulse;
+				float py = ny * normalImpulse;
+				adjustVelocity(a, px * -invMass1, py * -invMass1);
+				adjustAngularVelocity(a, -(invI1 * ((r1x * py) - (r1y * px))));
+				adjustVelocity(b, px * invMass2, py * invMass2);
+				adjustAngularVelocity(b, invI2 * ((r2x * py) - (r2y * px)));
+				
+				// Bias impulse
+				float wb1 = biasedAngularVelocity[a];
+				float wb2 = biasedAngularVelocity[b];
+				dvx = biasedVelocityX[b] + (-wb2 * r2y) - biasedVelocityX[a] - (-wb1 * r1y);
+				dvy = biasedVelocityY[b] + (wb2 * r2x) - biasedVelocityY[a] - (wb1 * r1x);
+				float vnb = (dvx * nx) + (dvy * ny);
+				
+				float bImpulse = massNormal[i] * (-vnb + bias[i]);
+				float oldBiasImpulse = biasImpulse[i];
+				biasImpulse[i] = Math.max(oldBiasImpulse + bImpulse, 0.0f);
+				bImpulse = biasImpulse[i] - oldBiasImpulse;
+				
+				float pbx = nx * bImpulse;
+				float pby = ny * bImpulse;
+				if (moveable[a]) {
+					biasedVelocityX[a] += pbx * -invMass1;
+					biasedVelocityY[a] += pby * -invMass1;
+				}
+				if (rotatable[a]) {
+					biasedAngularVelocity[a] += -(invI1 * ((r1x * pby) - (r1y * pbx)));
+				}
+				if (moveable[b]) {
+					biasedVelocityX[b] += pbx * invMass2;
+					biasedVelocityY[b] += pby * invMass2;
+				}
+				if (rotatable[b]) {
+					biasedAngularVelocity[b] += (invI2 * ((r2x * pby) - (r2y * pbx)));
+				}
+				
+				// Friction (tangent) impulse
+				float maxTangentImpulse = friction[i] * accumulatedNormalImpulse[i];
+				
+				w1 = angularVelocity[a];
+				w2 = angularVelocity[b];
+				dvx = velocityX[b] + (-w2 * r2y) - velocityX[a] - (-w1 * r1y);
+				dvy = velocityY[b] + (w2 * r2x) - velocityY[a] - (w1 * r1x);
+				
+				// the tangent is the normal crossed with 1
+				float tx = ny;
+				float ty = -nx;
+				float vt = (dvx * tx) + (dvy * ty);
+				float tangentImpulse = massTangent[i] * (-vt);
+				
+				float oldTangentImpulse = accumulatedTangentImpulse[i];
+				accumulatedTangentImpulse[i] = MathUtil.clamp(oldTangentImpulse + tangentImpulse, -maxTangentImpulse, maxTangentImpulse);
+				tangentImpulse = accumulatedTangentImpulse[i] - oldTangentImpulse;
+				
+				px = tx * tangentImpulse;
+				py = ty * tangentImpulse;
+				adjustVelocity(a, px * -invMass1, py * -invMass1);
+				adjustAngularVelocity(a, -invI1 * ((r1x * py) - (r1y * px)));
+				adjustVelocity(b, px * invMass2, py * invMass2);
+				adjustAngularVelocity(b, invI2 * ((r2x * py) - (r2y * px)));
+			}
+		}
+	}
+	
+	/**
+	 * Adjust the velocity of a body the way <code>Body.adjustVelocity()</code>
+	 * does, including the limit on its maximum velocity.
+	 * 
+	 * @param i The index of the body
+	 * @param dx The change in the x component of the velocity
+	 * @param dy The change in the y component of the velocity
+	 */
+	private void adjustVelocity(int i, float dx, float dy) {
+		if (!moveable[i]) {
+			return;
+		}
+		lastVelocityX[i] = velocityX[i];
+		lastVelocityY[i] = velocityY[i];
+		velocityX[i] += dx;
+		velocityY[i] += dy;
+		
+		if (Math.abs(velocityX[i]) > maxVelocityX[i]) {
+			velocityX[i] = velocityX[i] > 0 ? maxVelocityX[i] : -maxVelocityX[i];
+		}
+		if (Math.abs(velocityY[i]) > maxVelocityY[i]) {
+			velocityY[i] = velocityY[i] > 0 ? maxVelocityY[i] : -maxVelocityY[i];
+		}
+	}
+	
+	/**
+	 * Adjust the angular velocity of a body the way 
+	 * <code>Body.adjustAngularVelocity()</code> does.
+	 * 
+	 * @param i The index of the body
+	 * @param delta The change in angular velocity
+	 */
+	private void adjustAngularVelocity(int i, float delta) {
+		if (!rotatable[i]) {
+			return;
+		}
+		lastAngularVelocity[i] = angularVelocity[i];
+		angularVelocity[i] += delta;
+	}
+	
+	/**
+	 * Write the solved velocities back to the bodies and the accumulated
+	 * impulses back to the contacts, then forget them all.
+	 */
+	void store() {
+		for (int i=0;i<numBodies;i++) {
+			Body body = bodies[i];
+			if (!body.isStatic()) {
+				body.setSolvedVelocity(velocityX[i], velocityY[i], lastVelocityX[i], lastVelocityY[i],
+						angularVelocity[i], lastAngularVelocity[i]);
+				body.setSolvedBias(biasedVelocityX[i], biasedVelocityY[i], biasedAngularVelocity[i]);
+				body.solverIndex = -1;
+			}
+			bodies[i] = null;
+		}
+		
+		for (int i=0;i<numContacts;i++) {
+			Contact c = contacts[i];
+			c.accumulatedNormalImpulse = accumulatedNormalImpulse[i];
+			c.accumulatedTangentImpulse = accumulatedTangentImpulse[i];
+			c.biasImpulse = biasImpulse[i];
+			contacts[i] = null;
+		}
+		
+		numBodies = 0;
+		numContacts = 0;
+	}
+}
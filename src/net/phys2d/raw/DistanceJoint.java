@@ -161,8 +161,8 @@ public class DistanceJoint implements Joint {
 	 * @see net.phys2d.raw.Joint#preStep(float)
 	 */
 	public void preStep(float invDT) {
-		Matrix2f rot1 = new Matrix2f(body1.getRotation());
-		Matrix2f rot2 = new Matrix2f(body2.getRotation());
+		Matrix2f rot1 = body1.getWorldGeometry().getRotation();
+		Matrix2f rot2 = body2.getWorldGeometry().getRotation();
 		r1 = MathUtil.mul(rot1, anchor1);
 		r2 = MathUtil.mul(rot2, anchor2);
 
@@ -153,8 +153,8 @@ public strictfp class ElasticJoint implements Joint {
 		body1 = b1;
 		body2 = b2;
 
-		Matrix2f rot1 = new Matrix2f(body1.getRotation());
-		Matrix2f rot2 = new Matrix2f(body2.getRotation());
+		Matrix2f rot1 = body1.getWorldGeometry().getRotation();
+		Matrix2f rot2 = body2.getWorldGeometry().getRotation();
 		Matrix2f rot1T = rot1.transpose();
 		Matrix2f rot2T = rot2.transpose();
 
@@ -177,8 +177,8 @@ public strictfp class ElasticJoint implements Joint {
 	 */
 	public void preStep(float invDT) {
 		// Pre-compute anchors, mass matrix, and bias.
-		Matrix2f rot1 = new Matrix2f(body1.getRotation());
-		Matrix2f rot2 = new Matrix2f(body2.getRotation());
+		Matrix2f rot1 = body1.getWorldGeometry().getRotation();
+		Matrix2f rot2 = body2.getWorldGeometry().getRotation();
 
 		r1 = MathUtil.mul(rot1,localAnchor1);
 		r2 = MathUtil.mul(rot2,localAnchor2);
@@ -0,0 +1,469 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+import java.util.Arrays;
+
+/**
+ * Groups the dynamic bodies of a world into islands, sets of bodies that 
+ * touch each other through arbiters or joints, using a union-find over the 
+ * bodies. Islands are built once per step. An island with any body awake
+ * is woken completely, and an island whose bodies have all been still 
+ * for long enough is put to sleep completely. Islands share no moving 
+ * bodies so they can be solved independently of each other.
+ * 
+ * Static bodies never join islands, so a floor doesn't tie everything 
+ * resting on it into one island.
+ */
+strictfp class IslandBuilder {
+	/** The number of bodies space is made for at first */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/** The bodies in the islands, in index order */
+	private Body[] bodies = new Body[INITIAL_CAPACITY];
+	/** True if the body at an index is one of the bodies being stepped */
+	private boolean[] active = new boolean[INITIAL_CAPACITY];
+	/** The index of the parent of each body in the union-find */
+	private int[] parent = new int[INITIAL_CAPACITY];
+	/** True if the island rooted at an index has a body awake */
+	private boolean[] awake = new boolean[INITIAL_CAPACITY];
+	/** The least time any body of the island rooted at an index has been still */
+	private float[] sleepTime = new float[INITIAL_CAPACITY];
+	/** The number of bodies in the islands */
+	private int numBodies;
+	
+	/** The arbiters the islands were built from */
+	private ArbiterMap arbiters;
+	/** The joints the islands were built from */
+	private JointList joints;
+	
+	/** The number of islands grouped */
+	private int numIslands;
+	/** The island each root index heads, -1 for bodies that aren't roots */
+	private int[] islandOf = new int[INITIAL_CAPACITY];
+	/** The index into the grouped bodies where each island starts */
+	private int[] bodyStart = new int[INITIAL_CAPACITY + 1];
+	/** The index into the grouped arbiters where each island starts */
+	private int[] arbiterStart = new int[INITIAL_CAPACITY + 1];
+	/** The index into the grouped joints where each island starts */
+	private int[] jointStart = new int[INITIAL_CAPACITY + 1];
+	/** The bodies being stepped, grouped by island */
+	private Body[] islandBodies = new Body[INITIAL_CAPACITY];
+	/** The arbiters, grouped by island */
+	private Arbiter[] islandArbiters = new Arbiter[INITIAL_CAPACITY];
+	/** The joints, grouped by island */
+	private Joint[] islandJoints = new Joint[INITIAL_CAPACITY];
+	/** The joints that only connect static bodies and so have no island */
+	private JointList looseJoints = new JointList();
+	
+	/**
+	 * Build the islands for this step. 
+	 * 
+	 * @param bodyList The bodies being stepped
+	 * @param arbiters The arbiters between the bodies
+	 * @param joints The joints between the bodies
+	 */
+	void build(BodyList bodyList, ArbiterMap arbiters, JointList joints) {
+		this.arbiters = arbiters;
+		this.joints = joints;
+		
+		for (int i=0;i<bodyList.size();i++) {
+			Body body = bodyList.get(i);
+			if (!body.isStatic()) {
+				add(body, true);
+			}
+		}
+		
+		for (int i=0;i<arbiters.size();i++) {
+			Arbiter arbiter = arbiters.getArbiter(i);
+			union(arbiter.getBody1(), arbiter.getBody2());
+		}
+		for (int i=0;i<joints.size();i++) {
+			Joint joint = joints.get(i);
+			union(joint.getBody1(), joint.getBody2());
+		}
+	}
+	
+	/**
+	 * Wake any island that has a body awake in it
+	 */
+	void wake() {
+		for (int i=0;i<numBodies;i++) {
+			awake[i] = false;
+		}
+		for (int i=0;i<numBodies;i++) {
+			if (active[i] && !bodies[i].isAsleep()) {
+				awake[find(i)] = true;
+			}
+		}
+		for (int i=0;i<numBodies;i++) {
+			if (active[i] && bodies[i].isAsleep() && awake[find(i)]) {
+				bodies[i].wakeUp();
+			}
+		}
+	}
+	
+	/**
+	 * Group the bodies being stepped, the arbiters and the joints by the 
+	 * island they belong to. Each group keeps the order of the lists the
+	 * islands were built from.
+	 */
+	void group() {
+		if (islandOf.length < numBodies) {
+			islandOf = new int[bodies.length];
+		}
+		
+		numIslands = 0;
+		for (int i=0;i<numBodies;i++) {
+			islandOf[i] = -1;
+		}
+		for (int i=0;i<numBodies;i++) {
+			int root = find(i);
+			if (islandOf[root] < 0) {
+				islandOf[root] = numIslands++;
+			}
+		}
+		
+		if (bodyStart.length < numIslands + 1) {
+			bodyStart = new int[bodies.length + 1];
+			arbiterStart = new int[bodies.length + 1];
+			jointStart = new int[bodies.length + 1];
+		}
+		for (int i=0;i<=numIslands;i++) {
+			bodyStart[i] = 0;
+			arbiterStart[i] = 0;
+			jointStart[i] = 0;
+		}
+		looseJoints.clear();
+		
+		// count the members of each island one place along, so the running
+		// totals give where each island starts
+		for (int i=0;i<numBodies;i++) {
+			if (active[i]) {
+				bodyStart[islandOf[find(i)] + 1]++;
+			}
+		}
+		for (int i=0;i<arbiters.size();i++) {
+			Arbiter arbiter = arbiters.getArbiter(i);
+			arbiterStart[islandOf(arbiter.getBody1(), arbiter.getBody2()) + 1]++;
+		}
+		for (int i=0;i<joints.size();i++) {
+			Joint joint = joints.get(i);
+			int island = islandOf(joint.getBody1(), joint.getBody2());
+			if (island < 0) {
+				looseJoints.add(joint);
+			} else {
+				jointStart[island + 1]++;
+			}
+		}
+		for (int i=0;i<numIslands;i++) {
+			bodyStart[i + 1] += bodyStart[i];
+			arbiterStart[i + 1] += arbiterStart[i];
+			jointStart[i + 1] += jointStart[i];
+		}
+		
+		if (islandBodies.length < bodyStart[numIslands]) {
+			islandBodies = new Body[bodies.length];
+		}
+		if (islandArbiters.length < arbiterStart[numIslands]) {
+			islandArbiters = new Arbiter[arbiterStart[numIslands] * 2];
+		}
+		if (islandJoints.length < jointStart[numIslands]) {
+			islandJoints = new Joint[jointStart[numIslands] * 2];
+		}
+		
+		// fill each island in order, moving its start along as it goes and 
+		// then shifting the starts back once all are placed
+		for (int i=0;i<numBodies;i++) {
+			if (active[i]) {
+				islandBodies[bodyStart[islandOf[find(i)]]++] = bodies[i];
+			}
+		}
+		for (int i=0;i<arbiters.size();i++) {
+			Arbiter arbiter = arbiters.getArbiter(i);
+			islandArbiters[arbiterStart[islandOf(arbiter.getBody1(), arbiter.getBody2())]++] = arbiter;
+		}
+		for (int i=0;i<joints.size();i++) {
+			Joint joint = joints.get(i);
+			int island = islandOf(joint.getBody1(), joint.getBody2());
+			if (island >= 0) {
+				islandJoints[jointStart[island]++] = joint;
+			}
+		}
+		for (int i=numIslands;i>0;i--) {
+			bodyStart[i] = bodyStart[i - 1];
+			arbiterStart[i] = arbiterStart[i - 1];
+			jointStart[i] = jointStart[i - 1];
+		}
+		bodyStart[0] = 0;
+		arbiterStart[0] = 0;
+		jointStart[0] = 0;
+	}
+	
+	/**
+	 * Get the number of bodies given an index in the islands
+	 * 
+	 * @return The number of bodies indexed
+	 */
+	int size() {
+		return numBodies;
+	}
+	
+	/**
+	 * Get the number of islands grouped
+	 * 
+	 * @return The number of islands
+	 */
+	int getNumIslands() {
+		return numIslands;
+	}
+	
+	/**
+	 * Get the index of the first grouped body of an island. The bodies of 
+	 * the island run up to the first body of the next island.
+	 * 
+	 * @param island The island, or the number of islands for the end of the last
+	 * @return The index of the island's first body
+	 */
+	int getFirstBody(int island) {
+		return bodyStart[island];
+	}
+	
+	/**
+	 * Get the index of the first grouped arbiter of an island. The arbiters
+	 * of the island run up to the first arbiter of the next island.
+	 * 
+	 * @param island The island, or the number of islands for the end of the last
+	 * @return The index of the island's first arbiter
+	 */
+	int getFirstArbiter(int island) {
+		return arbiterStart[island];
+	}
+	
+	/**
+	 * Get the index of the first grouped joint of an island. The joints of 
+	 * the island run up to the first joint of the next island.
+	 * 
+	 * @param island The island, or the number of islands for the end of the last
+	 * @return The index of the island's first joint
+	 */
+	int getFirstJoint(int island) {
+		return jointStart[island];
+	}
+	
+	/**
+	 * Get a grouped body
+	 * 
+	 * @param i The index of the body
+	 * @return The body at the given index
+	 */
+	Body getBody(int i) {
+		return islandBodies[i];
+	}
+	
+	/**
+	 * Get a grouped arbiter
+	 * 
+	 * @param i The index of the arbiter
+	 * @return The arbiter at the given index
+	 */
+	Arbiter getArbiter(int i) {
+		return islandArbiters[i];
+	}
+	
+	/**
+	 * Get a grouped joint
+	 * 
+	 * @param i The index of the joint
+	 * @return The joint at the given index
+	 */
+	Joint getJoint(int i) {
+		return islandJoints[i];
+	}
+	
+	/**
+	 * Get the joints that connect only static bodies and so belong to no 
+	 * island
+	 * 
+	 * @return The joints without an island
+	 */
+	JointList getLooseJoints() {
+		return looseJoints;
+	}
+	
+	/**
+	 * Update how long each body has been still and put to sleep any island
+	 * whose bodies have all been still for long enough. 
+	 * 
+	 * @param dt The amount of time that has passed
+	 * @param linearTolerance The squared speed below which a body is considered still
+	 * @param angularTolerance The angular speed below which a body is considered still
+	 * @param timeToSleep The time an island has to be still before it sleeps
+	 */
+	void sleep(float dt, float linearTolerance, float angularTolerance, float timeToSleep) {
+		for (int i=0;i<numBodies;i++) {
+			sleepTime[i] = Float.MAX_VALUE;
+		}
+		for (int i=0;i<numBodies;i++) {
+			Body body = bodies[i];
+			if (!active[i] || body.isAsleep()) {
+				continue;
+			}
+			
+			int root = find(i);
+			float time = body.updateSleepTime(dt, linearTolerance, angularTolerance);
+			if (time < sleepTime[root]) {
+				sleepTime[root] = time;
+			}
+		}
+		for (int i=0;i<numBodies;i++) {
+			Body body = bodies[i];
+			if (active[i] && !body.isAsleep() && (sleepTime[find(i)] >= timeToSleep)) {
+				body.sleep();
+			}
+		}
+	}
+	
+	/**
+	 * Forget the islands, ready for the next step
+	 */
+	void clear() {
+		for (int i=0;i<numBodies;i++) {
+			bodies[i].islandIndex = -1;
+			bodies[i] = null;
+		}
+		for (int i=0;i<bodyStart[numIslands];i++) {
+			islandBodies[i] = null;
+		}
+		for (int i=0;i<arbiterStart[numIslands];i++) {
+			islandArbiters[i] = null;
+		}
+		for (int i=0;i<jointStart[numIslands];i++) {
+			islandJoints[i] = null;
+		}
+		looseJoints.clear();
+		
+		numBodies = 0;
+		numIslands = 0;
+		arbiters = null;
+		joints = null;
+	}
+	
+	/**
+	 * Add a body to the union-find as an island of its own
+	 * 
+	 * @param body The body to add
+	 * @param stepped True if the body is one of the bodies being stepped
+	 */
+	private void add(Body body, boolean stepped) {
+		if (numBodies == bodies.length) {
+			int capacity = numBodies * 2;
+			bodies = Arrays.copyOf(bodies, capacity);
+			active = Arrays.copyOf(active, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+			awake = Arrays.copyOf(awake, capacity);
+			sleepTime = Arrays.copyOf(sleepTime, capacity);
+		}
+		
+		body.islandIndex = numBodies;
+		bodies[numBodies] = body;
+		active[numBodies] = stepped;
+		parent[numBodies] = numBodies;
+		numBodies++;
+	}
+	
+	/**
+	 * Join the islands of two bodies. Bodies that aren't being stepped
+	 * but are still connected join the islands so that no moving body is
+	 * shared between them.
+	 * 
+	 * @param a The first body
+	 * @param b The second body
+	 */
+	private void union(Body a, Body b) {
+		if (!a.isStatic() && (a.islandIndex < 0)) {
+			add(a, false);
+		}
+		if (!b.isStatic() && (b.islandIndex < 0)) {
+			add(b, false);
+		}
+		if (a.isStatic() || b.isStatic()) {
+			return;
+		}
+		
+		int rootA = find(a.islandIndex);
+		int rootB = find(b.islandIndex);
+		if (rootA < rootB) {
+			parent[rootB] = rootA;
+		} else if (rootB < rootA) {
+			parent[rootA] = rootB;
+		}
+	}
+	
+	/**
+	 * Get the island a connection between two bodies belongs to
+	 * 
+	 * @param a The first body
+	 * @param b The second body
+	 * @return The island of whichever body isn't static, or -1 if both are
+	 */
+	private int islandOf(Body a, Body b) {
+		if (!a.isStatic()) {
+			return islandOf[find(a.islandIndex)];
+		}
+		if (!b.isStatic()) {
+			return islandOf[find(b.islandIndex)];
+		}
+		return -1;
+	}
+	
+	/**
+	 * Find the root of the island a body belongs to, halving the path
+	 * on the way
+	 * 
+	 * @param i The index of the body
+	 * @return The index of the root of its island
+	 */
+	private int find(int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+}
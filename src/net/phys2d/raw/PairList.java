@@ -0,0 +1,233 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+/**
+ * A list of candidate pairs of bodies produced by the broad phase. Each 
+ * pair is only held once regardless of how many times it's added, so a
+ * strategy that finds the same pair several times (e.g. in several areas 
+ * of the space) still hands it to the narrow phase once.
+ * <p>
+ * The storage is kept when the list is cleared so a list reused from one 
+ * step to the next won't allocate once it's grown to fit the scene.
+ */
+public class PairList {
+	/** The first body of each pair */
+	private Body[] first = new Body[64];
+	/** The second body of each pair */
+	private Body[] second = new Body[64];
+	/** The number of pairs in the list */
+	private int size;
+	/** The keys of the pairs in the list, an open addressing hash set */
+	private long[] keys = new long[128];
+	/** The slot in the key set holding each pair, so clearing only visits those */
+	private int[] slots = new int[64];
+	
+	/**
+	 * Create an empty list
+	 */
+	public PairList() {
+	}
+	
+	/**
+	 * Get the key identifying a pair of bodies. The key is the same 
+	 * whichever order the bodies are given in.
+	 * 
+	 * @param a The first body of the pair
+	 * @param b The second body of the pair
+	 * @return The key identifying the pair
+	 */
+	public static long getKey(Body a, Body b) {
+		int idA = a.getID();
+		int idB = b.getID();
+		
+		if (idA < idB) {
+			return ((long) idA << 32) | (idB & 0xFFFFFFFFL);
+		}
+		return ((long) idB << 32) | (idA & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Add a pair to the list if it isn't already held
+	 * 
+	 * @param a The first body of the pair
+	 * @param b The second body of the pair
+	 * @return True if the pair was added, false if it was already in the list
+	 */
+	public boolean add(Body a, Body b) {
+		if ((size + 1) * 2 > keys.length) {
+			growKeys();
+		}
+		
+		long key = getKey(a, b);
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		
+		if (size == first.length) {
+			Body[] temp = new Body[size * 2];
+			System.arraycopy(first, 0, temp, 0, size);
+			first = temp;
+			temp = new Body[size * 2];
+			System.arraycopy(second, 0, temp, 0, size);
+			second = temp;
+			int[] tempSlots = new int[size * 2];
+			System.arraycopy(slots, 0, tempSlots, 0, size);
+			slots = tempSlots;
+		}
+		first[size] = a;
+		second[size] = b;
+		slots[size] = slot;
+		size++;
+		
+		return true;
+	}
+	
+	/**
+	 * Check if the list holds a pair
+	 * 
+	 * @param a The first body of the pair
+	 * @param b The second body of the pair
+	 * @return True if the pair is in the list, in either order
+	 */
+	public boolean contains(Body a, Body b) {
+		long key = getKey(a, b);
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the number of pairs in the list
+	 * 
+	 * @return The number of pairs in the list
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Get the first body of a pair
+	 * 
+	 * @param i The index of the pair
+	 * @return The first body of the pair
+	 */
+	public Body getBodyA(int i) {
+		return first[i];
+	}
+	
+	/**
+	 * Get the second body of a pair
+	 * 
+	 * @param i The index of the pair
+	 * @return The second body of the pair
+	 */
+	public Body getBodyB(int i) {
+		return second[i];
+	}
+	
+	/**
+	 * Clear all the pairs out of the list
+	 */
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		
+		for (int i=0;i<size;i++) {
+			first[i] = null;
+			second[i] = null;
+			keys[slots[i]] = 0;
+		}
+		size = 0;
+	}
+	
+	/**
+	 * Hash a pair key
+	 * 
+	 * @param key The key to hash
+	 * @return The hash of the key
+	 */
+	private int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32);
+	}
+	
+	/**
+	 * Double the size of the key set
+	 */
+	private void growKeys() {
+		keys = new long[keys.length * 2];
+		
+		int mask = keys.length - 1;
+		for (int i=0;i<size;i++) {
+			long key = getKey(first[i], second[i]);
+			int slot = hash(key) & mask;
+			while (keys[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			slots[i] = slot;
+		}
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String str = "[PairList ";
+		for (int i=0;i<size;i++) {
+			str += "("+first[i]+","+second[i]+"),";
+		}
+		str += "]";
+		
+		return str;
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+/**
+ * A set of pairs of bodies, held as the packed IDs of the two bodies (see
+ * <code>PairList.getKey()</code>). Checking whether a pair is held costs
+ * the same however many pairs there are.
+ */
+public class PairSet {
+	/** The keys held, an open addressing hash set where 0 is unused */
+	private long[] keys = new long[16];
+	/** The number of keys held */
+	private int size;
+	
+	/**
+	 * Create an empty set
+	 */
+	public PairSet() {
+	}
+	
+	/**
+	 * Get the number of pairs held
+	 * 
+	 * @return The number of pairs held
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Add a pair to the set
+	 * 
+	 * @param a The first body of the pair
+	 * @param b The second body of the pair
+	 * @return True if the pair was added, false if it was already held
+	 */
+	public boolean add(Body a, Body b) {
+		return add(PairList.getKey(a, b));
+	}
+	
+	/**
+	 * Add a pair to the set
+	 * 
+	 * @param key The key of the pair
+	 * @return True if the pair was added, false if it was already held
+	 */
+	public boolean add(long key) {
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+		}
+		
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		size++;
+		
+		return true;
+	}
+	
+	/**
+	 * Remove a pair from the set
+	 * 
+	 * @param a The first body of the pair
+	 * @param b The second body of the pair
+	 * @return True if the pair was removed, false if it wasn't held
+	 */
+	public boolean remove(Body a, Body b) {
+		return remove(PairList.getKey(a, b));
+	}
+	
+	/**
+	 * Remove a pair from the set
+	 * 
+	 * @param key The key of the pair
+	 * @return True if the pair was removed, false if it wasn't held
+	 */
+	public boolean remove(long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return false;
+		}
+		
+		// shift back any keys that probed past the emptied slot
+		int mask = keys.length - 1;
+		keys[slot] = 0;
+		int next = (slot + 1) & mask;
+		while (keys[next] != 0) {
+			int home = hash(keys[next]) & mask;
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				keys[slot] = keys[next];
+				keys[next] = 0;
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+		size--;
+		
+		return true;
+	}
+	
+	/**
+	 * Check if the set holds a pair
+	 * 
+	 * @param a The first body of the pair
+	 * @param b The second body of the pair
+	 * @return True if the pair is held, in either order
+	 */
+	public boolean contains(Body a, Body b) {
+		return (size > 0) && (find(PairList.getKey(a, b)) >= 0);
+	}
+	
+	/**
+	 * Check if the set holds a pair
+	 * 
+	 * @param key The key of the pair
+	 * @return True if the pair is held
+	 */
+	public boolean contains(long key) {
+		return (size > 0) && (find(key) >= 0);
+	}
+	
+	/**
+	 * Remove all the pairs from the set
+	 */
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		
+		for (int i=0;i<keys.length;i++) {
+			keys[i] = 0;
+		}
+		size = 0;
+	}
+	
+	/**
+	 * Find the slot holding a key
+	 * 
+	 * @param key The key to look for
+	 * @return The slot holding the key or -1 if the key isn't held
+	 */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Double the size of the set
+	 */
+	private void grow() {
+		long[] old = keys;
+		keys = new long[old.length * 2];
+		
+		int mask = keys.length - 1;
+		for (int i=0;i<old.length;i++) {
+			if (old[i] != 0) {
+				int slot = hash(old[i]) & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = old[i];
+			}
+		}
+	}
+	
+	/**
+	 * Hash a pair key
+	 * 
+	 * @param key The key to hash
+	 * @return The hash of the key
+	 */
+	private int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32);
+	}
+}
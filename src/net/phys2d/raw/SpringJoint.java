@@ -160,13 +160,13 @@ public strictfp class SpringJoint implements Joint {
 		body1 = b1;
 		body2 = b2;	
 
-		Matrix2f rot1 = new Matrix2f(body1.getRotation());
+		Matrix2f rot1 = body1.getWorldGeometry().getRotation();
 		Matrix2f rot1T = rot1.transpose();
 		Vector2f a1 = new Vector2f(anchor1);
 		a1.sub(body1.getPosition());
 		localAnchor1 = MathUtil.mul(rot1T,a1);
 		
-		Matrix2f rot2 = new Matrix2f(body2.getRotation());
+		Matrix2f rot2 = body2.getWorldGeometry().getRotation();
 		Matrix2f rot2T = rot2.transpose();
 		Vector2f a2 = new Vector2f(anchor2);
 		a2.sub(body2.getPosition());
@@ -198,8 +198,8 @@ public strictfp class SpringJoint implements Joint {
 		
 		if ( springLength < minSpringSize || springLength > maxSpringSize ) { 
 			// Pre-compute anchors, mass matrix, and bias.
-			Matrix2f rot1 = new Matrix2f(body1.getRotation());
-			Matrix2f rot2 = new Matrix2f(body2.getRotation());
+			Matrix2f rot1 = body1.getWorldGeometry().getRotation();
+			Matrix2f rot2 = body2.getWorldGeometry().getRotation();
 	
 			r1 = MathUtil.mul(rot1,localAnchor1);
 			r2 = MathUtil.mul(rot2,localAnchor2);
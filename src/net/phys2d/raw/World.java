@@ -41,7 +41,9 @@
 package net.phys2d.raw;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import net.phys2d.math.Vector2f;
 import net.phys2d.raw.forcesource.ForceSource;
@@ -54,6 +56,19 @@ import net.phys2d.raw.strategies.BruteCollisionStrategy;
  * @author Kevin Glass
  */
 public strictfp class World extends CollisionSpace {
+	/** The least amount of work, in bodies, arbiters and joints, worth splitting between tasks */
+	private static final int MIN_ISLAND_WORK = 128;
+	/** The least number of constraints in an island for it to be coloured */
+	private static final int MIN_COLORED_CONSTRAINTS = 256;
+	/** The least number of constraints of a colour worth splitting between tasks */
+	private static final int MIN_COLOR_BATCH = 32;
+	/** Solve contacts by letting each arbiter apply its impulses to its bodies */
+	public static final int OBJECT_SOLVER = 0;
+	/** Solve contacts over flat arrays of body and contact state */
+	public static final int ARRAY_SOLVER = 1;
+	/** Solve the constraints of large islands in parallel, a colour of constraints at a time */
+	public static final int COLORED_SOLVER = 2;
+	
 	/** The joints contained in the world */
 	private JointList joints = new JointList(); 
 	/** The direction and force of gravity */
@@ -72,6 +87,32 @@ public strictfp class World extends CollisionSpace {
 	private float positionTolerance; 
 	/** The force sources in the world */
 	private ArrayList sources = new ArrayList();
+	/** The way contacts are solved, one of the solver constants */
+	private int solver = OBJECT_SOLVER;
+	/** The solver used when contacts are solved over arrays */
+	private ContactSolver contactSolver = new ContactSolver();
+	/** True if islands of bodies are put to sleep once they stop moving */
+	private boolean sleeping = false;
+	/** The squared speed below which a body is considered still */
+	private float sleepLinearTolerance;
+	/** The angular speed below which a body is considered still */
+	private float sleepAngularTolerance;
+	/** The time an island has to be still before it's put to sleep */
+	private float timeToSleep;
+	/** The builder grouping bodies into islands for sleeping and solving */
+	private IslandBuilder islands = new IslandBuilder();
+	/** The pool islands are solved on, or null to solve them in turn */
+	private ForkJoinPool solverPool;
+	/** The array solver used by each thread solving islands */
+	private ThreadLocal<ContactSolver> islandSolvers = new ThreadLocal<ContactSolver>() {
+		protected ContactSolver initialValue() {
+			return new ContactSolver();
+		}
+	};
+	/** The colourings free for islands to use */
+	private ConcurrentLinkedQueue<ConstraintColoring> colorings = new ConcurrentLinkedQueue<ConstraintColoring>();
+	/** The batches used to solve the colours of a colouring, one per colour, reused between steps */
+	private ConcurrentLinkedQueue<ColorBatch[]> colorBatches = new ConcurrentLinkedQueue<ColorBatch[]>();
 	
 	/**
 	 * Create a new physics model World
@@ -140,6 +181,35 @@ public strictfp class World extends CollisionSpace {
 		restingBodyDetection = false;
 	}
 	
+	/**
+	 * Enable sleeping. Each step the bodies are grouped into islands of 
+	 * bodies touching each other through contacts or joints. Once every
+	 * body in an island has moved slower than the tolerances for long 
+	 * enough the whole island is put to sleep. Sleeping bodies aren't 
+	 * moved, solved or collided against each other, they wake as an island
+	 * when an awake body touches them or they're moved or pushed directly.
+	 * 
+	 * @param linearTolerance The speed below which a body is considered still
+	 * @param angularTolerance The angular speed below which a body is considered still
+	 * @param timeToSleep The time an island has to be still before it's put to sleep
+	 */
+	public void enableSleeping(float linearTolerance, float angularTolerance, float timeToSleep) {
+		this.sleepLinearTolerance = linearTolerance * linearTolerance;
+		this.sleepAngularTolerance = angularTolerance;
+		this.timeToSleep = timeToSleep;
+		sleeping = true;
+	}
+	
+	/**
+	 * Disable sleeping on the world, waking any bodies that are asleep
+	 */
+	public void disableSleeping() {
+		sleeping = false;
+		for (int i=0;i<bodies.size();i++) {
+			bodies.get(i).wakeUp();
+		}
+	}
+	
 	/**
 	 * Reset all dynamic bodies to indicate they are no longer resting. Useful when manually
 	 * changing the state of the world and then expecting normal results
@@ -162,6 +232,71 @@ public strictfp class World extends CollisionSpace {
 		this.damping = damping;
 	}
 	
+	/**
+	 * Set the way contacts are solved. {@link #OBJECT_SOLVER} lets each
+	 * arbiter apply its impulses straight to its bodies. {@link #ARRAY_SOLVER} 
+	 * copies the bodies and contacts into flat arrays, iterates over those
+	 * and copies the results back, which is much kinder to the cache when
+	 * there are many contacts. Both give the same results. Steps where the 
+	 * world has joints always use the object solver, since joints work on
+	 * the bodies directly. So do steps with a body that overrides 
+	 * <code>Body.validateVelocity()</code>, since the array solver can only
+	 * apply the standard velocity limit. When solving islands this is 
+	 * decided for each island.
+	 * <p>
+	 * {@link #COLORED_SOLVER} only differs when islands are solved on a pool,
+	 * see {@link #setSolverPool(ForkJoinPool)}. Islands with many constraints
+	 * have their arbiters and joints coloured so no two of a colour share a
+	 * body that moves, and each colour is solved in parallel batches. This 
+	 * lets one huge island use many threads. The constraints are solved in
+	 * a different order to the other solvers so the results differ slightly.
+	 * Without a pool it behaves as the object solver.
+	 * 
+	 * @param solver The solver to use, one of the solver constants
+	 */
+	public void setSolver(int solver) {
+		if ((solver != OBJECT_SOLVER) && (solver != ARRAY_SOLVER) && (solver != COLORED_SOLVER)) {
+			throw new IllegalArgumentException("Unknown solver: "+solver);
+		}
+		this.solver = solver;
+	}
+	
+	/**
+	 * Get the way contacts are solved
+	 * 
+	 * @return The solver in use, one of the solver constants
+	 */
+	public int getSolver() {
+		return solver;
+	}
+	
+	/**
+	 * Set the pool used to solve islands of bodies at the same time. Each 
+	 * step the bodies are grouped into islands that touch each other through
+	 * contacts or joints, and each island is integrated, solved and moved 
+	 * as one task so every body and constraint is only ever updated by one 
+	 * thread. The results are the same as solving on one thread. Static
+	 * bodies are shared between islands so they're only read, the geometry
+	 * joints read from them is brought up to date before the islands are
+	 * handed to the pool. Resting body detection shares state between 
+	 * islands through the static bodies so steps with it enabled are always
+	 * solved on the calling thread.
+	 * 
+	 * @param pool The pool to solve islands on, or null to solve on the calling thread
+	 */
+	public void setSolverPool(ForkJoinPool pool) {
+		this.solverPool = pool;
+	}
+	
+	/**
+	 * Get the pool used to solve islands of bodies at the same time
+	 * 
+	 * @return The pool islands are solved on, or null if they're solved on the calling thread
+	 */
+	public ForkJoinPool getSolverPool() {
+		return solverPool;
+	}
+	
 	/**
 	 * Set the gravity applied in the world
 	 * 
@@ -192,41 +327,29 @@ public strictfp class World extends CollisionSpace {
 //	}
 	
 	/**
-	 * Clear any arbiters in place for the given body
+	 * Clear any arbiters in place for the given body. The bodies it was 
+	 * touching are woken since they may have been resting on it.
 	 * 
 	 * @param b The body whose arbiters should be removed
 	 */
 	public void clearArbiters(Body b) 
         {
-              Iterator<Arbiter> it = arbiters.values().iterator();
-              while(it.hasNext())
+              for(int i = b.getArbiterCount() - 1; i >= 0; i--)
               {
-                  Arbiter arb = it.next();
-                  
-                  if(arb.concerns(b))
+                  //listeners told of a separation may have dropped more arbiters
+                  if(i >= b.getArbiterCount())
                   {
-                      //notify seperate on any touching bodies
-                      this.notifySeparation(arb.getBody1(), arb.getBody2());
-                      
-                      it.remove();
+                      continue;
                   }
-              }
-              
-              it = overlapList.values().iterator();
-              while(it.hasNext())
-              {
-                  Arbiter arb = it.next();
                   
-                  if(arb.concerns(b))
-                  {
-                      //notify seperate on any touching bodies
-                      this.notifySeparation(arb.getBody1(), arb.getBody2());
-                      
-                      it.remove();
-                  }
+                  Arbiter arb = b.getArbiter(i);
+                  arb.getBody1().wakeUp();
+                  arb.getBody2().wakeUp();
+                  arb.map.remove(PairList.getKey(arb.getBody1(), arb.getBody2()));
+                  
+                  //notify seperate on any touching bodies
+                  this.notifySeparation(arb.getBody1(), arb.getBody2());
               }
-            
-           
 	}
 	
 	/**
@@ -239,11 +362,13 @@ public strictfp class World extends CollisionSpace {
 	}
 	
 	/**
-	 * Remove a joint from the simulation
+	 * Remove a joint from the simulation, waking the bodies it joined
 	 * 
 	 * @param joint The joint to be removed
 	 */
 	public void remove(Joint joint) {
+		joint.getBody1().wakeUp();
+		joint.getBody2().wakeUp();
 		joints.remove(joint);
 	}
 	
@@ -295,6 +420,9 @@ public strictfp class World extends CollisionSpace {
 	public void step(float dt) {
 		for (int i = 0; i < bodies.size(); ++i)
 		{
+			if (bodies.get(i).isAsleep()) {
+				continue;
+			}
 			for (int j=0;j<sources.size();j++) {
 				((ForceSource) sources.get(j)).apply(bodies.get(i), dt);
 			}
@@ -319,141 +447,441 @@ public strictfp class World extends CollisionSpace {
 		}
 		
 		broadPhase(dt);
-
-		for (int i = 0; i < bodies.size(); ++i)
-		{
-			Body b = bodies.get(i);
-
-			if (b.getInvMass() == 0.0f) {
-				continue;
+		
+		boolean parallel = (solverPool != null) && !restingBodyDetection;
+		if (sleeping || parallel) {
+			islands.build(bodies, arbiters, joints);
+			if (sleeping) {
+				islands.wake();
 			}
-			if (b.isResting() && restingBodyDetection) {
-				continue;
+		}
+		
+		if (parallel) {
+			islands.group();
+			validateJointGeometry();
+			solverPool.invoke(new IslandTask(0, islands.getNumIslands(), dt, invDT));
+			solveLooseJoints(invDT);
+		} else {
+			for (int i = 0; i < bodies.size(); ++i)
+			{
+				integrateVelocity(bodies.get(i), dt);
 			}
-
-			Vector2f temp = new Vector2f(b.getForce());
-			temp.scale(b.getInvMass());
-			if (b.getGravityEffected()) {
-				temp.add(gravity);
+	
+	                for (int k = 0; k < arbiters.size(); k++)
+	                {
+	                    Arbiter arb = arbiters.getArbiter(k);
+	                    if (arb.isAsleep()) {
+	                        continue;
+	                    }
+	                    if (!restingBodyDetection || !arb.hasRestingPair()) 
+	                    {
+				arb.preStep(invDT, dt, damping);
+		            }
+	                }
+	
+			for (int i = 0; i < joints.size(); ++i) {
+				Joint j = joints.get(i);
+				if (isAsleep(j)) {
+					continue;
+				}
+				j.preStep(invDT);	
+			}
+	
+			if ((solver == ARRAY_SOLVER) && (joints.size() == 0) && hasDefaultValidation(bodies)) {
+				solveArrays();
+			} else {
+				for (int i = 0; i < iterations; ++i)
+				{
+					for (int k = 0; k < arbiters.size(); k++)
+		                        {
+						Arbiter arb = arbiters.getArbiter(k);
+						if (arb.isAsleep()) {
+							continue;
+						}
+						if (!restingBodyDetection || !arb.hasRestingPair()) {
+							arb.applyImpulse();
+						} else {
+							arb.getBody1().collided(arb.getBody2());
+							arb.getBody2().collided(arb.getBody1());
+						}
+					}
+					
+					for (int k=0;k<joints.size();++k) {
+						Joint j = joints.get(k);
+						if (isAsleep(j)) {
+							continue;
+						}
+						j.applyImpulse();
+					}
+				}
 			}
-			temp.scale(dt);
+	                
+	                //do soft force adjustmnet
+	                for (int i = 0; i < bodies.size(); ++i)
+			{
+	                    applySoftForce(bodies.get(i), dt);
+	                }
 			
-			b.adjustVelocity(temp);
-			                                            
-                        
-			Vector2f damping = new Vector2f(b.getVelocity());
-			damping.scale(-b.getDamping() * b.getInvMass());
-			b.adjustVelocity(damping);                                                         
-                                   
-                        
-			b.adjustAngularVelocity(dt * b.getInvI() * b.getTorque());
-			b.adjustAngularVelocity(-b.getAngularVelocity() * b.getInvI() * b.getRotDamping());
+			for (int i=0;i < bodies.size(); ++i)
+			{
+				integratePosition(bodies.get(i), dt);
+			}
 		}
 
-                for(Arbiter arb: arbiters.values())
-                {
-                    if (!restingBodyDetection || !arb.hasRestingPair()) 
-                    {
-			arb.preStep(invDT, dt, damping);
-	            }
-                }
+		if (restingBodyDetection) {
+			for (int i=0;i < bodies.size(); ++i)
+			{
+				Body b = bodies.get(i);
+				b.endFrame();
+			}
+		}
+		
+		if (sleeping) {
+			islands.sleep(dt, sleepLinearTolerance, sleepAngularTolerance, timeToSleep);
+		}
+		if (sleeping || parallel) {
+			islands.clear();
+		}
+	}
+	
+	/**
+	 * Apply the forces, gravity and damping on a body to its velocity
+	 * 
+	 * @param b The body to update
+	 * @param dt The amount of time to step
+	 */
+	private void integrateVelocity(Body b, float dt) {
+		if (b.getInvMass() == 0.0f) {
+			return;
+		}
+		if (b.isAsleep()) {
+			return;
+		}
+		if (b.isResting() && restingBodyDetection) {
+			return;
+		}
 
-		for (int i = 0; i < joints.size(); ++i) {
-			Joint j = joints.get(i);
-			j.preStep(invDT);	
+		Vector2f temp = new Vector2f(b.getForce());
+		temp.scale(b.getInvMass());
+		if (b.getGravityEffected()) {
+			temp.add(gravity);
 		}
+		temp.scale(dt);
+		
+		b.adjustVelocity(temp);
+		
+		Vector2f damping = new Vector2f(b.getVelocity());
+		damping.scale(-b.getDamping() * b.getInvMass());
+		b.adjustVelocity(damping);
+		
+		b.adjustAngularVelocity(dt * b.getInvI() * b.getTorque());
+		b.adjustAngularVelocity(-b.getAngularVelocity() * b.getInvI() * b.getRotDamping());
+	}
+	
+	/**
+	 * Apply the soft force on a body to its velocity
+	 * 
+	 * @param b The body to update
+	 * @param dt The amount of time to step
+	 */
+	private void applySoftForce(Body b, float dt) {
+		if (b.isAsleep()) {
+			return;
+		}
+		Vector2f softForce = new Vector2f(b.getSoftForce());
+		softForce.scale(b.getInvMass());
+		softForce.scale(dt);
+		b.adjustVelocitySoft(softForce); 
+	}
+	
+	/**
+	 * Move a body by its velocities and clear the forces on it for the
+	 * next step
+	 * 
+	 * @param b The body to update
+	 * @param dt The amount of time to step
+	 */
+	private void integratePosition(Body b, float dt) {
+		if (b.getInvMass() == 0.0f) {
+			return;
+		}
+		if (restingBodyDetection) {
+			if (b.isResting()) {
+				return;
+			}
+		}
+		if (b.isAsleep()) {
+			return;
+		}
+		
+		b.adjustPosition(b.getVelocity(), dt);
+		b.adjustPosition(b.getBiasedVelocity(), dt);
+		
+		b.adjustRotation(dt * b.getAngularVelocity());
+		b.adjustRotation(dt * b.getBiasedAngularVelocity());
 
-		for (int i = 0; i < iterations; ++i)
-		{
-			for (Arbiter arb: arbiters.values())
-                        {
-				if (!restingBodyDetection || !arb.hasRestingPair()) {
-					arb.applyImpulse();
-				} else {
-					arb.getBody1().collided(arb.getBody2());
-					arb.getBody2().collided(arb.getBody1());
+		b.resetBias();
+		b.setForce(0,0);
+		b.setSoftForce(0,0);
+		b.setTorque(0);
+	}
+	
+	/**
+	 * Step a single island: integrate its bodies' velocities, solve its 
+	 * arbiters and joints and move its bodies. Islands share no moving 
+	 * bodies so any number may be stepped at once. 
+	 * 
+	 * @param island The island to step
+	 * @param dt The amount of time to step
+	 * @param invDT The inverse of the amount of time to step
+	 */
+	private void solveIsland(int island, float dt, float invDT) {
+		int firstBody = islands.getFirstBody(island);
+		int lastBody = islands.getFirstBody(island + 1);
+		int firstArbiter = islands.getFirstArbiter(island);
+		int lastArbiter = islands.getFirstArbiter(island + 1);
+		int firstJoint = islands.getFirstJoint(island);
+		int lastJoint = islands.getFirstJoint(island + 1);
+		
+		for (int i = firstBody; i < lastBody; i++) {
+			integrateVelocity(islands.getBody(i), dt);
+		}
+		
+		if ((solver == COLORED_SOLVER) 
+			&& ((lastArbiter - firstArbiter) + (lastJoint - firstJoint) >= MIN_COLORED_CONSTRAINTS)) {
+			solveColored(firstArbiter, lastArbiter, firstJoint, lastJoint, dt, invDT);
+		} else {
+			for (int k = firstArbiter; k < lastArbiter; k++) {
+				Arbiter arb = islands.getArbiter(k);
+				if (!arb.isAsleep()) {
+					arb.preStep(invDT, dt, damping);
+				}
+			}
+			for (int k = firstJoint; k < lastJoint; k++) {
+				Joint j = islands.getJoint(k);
+				if (!isAsleep(j)) {
+					j.preStep(invDT);
 				}
 			}
 			
-			for (int k=0;k<joints.size();++k) {
-				Joint j = joints.get(k);
-				j.applyImpulse();
+			if ((solver == ARRAY_SOLVER) && (firstJoint == lastJoint) && hasDefaultValidation(firstBody, lastBody)) {
+				ContactSolver islandSolver = islandSolvers.get();
+				for (int k = firstArbiter; k < lastArbiter; k++) {
+					Arbiter arb = islands.getArbiter(k);
+					if (!arb.isAsleep()) {
+						islandSolver.add(arb);
+					}
+				}
+				islandSolver.solve(iterations);
+				islandSolver.store();
+			} else {
+				for (int i = 0; i < iterations; ++i) {
+					for (int k = firstArbiter; k < lastArbiter; k++) {
+						Arbiter arb = islands.getArbiter(k);
+						if (!arb.isAsleep()) {
+							arb.applyImpulse();
+						}
+					}
+					for (int k = firstJoint; k < lastJoint; k++) {
+						Joint j = islands.getJoint(k);
+						if (!isAsleep(j)) {
+							j.applyImpulse();
+						}
+					}
+				}
 			}
 		}
-                
-                //do soft force adjustmnet
-                for (int i = 0; i < bodies.size(); ++i)
-		{
-                    Body b = bodies.get(i);
-                    Vector2f softForce = new Vector2f(b.getSoftForce());
-                    softForce.scale(b.getInvMass());
-                    softForce.scale(dt);
-                    b.adjustVelocitySoft(softForce); 
-                }
 		
+		for (int i = firstBody; i < lastBody; i++) {
+			applySoftForce(islands.getBody(i), dt);
+		}
+		for (int i = firstBody; i < lastBody; i++) {
+			integratePosition(islands.getBody(i), dt);
+		}
+	}
+	
+	/**
+	 * Prepare and solve the constraints of an island a colour at a time, 
+	 * solving the constraints of each colour in parallel batches. Must be
+	 * called from a task running in the solver pool.
+	 * 
+	 * @param firstArbiter The index of the island's first arbiter
+	 * @param lastArbiter The index after the island's last arbiter
+	 * @param firstJoint The index of the island's first joint
+	 * @param lastJoint The index after the island's last joint
+	 * @param dt The amount of time to step
+	 * @param invDT The inverse of the amount of time to step
+	 */
+	private void solveColored(int firstArbiter, int lastArbiter, int firstJoint, int lastJoint, float dt, float invDT) {
+		// colourings are taken from a shared queue rather than kept per 
+		// thread, a thread waiting on a batch may pick up another island
+		ConstraintColoring coloring = colorings.poll();
+		if (coloring == null) {
+			coloring = new ConstraintColoring();
+		}
+		coloring.color(islands, firstArbiter, lastArbiter, firstJoint, lastJoint);
 		
-		for (int i=0;i < bodies.size(); ++i)
-		{
-			Body b = bodies.get(i);
-
-			if (b.getInvMass() == 0.0f) {
+		ColorBatch[] batches = colorBatches.poll();
+		if (batches == null) {
+			batches = new ColorBatch[ConstraintColoring.MAX_COLORS + 1];
+		}
+		for (int c = 0; c < coloring.getNumColors(); c++) {
+			if (batches[c] == null) {
+				batches[c] = new ColorBatch();
+			}
+			batches[c].set(coloring, coloring.getFirstArbiter(c), coloring.getFirstArbiter(c + 1),
+						   coloring.getFirstJoint(c), coloring.getFirstJoint(c + 1), dt, invDT);
+		}
+		
+		solveColors(coloring, batches, true);
+		for (int i = 0; i < iterations; ++i) {
+			solveColors(coloring, batches, false);
+		}
+		
+		colorBatches.offer(batches);
+		coloring.clear();
+		colorings.offer(coloring);
+	}
+	
+	/**
+	 * Make one pass over coloured constraints, a colour at a time
+	 * 
+	 * @param coloring The colouring of the constraints
+	 * @param batches The batches solving each colour
+	 * @param preStep True if the constraints should be prepared, false if their impulses should be applied
+	 */
+	private void solveColors(ConstraintColoring coloring, ColorBatch[] batches, boolean preStep) {
+		for (int c = 0; c < coloring.getNumColors(); c++) {
+			ColorBatch batch = batches[c];
+			batch.preStep = preStep;
+			if (c == ConstraintColoring.MAX_COLORS) {
+				batch.solve();
+			} else {
+				batch.reinitialize();
+				batch.invoke();
+			}
+		}
+	}
+	
+	/**
+	 * Bring the cached world geometry of every jointed body up to date. 
+	 * Joints read the geometry while being solved and static bodies are 
+	 * shared between islands, so this is done on the calling thread before
+	 * the islands are solved in parallel to leave them nothing to write.
+	 */
+	private void validateJointGeometry() {
+		for (int i = 0; i < joints.size(); ++i) {
+			Joint j = joints.get(i);
+			j.getBody1().getWorldGeometry();
+			j.getBody2().getWorldGeometry();
+		}
+	}
+	
+	/**
+	 * Solve the joints that connect only static bodies, and so belong to
+	 * no island, after the islands have been stepped
+	 * 
+	 * @param invDT The inverse of the amount of time to step
+	 */
+	private void solveLooseJoints(float invDT) {
+		JointList loose = islands.getLooseJoints();
+		for (int k = 0; k < loose.size(); k++) {
+			loose.get(k).preStep(invDT);
+		}
+		for (int i = 0; i < iterations; ++i) {
+			for (int k = 0; k < loose.size(); k++) {
+				loose.get(k).applyImpulse();
+			}
+		}
+	}
+	
+	/**
+	 * Check whether all the bodies in a list use the standard velocity 
+	 * validation, and so can be solved by the array solver
+	 * 
+	 * @param list The bodies to check
+	 * @return True if none of the bodies override the validation
+	 */
+	private boolean hasDefaultValidation(BodyList list) {
+		for (int i = 0; i < list.size(); i++) {
+			if (!list.get(i).hasDefaultValidation()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Check whether all the bodies in a range of the islands use the 
+	 * standard velocity validation, and so can be solved by the array solver
+	 * 
+	 * @param firstBody The index of the first body to check
+	 * @param lastBody The index after the last body to check
+	 * @return True if none of the bodies override the validation
+	 */
+	private boolean hasDefaultValidation(int firstBody, int lastBody) {
+		for (int i = firstBody; i < lastBody; i++) {
+			if (!islands.getBody(i).hasDefaultValidation()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Get the amount of work in the islands before a given island, used to 
+	 * split the islands evenly between tasks
+	 * 
+	 * @param island The island to measure up to
+	 * @return The number of bodies, arbiters and joints in the islands before it
+	 */
+	private int getWorkBefore(int island) {
+		return islands.getFirstBody(island) + islands.getFirstArbiter(island) + islands.getFirstJoint(island);
+	}
+	
+	/**
+	 * Run the contact iterations with the array solver. Resting pairs are
+	 * told of their collision once the impulses have been applied rather
+	 * than between iterations.
+	 */
+	private void solveArrays() {
+		for (int k = 0; k < arbiters.size(); k++) {
+			Arbiter arb = arbiters.getArbiter(k);
+			if (arb.isAsleep()) {
 				continue;
 			}
-			if (restingBodyDetection) {
-				if (b.isResting()) {
-					continue;
-				}
+			if (!restingBodyDetection || !arb.hasRestingPair()) {
+				contactSolver.add(arb);
 			}
-			
-			b.adjustPosition(b.getVelocity(), dt);
-			b.adjustPosition(b.getBiasedVelocity(), dt);
-			
-			b.adjustRotation(dt * b.getAngularVelocity());
-			b.adjustRotation(dt * b.getBiasedAngularVelocity());
-
-			b.resetBias();
-			b.setForce(0,0);
-                        b.setSoftForce(0,0);
-			b.setTorque(0);
 		}
-
+		
+		contactSolver.solve(iterations);
+		contactSolver.store();
+		
 		if (restingBodyDetection) {
-			for (int i=0;i < bodies.size(); ++i)
-			{
-				Body b = bodies.get(i);
-				b.endFrame();
+			for (int k = 0; k < arbiters.size(); k++) {
+				Arbiter arb = arbiters.getArbiter(k);
+				if (arb.hasRestingPair() && !arb.isAsleep()) {
+					for (int i = 0; i < iterations; ++i) {
+						arb.getBody1().collided(arb.getBody2());
+						arb.getBody2().collided(arb.getBody1());
+					}
+				}
 			}
 		}
-		
-		cleanUpArbiters();
 	}
 	
 	/**
-	 * Clean up the arbiters for departied bodies
+	 * Check if a joint connects sleeping bodies, in which case it needn't
+	 * be solved
+	 * 
+	 * @param joint The joint to check
+	 * @return True if either body of the joint is asleep
 	 */
-	private void cleanUpArbiters()
-        {
-            
-                Iterator<Arbiter> it = arbiters.values().iterator();
-                while(it.hasNext())
-                {
-                    Arbiter arbiter = it.next();
-                    if (!arbiter.getBody1().added() || !arbiter.getBody2().added()) 
-                    {
-			it.remove();
-		    }
-                }
-
-                it = overlapList.values().iterator();
-                while(it.hasNext())
-                {
-                    Arbiter arbiter = it.next();
-                    if (!arbiter.getBody1().added() || !arbiter.getBody2().added()) 
-                    {
-			it.remove();
-		    }
-                }
-
+	private boolean isAsleep(Joint joint) {
+		return joint.getBody1().isAsleep() || joint.getBody2().isAsleep();
 	}
 	
 	/**
@@ -474,10 +902,11 @@ public strictfp class World extends CollisionSpace {
 	public CollisionEvent[] getContacts(Body body) {
 		ArrayList collisions = new ArrayList();
 		
-		for (Arbiter arb: arbiters.values()) 
+		for (int i = 0; i < body.getArbiterCount(); i++) 
                 {
-			
-			if (arb.concerns(body)) {
+			Arbiter arb = body.getArbiter(i);
+
+			if (arb.map == arbiters) {
 				for (int j=0;j<arb.getNumContacts();j++) {
 					Contact contact = arb.getContact(j);
 					CollisionEvent event = new CollisionEvent(0, arb.getBody1(), arb.getBody2(), contact.getPosition(), contact.getNormal(), contact.getSeparation());
@@ -514,12 +943,185 @@ public strictfp class World extends CollisionSpace {
 	}
 
 	/**
-	 * Remove a body from the simulation
+	 * Remove a body from the simulation. Bodies touching it or jointed to 
+	 * it are woken, along with their islands on the next step.
 	 * 
 	 * @param body The body to be removed
 	 */
 	public void remove(Body body) {
+		for (int i = 0; i < joints.size(); i++) {
+			Joint joint = joints.get(i);
+			if (joint.getBody1() == body) {
+				joint.getBody2().wakeUp();
+			} else if (joint.getBody2() == body) {
+				joint.getBody1().wakeUp();
+			}
+		}
 		clearArbiters(body);
 		super.remove(body);
 	}
+	
+	/**
+	 * The task stepping a run of islands. Runs with plenty of work are 
+	 * split in two by the amount of work in them and forked.
+	 */
+	private class IslandTask extends RecursiveAction {
+		/** The version of the serialised form, tasks are never serialised */
+		private static final long serialVersionUID = 1L;
+		/** The first island to step */
+		private int first;
+		/** The island after the last to step */
+		private int last;
+		/** The amount of time to step */
+		private float dt;
+		/** The inverse of the amount of time to step */
+		private float invDT;
+		
+		/**
+		 * Create a new task
+		 * 
+		 * @param first The first island to step
+		 * @param last The island after the last to step
+		 * @param dt The amount of time to step
+		 * @param invDT The inverse of the amount of time to step
+		 */
+		IslandTask(int first, int last, float dt, float invDT) {
+			this.first = first;
+			this.last = last;
+			this.dt = dt;
+			this.invDT = invDT;
+		}
+		
+		/**
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			int start = getWorkBefore(first);
+			int end = getWorkBefore(last);
+			
+			if ((last - first > 1) && (end - start > MIN_ISLAND_WORK)) {
+				// find the island that splits the work most evenly
+				int half = start + ((end - start) / 2);
+				int low = first + 1;
+				int high = last - 1;
+				while (low < high) {
+					int middle = (low + high) >>> 1;
+					if (getWorkBefore(middle) < half) {
+						low = middle + 1;
+					} else {
+						high = middle;
+					}
+				}
+				
+				invokeAll(new IslandTask(first, low, dt, invDT), new IslandTask(low, last, dt, invDT));
+			} else {
+				for (int i = first; i < last; i++) {
+					solveIsland(i, dt, invDT);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The task solving a batch of constraints of one colour. Large batches
+	 * are split in two and forked.
+	 */
+	private class ColorBatch extends RecursiveAction {
+		/** The version of the serialised form, tasks are never serialised */
+		private static final long serialVersionUID = 1L;
+		/** The colouring the constraints come from */
+		private ConstraintColoring coloring;
+		/** The index of the first arbiter to solve */
+		private int firstArbiter;
+		/** The index after the last arbiter to solve */
+		private int lastArbiter;
+		/** The index of the first joint to solve */
+		private int firstJoint;
+		/** The index after the last joint to solve */
+		private int lastJoint;
+		/** True if the constraints should be prepared rather than solved */
+		private boolean preStep;
+		/** The amount of time to step */
+		private float dt;
+		/** The inverse of the amount of time to step */
+		private float invDT;
+		/** The batch solving the lower half when this batch is split */
+		private ColorBatch lower;
+		/** The batch solving the upper half when this batch is split */
+		private ColorBatch upper;
+		
+		/**
+		 * Set the constraints this batch solves. The batch is reused for
+		 * every pass over its colour.
+		 * 
+		 * @param coloring The colouring the constraints come from
+		 * @param firstArbiter The index of the first arbiter to solve
+		 * @param lastArbiter The index after the last arbiter to solve
+		 * @param firstJoint The index of the first joint to solve
+		 * @param lastJoint The index after the last joint to solve
+		 * @param dt The amount of time to step
+		 * @param invDT The inverse of the amount of time to step
+		 */
+		void set(ConstraintColoring coloring, int firstArbiter, int lastArbiter, int firstJoint, int lastJoint,
+				 float dt, float invDT) {
+			this.coloring = coloring;
+			this.firstArbiter = firstArbiter;
+			this.lastArbiter = lastArbiter;
+			this.firstJoint = firstJoint;
+			this.lastJoint = lastJoint;
+			this.dt = dt;
+			this.invDT = invDT;
+		}
+		
+		/**
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if ((lastArbiter - firstArbiter) + (lastJoint - firstJoint) > MIN_COLOR_BATCH) {
+				int middleArbiter = (firstArbiter + lastArbiter) >>> 1;
+				int middleJoint = (firstJoint + lastJoint) >>> 1;
+				if (lower == null) {
+					lower = new ColorBatch();
+					upper = new ColorBatch();
+				}
+				lower.set(coloring, firstArbiter, middleArbiter, firstJoint, middleJoint, dt, invDT);
+				upper.set(coloring, middleArbiter, lastArbiter, middleJoint, lastJoint, dt, invDT);
+				lower.preStep = preStep;
+				upper.preStep = preStep;
+				lower.reinitialize();
+				upper.reinitialize();
+				invokeAll(lower, upper);
+			} else {
+				solve();
+			}
+		}
+		
+		/**
+		 * Solve the batch on the calling thread
+		 */
+		void solve() {
+			for (int k = firstArbiter; k < lastArbiter; k++) {
+				Arbiter arb = coloring.getArbiter(k);
+				if (arb.isAsleep()) {
+					continue;
+				}
+				if (preStep) {
+					arb.preStep(invDT, dt, damping);
+				} else {
+					arb.applyImpulse();
+				}
+			}
+			for (int k = firstJoint; k < lastJoint; k++) {
+				Joint j = coloring.getJoint(k);
+				if (isAsleep(j)) {
+					continue;
+				}
+				if (preStep) {
+					j.preStep(invDT);
+				} else {
+					j.applyImpulse();
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,251 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+import net.phys2d.math.Matrix2f;
+import net.phys2d.math.ROVector2f;
+import net.phys2d.math.Vector2f;
+import net.phys2d.raw.shapes.AbstractShape;
+import net.phys2d.raw.shapes.Box;
+import net.phys2d.raw.shapes.Line;
+import net.phys2d.raw.shapes.Polygon;
+import net.phys2d.raw.shapes.Shape;
+
+/**
+ * The geometry of a body's shape in world space, i.e. the shape's vertices
+ * and edge normals after being rotated and moved to the body's current 
+ * position. The geometry is cached on the body and only recomputed when 
+ * the body's shape, position or rotation has changed since it was last
+ * retrieved, so a body that's collided against several others in a step
+ * is only transformed once.
+ * <p>
+ * The arrays and vectors handed out are shared by everyone retrieving the
+ * geometry and must not be modified.
+ */
+public class WorldGeometry {
+	/** An empty set of vertices for shapes that have none */
+	private static final Vector2f[] NONE = new Vector2f[0];
+	
+	/** The shape the geometry was computed for */
+	private Shape shape;
+	/** The x position the geometry was computed for */
+	private float x;
+	/** The y position the geometry was computed for */
+	private float y;
+	/** The rotation the geometry was computed for */
+	private float rotation;
+	/** The modification count of the shape the geometry was computed for */
+	private int modificationCount;
+	/** The rotation matrix of the body */
+	private Matrix2f rotationMatrix = new Matrix2f(0);
+	/** The vertices of the shape in world space */
+	private Vector2f[] vertices = NONE;
+	/** The normals of the edges of the shape */
+	private Vector2f[] normals = NONE;
+	
+	/**
+	 * Create a new empty geometry - this should only be done by the body
+	 */
+	WorldGeometry() {
+	}
+	
+	/**
+	 * Bring the geometry up to date with a body, recomputing it if the 
+	 * body has changed since it was last computed.
+	 * 
+	 * @param body The body this geometry belongs to
+	 */
+	void validate(Body body) {
+		Shape current = body.getShape();
+		ROVector2f position = body.getPosition();
+		float currentRotation = body.getRotation();
+		int currentModification = getModificationCount(current);
+		
+		if ((current == shape) && (position.getX() == x) && (position.getY() == y) 
+				&& (currentRotation == rotation) && (currentModification == modificationCount)) {
+			return;
+		}
+		
+		if ((current != shape) || (currentModification != modificationCount)) {
+			shape = current;
+			modificationCount = currentModification;
+			allocate(getVertexCount(current));
+		}
+		x = position.getX();
+		y = position.getY();
+		rotation = currentRotation;
+		
+		float cos = (float) Math.cos(rotation);
+		float sin = (float) Math.sin(rotation);
+		rotationMatrix.col1.set(cos, sin);
+		rotationMatrix.col2.set(-sin, cos);
+		
+		if (shape instanceof Polygon) {
+			((Polygon) shape).getVertices(position, rotation, vertices);
+		} else if (shape instanceof Box) {
+			((Box) shape).getPoints(position, rotation, vertices);
+		} else if (shape instanceof Line) {
+			((Line) shape).getVertices(position, rotation, vertices);
+		}
+		
+		for (int i=0;i<vertices.length;i++) {
+			Vector2f start = vertices[i];
+			Vector2f end = vertices[(i+1) % vertices.length];
+			
+			normals[i].set(end.y - start.y, -(end.x - start.x));
+			normals[i].normalise();
+		}
+	}
+	
+	/**
+	 * Get the number of vertices the geometry of a given shape has
+	 * 
+	 * @param shape The shape to check
+	 * @return The number of vertices, zero if the shape isn't described by them
+	 */
+	private int getVertexCount(Shape shape) {
+		if (shape instanceof Polygon) {
+			return ((Polygon) shape).getVertexCount();
+		}
+		if (shape instanceof Box) {
+			return 4;
+		}
+		if (shape instanceof Line) {
+			return 2;
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Get the number of times a shape has been changed in place
+	 * 
+	 * @param shape The shape to check
+	 * @return The modification count of the shape, zero if it doesn't keep one
+	 */
+	private int getModificationCount(Shape shape) {
+		if (shape instanceof AbstractShape) {
+			return ((AbstractShape) shape).getModificationCount();
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Size the vertex and normal arrays to a given vertex count
+	 * 
+	 * @param count The number of vertices to hold
+	 */
+	private void allocate(int count) {
+		if (count == vertices.length) {
+			return;
+		}
+		if (count == 0) {
+			vertices = NONE;
+			normals = NONE;
+			return;
+		}
+		
+		vertices = new Vector2f[count];
+		normals = new Vector2f[count];
+		for (int i=0;i<count;i++) {
+			vertices[i] = new Vector2f();
+			normals[i] = new Vector2f();
+		}
+	}
+	
+	/**
+	 * Get the rotation matrix of the body
+	 * 
+	 * @return The rotation matrix of the body
+	 */
+	public Matrix2f getRotation() {
+		return rotationMatrix;
+	}
+	
+	/**
+	 * Get the vertices of the body's shape in world space. Polygons give
+	 * their vertices, boxes their four corners and lines their two end 
+	 * points, other shapes have no vertices.
+	 * 
+	 * @return The vertices of the shape in world space
+	 */
+	public Vector2f[] getVertices() {
+		return vertices;
+	}
+	
+	/**
+	 * Get the normals of the edges of the body's shape. The normal at 
+	 * index i belongs to the edge running from vertex i to vertex i+1 and
+	 * points outwards for counterclockwise shapes.
+	 * 
+	 * @return The normals of the edges of the shape
+	 */
+	public Vector2f[] getNormals() {
+		return normals;
+	}
+	
+	/**
+	 * Check if the body's shape contains a point. Only shapes described by 
+	 * at least three vertices can contain anything.
+	 * 
+	 * @param px The x coordinate of the point to check
+	 * @param py The y coordinate of the point to check
+	 * @return True if the point is inside the shape
+	 */
+	public boolean contains(float px, float py) {
+		if (vertices.length < 3) {
+			return false;
+		}
+		
+		boolean inside = false;
+		for (int i=0, j=vertices.length-1;i<vertices.length;j=i++) {
+			Vector2f a = vertices[i];
+			Vector2f b = vertices[j];
+			
+			if ((a.y > py) != (b.y > py)) {
+				float crossX = a.x + ((py - a.y) * (b.x - a.x) / (b.y - a.y));
+				if (px < crossX) {
+					inside = !inside;
+				}
+			}
+		}
+		
+		return inside;
+	}
+}
@@ -90,11 +90,6 @@ public strictfp class BoxBoxCollider implements Collider {
 	public static final int EDGE3 = 3;
 	/** The identifier indicating the forth edge collides */
 	public static final int EDGE4 = 4;
-
-	/** Temp vector */
-	private static Vector2f hA = new Vector2f();
-	/** Temp vector */
-	private static Vector2f hB = new Vector2f();
 	
 	/**
 	 * A simple structure describe a vertex against which the
@@ -266,11 +261,12 @@ public strictfp class BoxBoxCollider implements Collider {
 			return 0;
 		}
 		
-		// Setup
-		hA.set(((Box) bodyA.getShape()).getSize());
+		// Setup, the half sizes are kept local so the collider can be
+		// used by several threads at once
+		Vector2f hA = new Vector2f(((Box) bodyA.getShape()).getSize());
 		hA.scale(0.5f);
 		//Vector2f hA = MathUtil.scale(((Box) bodyA.getShape()).getSize(), 0.5f);
-		hB.set(((Box) bodyB.getShape()).getSize());
+		Vector2f hB = new Vector2f(((Box) bodyB.getShape()).getSize());
 		hB.scale(0.5f);
 		//Vector2f hB = MathUtil.scale(((Box) bodyB.getShape()).getSize(), 0.5f);
 		//Vector2f hA = MathUtil.scale(bodyA.getSize(), 0.5f);
@@ -279,8 +275,8 @@ public strictfp class BoxBoxCollider implements Collider {
 		ROVector2f posA = bodyA.getPosition();
 		ROVector2f posB = bodyB.getPosition();
 
-		Matrix2f rotA = new Matrix2f(bodyA.getRotation());
-		Matrix2f rotB = new Matrix2f(bodyB.getRotation());
+		Matrix2f rotA = bodyA.getWorldGeometry().getRotation();
+		Matrix2f rotB = bodyB.getWorldGeometry().getRotation();
 
 		Matrix2f RotAT = rotA.transpose();
 		Matrix2f RotBT = rotB.transpose();
@@ -41,7 +41,6 @@ import net.phys2d.math.MathUtil;
 import net.phys2d.math.Vector2f;
 import net.phys2d.raw.Body;
 import net.phys2d.raw.Contact;
-import net.phys2d.raw.shapes.Box;
 import net.phys2d.raw.shapes.Circle;
 import net.phys2d.raw.shapes.Line;
 
@@ -68,10 +67,9 @@ public strictfp class BoxCircleCollider implements Collider {
 			return 0;
 		}
 		
-		Box box = (Box) boxBody.getShape();
 		Circle circle = (Circle) circleBody.getShape();
 		
-		Vector2f[] pts = box.getPoints(boxBody.getPosition(), boxBody.getRotation());
+		Vector2f[] pts = boxBody.getWorldGeometry().getVertices();
 		Line[] lines = new Line[4];
 		lines[0] = new Line(pts[0],pts[1]);
 		lines[1] = new Line(pts[1],pts[2]);
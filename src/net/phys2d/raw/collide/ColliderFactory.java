@@ -37,23 +37,82 @@
  */
 package net.phys2d.raw.collide;
 
+import java.util.HashMap;
+
 import net.phys2d.raw.Body;
+import net.phys2d.raw.Contact;
 import net.phys2d.raw.shapes.*;
 
 /**
- * A collider factory to create colliders for arbitrary bodies, 
+ * A collider factory to provide colliders for arbitrary bodies, 
  * or actually their shapes.
  * This was implemented to replace a visitor-pattern based implementation,
  * that required many files to be edited to add a new shape.
- * Furthermore this factory can handle singleton colliders if needed.
+ * <p>
+ * Colliders are registered against a pair of shape classes and are expected
+ * to be stateless, so a single instance is shared by every pair of bodies.
+ * A registered collider also serves the reversed pair of shapes (wrapped in 
+ * a SwapCollider) and subclasses of the shapes it's registered for, unless
+ * a more specific collider has been registered. The collider chosen for each 
+ * pair of concrete shape classes is cached in a dispatch table. The table
+ * is copied when it changes rather than changed in place, so colliders can
+ * be looked up from any thread without locking.
+ * <p>
+ * Pairs of shapes with no suitable collider get one that never finds any
+ * contacts. Nothing is reported for them, use <code>createCollider()</code>
+ * to find out whether a pair is supported.
  * 
  * @author Gideon Smeding
  *
  */
 public class ColliderFactory {
+	/** The colliders and dispatch table currently in use, replaced rather than changed */
+	private volatile Dispatch dispatch = new Dispatch(new HashMap<Class<?>, HashMap<Class<?>, Collider>>(),
+			new HashMap<Class<?>, Integer>(), new Collider[0][0]);
+	
+	/**
+	 * Create a new factory with the colliders for the built in shapes
+	 */
+	public ColliderFactory() {
+		registerCollider(Circle.class, Circle.class, new CircleCircleCollider());
+		registerCollider(Box.class, Circle.class, new BoxCircleCollider());
+		registerCollider(Box.class, Box.class, new BoxBoxCollider());
+		registerCollider(Line.class, Circle.class, new LineCircleCollider());
+		registerCollider(Line.class, Box.class, new LineBoxCollider());
+		registerCollider(Line.class, Line.class, new LineLineCollider());
+		registerCollider(Line.class, Polygon.class, new LinePolygonCollider());
+		registerCollider(Polygon.class, Circle.class, new PolygonCircleCollider());
+		registerCollider(Polygon.class, Box.class, new PolygonBoxCollider());
+		registerCollider(Polygon.class, Polygon.class, new PolygonPolygonCollider());
+		registerCollider(ConvexPolygon.class, ConvexPolygon.class, new ConvexPolygonCollider());
+		registerCollider(Box.class, ConvexPolygon.class, new ConvexPolygonCollider());
+	}
 	
 	/**
-	 * Create a collider for two bodies. The decision depends on
+	 * Register a collider for a pair of shape classes. The collider will be
+	 * passed bodies with the shapes in the order given here, the reversed 
+	 * order is handled by swapping the result unless a collider has been
+	 * registered for it explicitly.
+	 * 
+	 * @param shapeA The class of the first shape
+	 * @param shapeB The class of the second shape
+	 * @param collider The collider to use, shared between all pairs of bodies
+	 */
+	public synchronized void registerCollider(Class<? extends Shape> shapeA, Class<? extends Shape> shapeB, Collider collider) {
+		Dispatch current = dispatch;
+		HashMap<Class<?>, HashMap<Class<?>, Collider>> registered = new HashMap<Class<?>, HashMap<Class<?>, Collider>>(current.registered);
+		HashMap<Class<?>, Collider> colliders = registered.get(shapeA);
+		colliders = (colliders == null) ? new HashMap<Class<?>, Collider>() : new HashMap<Class<?>, Collider>(colliders);
+		colliders.put(shapeB, collider);
+		registered.put(shapeA, colliders);
+		
+		// the choices made so far may no longer be the most specific
+		int count = current.typeIndex.size();
+		dispatch = new Dispatch(registered, current.typeIndex, new Collider[count][count]);
+	}
+	
+	/**
+	 * Get the collider for two bodies. The decision depends on
 	 * the body's shapes.
 	 * 
 	 * @param bodyA First body in the collision test
@@ -64,123 +123,161 @@ public class ColliderFactory {
 	 */
 	public Collider createCollider(Body bodyA, Body bodyB) 
 	throws ColliderUnavailableException {
-		Shape shapeA = bodyA.getShape();
-		Shape shapeB = bodyB.getShape();
-		
-		if ( shapeA instanceof Circle ) {
-			return createColliderFor((Circle) shapeA, shapeB);
-		} else if ( shapeA instanceof Box ) {
-			return createColliderFor((Box) shapeA, shapeB);
-		} else if ( shapeA instanceof Line ) {
-			return createColliderFor((Line) shapeA, shapeB);
-		} else if ( shapeA instanceof Polygon ) {
-			return createColliderFor((Polygon) shapeA, shapeB);
+		Collider collider = getCollider(bodyA.getShape(), bodyB.getShape());
+		if (collider instanceof UnavailableCollider) {
+			throw new ColliderUnavailableException(bodyA.getShape(), bodyB.getShape());
 		}
 		
-		throw new ColliderUnavailableException(shapeA, shapeB);
+		return collider;
 	}
 	
 	/**
-	 * Creates a collider for a Circle and a Shape.
-	 * The choice is based on the kind of Shape that is provided
+	 * Get the collider for a pair of shapes. If there is no suitable collider
+	 * a collider is returned that never finds any contacts, use 
+	 * <code>createCollider()</code> to have the problem reported instead.
+	 * <p>
+	 * Lookups don't lock so may be made from any number of threads at once.
+	 * Only the first lookup for a pair of shape classes, after the pair is 
+	 * first seen or a collider is registered, waits to update the table.
 	 * 
-	 * @param shapeA The circle to provide a collider for
-	 * @param shapeB The shape to provide a collider for
-	 * @return a suitable collider
-	 * @throws ColliderUnavailableException
-	 * 	       This exception will be thrown if no suitable collider can be found.
+	 * @param shapeA The first shape
+	 * @param shapeB The second shape
+	 * @return The collider for the pair of shapes
 	 */
-	public Collider createColliderFor(Circle shapeA, Shape shapeB) 
-	throws ColliderUnavailableException {
-
-		if ( shapeB instanceof Circle ) {
-			return new CircleCircleCollider();
-		} else if ( shapeB instanceof Box ) {
-			return new SwapCollider(new BoxCircleCollider());
-		} else if ( shapeB instanceof Line ) {
-			return new SwapCollider(new LineCircleCollider());
-		} else if ( shapeB instanceof Polygon ) {
-			return new SwapCollider(new PolygonCircleCollider());
+	public Collider getCollider(Shape shapeA, Shape shapeB) {
+		Dispatch current = dispatch;
+		Integer a = current.typeIndex.get(shapeA.getClass());
+		Integer b = current.typeIndex.get(shapeB.getClass());
+		if ((a != null) && (b != null)) {
+			Collider collider = current.table[a.intValue()][b.intValue()];
+			if (collider != null) {
+				return collider;
+			}
 		}
 		
-		throw new ColliderUnavailableException(shapeA, shapeB);
+		return addCollider(shapeA.getClass(), shapeB.getClass());
 	}
 	
 	/**
-	 * Creates a collider for a Box and a Shape.
-	 * The choice is based on the kind of Shape that is provided
+	 * Choose the collider for a pair of concrete shape classes and publish
+	 * a copy of the dispatch table holding it
 	 * 
-	 * @param shapeA The box to provide a collider for
-	 * @param shapeB The shape to provide a collider for
-	 * @return a suitable collider
-	 * @throws ColliderUnavailableException
-	 * 	       This exception will be thrown if no suitable collider can be found.
+	 * @param shapeA The class of the first shape
+	 * @param shapeB The class of the second shape
+	 * @return The collider chosen
 	 */
-	public Collider createColliderFor(Box shapeA, Shape shapeB) 
-	throws ColliderUnavailableException {
-
-		if ( shapeB instanceof Circle ) {
-			return new BoxCircleCollider();
-		} else if ( shapeB instanceof Box ) {
-			return new BoxBoxCollider();
-		} else if ( shapeB instanceof Line ) {
-			return new SwapCollider(new LineBoxCollider());
-		} else if ( shapeB instanceof Polygon ) {
-			return new SwapCollider(new PolygonBoxCollider());
+	private synchronized Collider addCollider(Class<?> shapeA, Class<?> shapeB) {
+		Dispatch current = dispatch;
+		HashMap<Class<?>, Integer> typeIndex = current.typeIndex;
+		if (!typeIndex.containsKey(shapeA) || !typeIndex.containsKey(shapeB)) {
+			typeIndex = new HashMap<Class<?>, Integer>(typeIndex);
+			if (!typeIndex.containsKey(shapeA)) {
+				typeIndex.put(shapeA, Integer.valueOf(typeIndex.size()));
+			}
+			if (!typeIndex.containsKey(shapeB)) {
+				typeIndex.put(shapeB, Integer.valueOf(typeIndex.size()));
+			}
+		}
+		int a = typeIndex.get(shapeA).intValue();
+		int b = typeIndex.get(shapeB).intValue();
+		
+		// another thread may have got here first
+		if ((typeIndex == current.typeIndex) && (current.table[a][b] != null)) {
+			return current.table[a][b];
+		}
+		
+		int count = typeIndex.size();
+		Collider[][] table = new Collider[count][count];
+		for (int i=0;i<current.table.length;i++) {
+			System.arraycopy(current.table[i], 0, table[i], 0, current.table[i].length);
 		}
+		Collider collider = findCollider(current, shapeA, shapeB);
+		table[a][b] = collider;
+		dispatch = new Dispatch(current.registered, typeIndex, table);
 		
-		throw new ColliderUnavailableException(shapeA, shapeB);
+		return collider;
 	}
 	
 	/**
-	 * Creates a collider for a Line and a Shape.
-	 * The choice is based on the kind of Shape that is provided
+	 * Find the most specific collider registered for a pair of shape classes
 	 * 
-	 * @param shapeA The line to provide a collider for
-	 * @param shapeB The shape to provide a collider for
-	 * @return a suitable collider
-	 * @throws ColliderUnavailableException
-	 * 	       This exception will be thrown if no suitable collider can be found.
+	 * @param current The colliders to choose from
+	 * @param shapeA The class of the first shape
+	 * @param shapeB The class of the second shape
+	 * @return The collider found
 	 */
-	public Collider createColliderFor(Line shapeA, Shape shapeB) 
-	throws ColliderUnavailableException {
-
-		if ( shapeB instanceof Circle ) {
-			return new LineCircleCollider();
-		} else if ( shapeB instanceof Box ) {
-			return new LineBoxCollider();
-		} else if ( shapeB instanceof Line ) {
-			return new LineLineCollider();
-		} else if ( shapeB instanceof Polygon ) {
-			return new LinePolygonCollider();
+	private Collider findCollider(Dispatch current, Class<?> shapeA, Class<?> shapeB) {
+		for (Class<?> a=shapeA;a!=null;a=a.getSuperclass()) {
+			for (Class<?> b=shapeB;b!=null;b=b.getSuperclass()) {
+				Collider collider = getRegistered(current, a, b);
+				if (collider != null) {
+					return collider;
+				}
+				collider = getRegistered(current, b, a);
+				if (collider != null) {
+					return new SwapCollider(collider);
+				}
+			}
 		}
 		
-		throw new ColliderUnavailableException(shapeA, shapeB);
+		return new UnavailableCollider();
 	}
 	
 	/**
-	 * Creates a collider for a ConvexPolygon and a Shape.
-	 * The choice is based on the kind of Shape that is provided
+	 * Get the collider registered for exactly the pair of classes given
 	 * 
-	 * @param shapeA The convex polygon to provide a collider for
-	 * @param shapeB The shape to provide a collider for
-	 * @return a suitable collider
-	 * @throws ColliderUnavailableException
-	 * 	       This exception will be thrown if no suitable collider can be found.
+	 * @param current The colliders to choose from
+	 * @param shapeA The class of the first shape
+	 * @param shapeB The class of the second shape
+	 * @return The collider registered or null if none has been
 	 */
-	public Collider createColliderFor(Polygon shapeA, Shape shapeB) 
-	throws ColliderUnavailableException {
-
-		if ( shapeB instanceof Circle ) {
-			return new PolygonCircleCollider();
-		} else if ( shapeB instanceof Box ) {
-			return new PolygonBoxCollider();
-		} else if ( shapeB instanceof Line ) {
-			return new SwapCollider(new LinePolygonCollider());
-		} else if ( shapeB instanceof Polygon ) {
-			return new PolygonPolygonCollider();
+	private Collider getRegistered(Dispatch current, Class<?> shapeA, Class<?> shapeB) {
+		HashMap<Class<?>, Collider> colliders = current.registered.get(shapeA);
+		if (colliders == null) {
+			return null;
 		}
+		return colliders.get(shapeB);
+	}
+	
+	/**
+	 * The colliders registered and the dispatch table chosen from them. 
+	 * None of it is changed once it's been published, changes are made to
+	 * a copy which then replaces it.
+	 */
+	private static class Dispatch {
+		/** The colliders registered, keyed on the first then the second shape class */
+		private final HashMap<Class<?>, HashMap<Class<?>, Collider>> registered;
+		/** The index into the dispatch table of each concrete shape class seen */
+		private final HashMap<Class<?>, Integer> typeIndex;
+		/** The collider chosen for each pair of concrete shape classes, null if not chosen yet */
+		private final Collider[][] table;
 		
-		throw new ColliderUnavailableException(shapeA, shapeB);
+		/**
+		 * Create a new set of colliders
+		 * 
+		 * @param registered The colliders registered
+		 * @param typeIndex The index of each concrete shape class seen
+		 * @param table The collider chosen for each pair of concrete shape classes
+		 */
+		Dispatch(HashMap<Class<?>, HashMap<Class<?>, Collider>> registered, 
+				 HashMap<Class<?>, Integer> typeIndex, Collider[][] table) {
+			this.registered = registered;
+			this.typeIndex = typeIndex;
+			this.table = table;
+		}
+	}
+	
+	/**
+	 * The collider used for pairs of shapes no collider has been 
+	 * registered for. Ignores the collision, <code>createCollider()</code>
+	 * reports the missing collider to anyone that needs to know.
+	 */
+	private static class UnavailableCollider implements Collider {
+		/**
+		 * @see net.phys2d.raw.collide.Collider#collide(net.phys2d.raw.Contact[], net.phys2d.raw.Body, net.phys2d.raw.Body)
+		 */
+		public int collide(Contact[] contacts, Body bodyA, Body bodyB) {
+			return 0;
+		}
 	}
 }
@@ -0,0 +1,317 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw.collide;
+
+import net.phys2d.math.Vector2f;
+import net.phys2d.raw.Body;
+import net.phys2d.raw.Contact;
+import net.phys2d.raw.WorldGeometry;
+
+/**
+ * A separating axis collider for convex shapes described by their vertices,
+ * i.e. convex polygons and boxes. Each edge normal of both shapes is tested 
+ * as a separating axis, if none separates the shapes the edge of least 
+ * penetration becomes the reference face and the most opposed edge of the 
+ * other shape is clipped against it, giving at most two contacts.
+ * <p>
+ * Both shapes must have their vertices in counterclockwise order, which is
+ * enforced by <code>ConvexPolygon</code> and holds for <code>Box</code>.
+ */
+public class ConvexPolygonCollider implements CachingCollider {
+	/** The relative amount the second shape's face must be better by to be chosen as reference */
+	private static final float RELATIVE_TOLERANCE = 0.98f;
+	/** The absolute amount the second shape's face must be better by to be chosen as reference */
+	private static final float ABSOLUTE_TOLERANCE = 0.001f;
+	
+	/**
+	 * @see net.phys2d.raw.collide.Collider#collide(net.phys2d.raw.Contact[], net.phys2d.raw.Body, net.phys2d.raw.Body)
+	 */
+	public int collide(Contact[] contacts, Body bodyA, Body bodyB) {
+		return collide(contacts, bodyA, bodyB, null);
+	}
+	
+	/**
+	 * @see net.phys2d.raw.collide.CachingCollider#collide(net.phys2d.raw.Contact[], net.phys2d.raw.Body, net.phys2d.raw.Body, net.phys2d.raw.collide.SeparatingAxis)
+	 */
+	public int collide(Contact[] contacts, Body bodyA, Body bodyB, SeparatingAxis axis) {
+		WorldGeometry geomA = bodyA.getWorldGeometry();
+		WorldGeometry geomB = bodyB.getWorldGeometry();
+		Vector2f[] vertsA = geomA.getVertices();
+		Vector2f[] normalsA = geomA.getNormals();
+		Vector2f[] vertsB = geomB.getVertices();
+		Vector2f[] normalsB = geomB.getNormals();
+		
+		// try the axis that separated the bodies last time first
+		if ((axis != null) && (axis.getBody() != null)) {
+			int edge = axis.getEdge();
+			
+			if ((axis.getBody() == bodyA) && (edge < vertsA.length)) {
+				if (getSeparation(vertsA, normalsA, edge, vertsB) > 0) {
+					return 0;
+				}
+			} else if ((axis.getBody() == bodyB) && (edge < vertsB.length)) {
+				if (getSeparation(vertsB, normalsB, edge, vertsA) > 0) {
+					return 0;
+				}
+			}
+		}
+		
+		int edgeA = findMaxSeparation(vertsA, normalsA, vertsB);
+		float separationA = getSeparation(vertsA, normalsA, edgeA, vertsB);
+		if (separationA > 0) {
+			if (axis != null) {
+				axis.set(bodyA, edgeA);
+			}
+			return 0;
+		}
+		
+		int edgeB = findMaxSeparation(vertsB, normalsB, vertsA);
+		float separationB = getSeparation(vertsB, normalsB, edgeB, vertsA);
+		if (separationB > 0) {
+			if (axis != null) {
+				axis.set(bodyB, edgeB);
+			}
+			return 0;
+		}
+		
+		// choose the reference face, prefering the first shape so the
+		// choice doesn't flip between nearly equal faces
+		Vector2f[] refVerts;
+		Vector2f[] refNormals;
+		Vector2f[] incVerts;
+		Vector2f[] incNormals;
+		int refEdge;
+		boolean flip;
+		
+		if (separationB > (RELATIVE_TOLERANCE * separationA) + ABSOLUTE_TOLERANCE) {
+			refVerts = vertsB;
+			refNormals = normalsB;
+			incVerts = vertsA;
+			incNormals = normalsA;
+			refEdge = edgeB;
+			flip = true;
+			
+			if (axis != null) {
+				axis.set(bodyB, edgeB);
+			}
+		} else {
+			refVerts = vertsA;
+			refNormals = normalsA;
+			incVerts = vertsB;
+			incNormals = normalsB;
+			refEdge = edgeA;
+			flip = false;
+			
+			if (axis != null) {
+				axis.set(bodyA, edgeA);
+			}
+		}
+		
+		float nx = refNormals[refEdge].x;
+		float ny = refNormals[refEdge].y;
+		
+		// find the edge on the incident shape most opposed to the reference face
+		int incEdge = 0;
+		float minDot = Float.MAX_VALUE;
+		for (int i=0;i<incNormals.length;i++) {
+			float dot = (nx * incNormals[i].x) + (ny * incNormals[i].y);
+			if (dot < minDot) {
+				minDot = dot;
+				incEdge = i;
+			}
+		}
+		
+		int refCount = refVerts.length;
+		int incCount = incVerts.length;
+		int incNext = (incEdge + 1) % incCount;
+		
+		// the incident edge as a segment, each end identified by the edges
+		// either side of it. The two ends are worked on in the first two 
+		// contacts, with the reference shape first in their features
+		Contact start = contacts[0];
+		Contact end = contacts[1];
+		start.setPosition(incVerts[incEdge].x, incVerts[incEdge].y);
+		start.setFeature(0, ((incEdge + incCount - 1) % incCount) + 1, 0, incEdge + 1);
+		end.setPosition(incVerts[incNext].x, incVerts[incNext].y);
+		end.setFeature(0, incEdge + 1, 0, incNext + 1);
+		
+		Vector2f v11 = refVerts[refEdge];
+		Vector2f v12 = refVerts[(refEdge + 1) % refCount];
+		
+		// the reference face runs along the tangent, the normal is to its right
+		float tx = -ny;
+		float ty = nx;
+		float frontOffset = (nx * v11.x) + (ny * v11.y);
+		float sideOffset1 = -((tx * v11.x) + (ty * v11.y));
+		float sideOffset2 = (tx * v12.x) + (ty * v12.y);
+		
+		// clip the incident edge to the sides of the reference face
+		if (!clipSegment(start, end, -tx, -ty, sideOffset1, ((refEdge + refCount - 1) % refCount) + 1)) {
+			return 0;
+		}
+		if (!clipSegment(start, end, tx, ty, sideOffset2, ((refEdge + 1) % refCount) + 1)) {
+			return 0;
+		}
+		
+		int numContacts = 0;
+		for (int i=0;i<2;i++) {
+			Contact point = contacts[i];
+			float px = point.getPosition().getX();
+			float py = point.getPosition().getY();
+			float separation = (nx * px) + (ny * py) - frontOffset;
+			
+			if (separation <= 0) {
+				FeaturePair feature = point.getFeature();
+				int inEdge1 = feature.inEdge1;
+				int inEdge2 = feature.inEdge2;
+				int outEdge1 = feature.outEdge1;
+				int outEdge2 = feature.outEdge2;
+				Contact contact = contacts[numContacts];
+				
+				// slide the contact point onto the reference face, giving 
+				// the first body's edges first
+				contact.setSeparation(separation);
+				if (flip) {
+					contact.setNormal(-nx, -ny);
+					contact.setFeature(inEdge2, inEdge1, outEdge2, outEdge1);
+				} else {
+					contact.setNormal(nx, ny);
+					contact.setFeature(inEdge1, inEdge2, outEdge1, outEdge2);
+				}
+				contact.setPosition(px - (nx * separation), py - (ny * separation));
+				numContacts++;
+			}
+		}
+		
+		return numContacts;
+	}
+	
+	/**
+	 * Get the separation of a set of vertices from an edge of a shape,
+	 * i.e. the distance of the vertex furthest behind the edge.
+	 * 
+	 * @param verts The vertices of the shape owning the edge
+	 * @param normals The edge normals of the shape owning the edge
+	 * @param edge The index of the edge
+	 * @param other The vertices of the other shape
+	 * @return The separation, negative if the vertices penetrate the edge
+	 */
+	private float getSeparation(Vector2f[] verts, Vector2f[] normals, int edge, Vector2f[] other) {
+		Vector2f n = normals[edge];
+		Vector2f v = verts[edge];
+		float offset = (n.x * v.x) + (n.y * v.y);
+		
+		float min = Float.MAX_VALUE;
+		for (int i=0;i<other.length;i++) {
+			float d = (n.x * other[i].x) + (n.y * other[i].y);
+			if (d < min) {
+				min = d;
+			}
+		}
+		
+		return min - offset;
+	}
+	
+	/**
+	 * Find the edge of a shape that the other shape is furthest from, or 
+	 * penetrates the least.
+	 * 
+	 * @param verts The vertices of the shape whose edges are tested
+	 * @param normals The edge normals of the shape whose edges are tested
+	 * @param other The vertices of the other shape
+	 * @return The index of the edge with the greatest separation
+	 */
+	private int findMaxSeparation(Vector2f[] verts, Vector2f[] normals, Vector2f[] other) {
+		int best = 0;
+		float max = -Float.MAX_VALUE;
+		
+		for (int i=0;i<verts.length;i++) {
+			float separation = getSeparation(verts, normals, i, other);
+			if (separation > max) {
+				max = separation;
+				best = i;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Clip a segment against a plane, keeping the part behind it. A clipped
+	 * end of the segment is identified by the edge it was clipped against.
+	 * 
+	 * @param start The contact holding the start of the segment and its feature, updated if clipped
+	 * @param end The contact holding the end of the segment and its feature, updated if clipped
+	 * @param nx The x component of the plane's normal
+	 * @param ny The y component of the plane's normal
+	 * @param offset The offset of the plane along its normal
+	 * @param clipEdge The edge (plus one) defining the plane
+	 * @return True if a segment remains, false if it was entirely in front of the plane
+	 */
+	private boolean clipSegment(Contact start, Contact end, float nx, float ny, float offset, int clipEdge) {
+		float x0 = start.getPosition().getX();
+		float y0 = start.getPosition().getY();
+		float x1 = end.getPosition().getX();
+		float y1 = end.getPosition().getY();
+		float distance0 = (nx * x0) + (ny * y0) - offset;
+		float distance1 = (nx * x1) + (ny * y1) - offset;
+		
+		if ((distance0 > 0) && (distance1 > 0)) {
+			return false;
+		}
+		if ((distance0 <= 0) && (distance1 <= 0)) {
+			return true;
+		}
+		
+		float interp = distance0 / (distance0 - distance1);
+		float x = x0 + (interp * (x1 - x0));
+		float y = y0 + (interp * (y1 - y0));
+		
+		if (distance0 > 0) {
+			FeaturePair feature = start.getFeature();
+			start.setPosition(x, y);
+			start.setFeature(clipEdge, 0, feature.outEdge1, feature.outEdge2);
+		} else {
+			FeaturePair feature = end.getFeature();
+			end.setPosition(x, y);
+			end.setFeature(feature.inEdge1, feature.inEdge2, clipEdge, 0);
+		}
+		
+		return true;
+	}
+}
@@ -37,7 +37,8 @@
  */
 package net.phys2d.raw.collide;
 
-import java.util.Iterator;
+import java.util.Arrays;
+
 import net.phys2d.math.ROVector2f;
 import net.phys2d.math.Vector2f;
 
@@ -81,53 +82,117 @@ import net.phys2d.math.Vector2f;
  * this clearly holds, giving us a worst case complexity of O(n). Non-convex
  * polygons can however cause trouble with a worst case complexity of O(n*n).</p>   
  *  
+ * <p>The sorted list and the collision candidates are kept in primitive arrays
+ * that grow when needed and are reused, so an EdgeSweep that is
+ * {@link #reset(ROVector2f) reset} between collisions does not allocate once
+ * it has seen its largest polygons.</p>
+ * 
  * 
  * @author Gideon Smeding
  *
  */
 public class EdgeSweep {
+	/** The index used to mark the absence of a list element */
+	private static final int NONE = -1;
+	/** The number of vertices the sweep can hold before it has to grow */
+	private static final int INITIAL_CAPACITY = 32;
 
-	/** The doubly linked list list of inserted vertices */
-	class ProjectedVertex {
-		/** Vertex number, usually the index of the vertex in a polygon's array */
-		public int vertex;
-		/** True if this is a vertex belonging to polygon A, false if B */
-		public boolean isA;
-		/** Distance of the projection onto the sweep direction from the origin */
-		public float distance;
-		
-		/** Next vertex in the list */
-		public ProjectedVertex next;
-		/** Next previous in the list */
-		public ProjectedVertex previous;
-	
-		/** 
-		 * Construct a list element with all it's values set except the next and
-		 * previous elements of the list.
-		 * 
-		 * @param vertex Vertex number, usually the index of the vertex in a polygon's array
-		 * @param isA True if this is a vertex belonging to polygon A, false if B
-		 * @param distance Distance of the projection onto the sweep direction from the origin
-		 */
-		public ProjectedVertex(int vertex, boolean isA, float distance) {
-			this.vertex = vertex;
-			this.isA = isA;
-			this.distance = distance;
-		}
-	}
+	/** Vertex numbers, usually the index of the vertex in a polygon's array */
+	private int[] vertices;
+	/** True if the vertex at an index belongs to polygon A, false if B */
+	private boolean[] isA;
+	/** Distances of the projections onto the sweep direction from the origin */
+	private float[] distances;
+	/** The index of the next vertex in the list, or NONE */
+	private int[] next;
+	/** The index of the previous vertex in the list, or NONE */
+	private int[] previous;
+	/** The number of vertices inserted */
+	private int size;
 	
-	/** The last inserted element in the projected vertex list */
-	private ProjectedVertex current;	
+	/** The index of the last inserted element in the projected vertex list */
+	private int current = NONE;
 	
 	/** The direction in which to sweep */
-	private Vector2f sweepDir;
+	private Vector2f sweepDir = new Vector2f();
+	
+	/** The edges of A touched by the sweepline */
+	private CurrentEdges edgesA = new CurrentEdges();
+	/** The edges of B touched by the sweepline */
+	private CurrentEdges edgesB = new CurrentEdges();
+	/** The collision candidates found by the last sweep */
+	private EdgePairs collidingEdges = new EdgePairs();
+	
+	/** 
+	 * Constructs an empty EdgeSweep object, the sweep direction should be
+	 * supplied through {@link #reset(ROVector2f)} before use.
+	 */
+	public EdgeSweep() {
+		vertices = new int[INITIAL_CAPACITY];
+		isA = new boolean[INITIAL_CAPACITY];
+		distances = new float[INITIAL_CAPACITY];
+		next = new int[INITIAL_CAPACITY];
+		previous = new int[INITIAL_CAPACITY];
+	}
 	
 	/** Constructs an EdgeSweep object with the given sweep direction.
 	 * 
 	 * @param sweepDir The direction in which to sweep
 	 */
 	public EdgeSweep(ROVector2f sweepDir) {
-		this.sweepDir = new Vector2f(sweepDir);
+		this();
+		this.sweepDir.set(sweepDir);
+	}
+	
+	/**
+	 * Remove all inserted vertices and set a new sweep direction, so this
+	 * object can be reused for another pair of polygons.
+	 * 
+	 * @param sweepDir The direction in which to sweep
+	 */
+	public void reset(ROVector2f sweepDir) {
+		reset(sweepDir.getX(), sweepDir.getY());
+	}
+	
+	/**
+	 * Remove all inserted vertices and set a new sweep direction, so this
+	 * object can be reused for another pair of polygons.
+	 * 
+	 * @param x The x component of the direction in which to sweep
+	 * @param y The y component of the direction in which to sweep
+	 */
+	public void reset(float x, float y) {
+		sweepDir.set(x, y);
+		size = 0;
+		current = NONE;
+	}
+	
+	/**
+	 * Add a new element to the arrays without linking it into the list.
+	 * 
+	 * @param vertex Vertex number, usually the index of the vertex in a polygon's array
+	 * @param isA True if this is a vertex belonging to polygon A, false if B
+	 * @param distance Distance of the projection onto the sweep direction from the origin
+	 * @return The index of the new element
+	 */
+	private int add(int vertex, boolean isA, float distance) {
+		if ( size == vertices.length ) {
+			int capacity = size * 2;
+			vertices = Arrays.copyOf(vertices, capacity);
+			this.isA = Arrays.copyOf(this.isA, capacity);
+			distances = Arrays.copyOf(distances, capacity);
+			next = Arrays.copyOf(next, capacity);
+			previous = Arrays.copyOf(previous, capacity);
+		}
+		
+		int svl = size++;
+		vertices[svl] = vertex;
+		this.isA[svl] = isA;
+		distances[svl] = distance;
+		next[svl] = NONE;
+		previous[svl] = NONE;
+		
+		return svl;
 	}
 	
 	/**
@@ -141,32 +206,32 @@ public class EdgeSweep {
 	 * @param distance Distance of the projection onto the sweep direction from the origin
 	 */
 	private void insertBackwards(int vertex, boolean isA, float distance) {
-		ProjectedVertex svl = new ProjectedVertex(vertex, isA, distance);
+		int svl = add(vertex, isA, distance);
 		
-		if ( current == null ) {
+		if ( current == NONE ) {
 			current = svl;
 			return;
 		}
 		
-		while ( current.distance > svl.distance ) {
-			if ( current.previous == null ) {
+		while ( distances[current] > distance ) {
+			if ( previous[current] == NONE ) {
 				// insert before current
-				current.previous = svl;
-				svl.next = current;
+				previous[current] = svl;
+				next[svl] = current;
 				current = svl;
 				return;
 			}
 			
-			current = current.previous;
+			current = previous[current];
 		}
 		
 		// insert after current
-		svl.next = current.next;
-		svl.previous = current;
-		current.next = svl;
+		next[svl] = next[current];
+		previous[svl] = current;
+		next[current] = svl;
 		
-		if ( svl.next != null )
-			svl.next.previous = svl;
+		if ( next[svl] != NONE )
+			previous[next[svl]] = svl;
 			
 		current = svl;
 	}
@@ -179,7 +244,7 @@ public class EdgeSweep {
 	 * @param distance Distance of the projection onto the sweep direction from the origin
 	 */
 	public void insert(int vertex, boolean isA, float distance) {
-		if ( current == null || current.distance <= distance )
+		if ( current == NONE || distances[current] <= distance )
 			insertForwards(vertex, isA, distance);
 		else
 			insertBackwards(vertex, isA, distance);
@@ -196,117 +261,123 @@ public class EdgeSweep {
 	 * @param distance Distance of the projection onto the sweep direction from the origin
 	 */
 	private void insertForwards(int vertex, boolean isA, float distance) {
-		ProjectedVertex svl = new ProjectedVertex(vertex, isA, distance);
+		int svl = add(vertex, isA, distance);
 		
-		if ( current == null ) {
+		if ( current == NONE ) {
 			current = svl;
 			return;
 		}
 		
-		while ( current.distance <= svl.distance ) {
-			if ( current.next == null ) {
+		while ( distances[current] <= distance ) {
+			if ( next[current] == NONE ) {
 				// insert after current
-				current.next = svl;
-				svl.previous = current;
+				next[current] = svl;
+				previous[svl] = current;
 				current = svl;
 				return;
 			}
 			
-			current = current.next;
+			current = next[current];
 		}
 		
 		// insert before current
-		svl.next = current;
-		svl.previous = current.previous;
-		current.previous = svl;
+		next[svl] = current;
+		previous[svl] = previous[current];
+		previous[current] = svl;
 		
-		if ( svl.previous != null )
-			svl.previous.next = svl;
+		if ( previous[svl] != NONE )
+			next[previous[svl]] = svl;
 			
 		current = svl;
 	}
 	
-	/** Set current to the first element of the list 
-	 * TODO: make this return something, touching the global current is ugly
+	/**
+	 * Get the first element of the list.
+	 * 
+	 * @return The index of the vertex with the smallest distance
 	 */
-	private void goToStart() {
-		// get the first vertex
-		while ( current.previous != null )
-			current = current.previous;
+	private int getStart() {
+		int first = current;
+		while ( previous[first] != NONE )
+			first = previous[first];
+		
+		return first;
 	}
 
 	/**
 	 * Get all edges whose projection onto the sweep direction overlap.
+	 * The returned list is owned by this sweep and is overwritten by the
+	 * next call.
 	 * 
-	 * @return The numbers of the overlapping edges. The array will always have
-	 * dimension [n][2], where [i][0] is the edge of polygon A and [i][1] of B.
+	 * @return The pairs of overlapping edges, where each pair holds an edge
+	 * of polygon A and an edge of polygon B
 	 */
-	public Iterator<EdgePairs.EdgePair> getOverlappingEdges() {
-		if ( current == null )
-			return new EdgePairs().iterator();
-		
-		goToStart();
+	public EdgePairs getOverlappingEdges() {
+		collidingEdges.clear();
+		if ( current == NONE )
+			return collidingEdges;
 		
-		CurrentEdges edgesA = new CurrentEdges();
-		CurrentEdges edgesB = new CurrentEdges();
-		EdgePairs collidingEdges = new EdgePairs();
+		edgesA.clear();
+		edgesB.clear();
 		
 		float lastDist = -Float.MAX_VALUE;
 		
-		while ( current != null ) {
-			if ( current.distance > lastDist ) {
-				lastDist = current.distance;
+		for ( int v = getStart(); v != NONE; v = next[v] ) {
+			if ( distances[v] > lastDist ) {
+				lastDist = distances[v];
 				edgesA.removeScheduled();
 				edgesB.removeScheduled();
 			}
-				
-			if ( current.isA ) {
-				if ( !edgesA.contains(current.vertex) ) {
-					edgesA.addEdge(current.vertex);
-					
-					int[] edgeListB = edgesB.getEdges(); 
-					for ( int i = 0; i < edgeListB.length; i++ )
-						collidingEdges.add(current.vertex, edgeListB[i]);
-					
+			
+			int vertex = vertices[v];
+			if ( isA[v] ) {
+				if ( !edgesA.contains(vertex) ) {
+					edgesA.addEdge(vertex);
+					edgesB.addPairs(vertex, true, collidingEdges);
 				} else {
-					edgesA.scheduleRemoval(current.vertex);
+					edgesA.scheduleRemoval(vertex);
 				}
 			} else {
-				if ( !edgesB.contains(current.vertex) ) {
-					edgesB.addEdge(current.vertex);
-					
-					int[] edgeListA = edgesA.getEdges(); 
-					for ( int i = 0; i < edgeListA.length; i++ )
-						collidingEdges.add(edgeListA[i], current.vertex);
-					
+				if ( !edgesB.contains(vertex) ) {
+					edgesB.addEdge(vertex);
+					edgesA.addPairs(vertex, false, collidingEdges);
 				} else {
-					edgesB.scheduleRemoval(current.vertex);
+					edgesB.scheduleRemoval(vertex);
 				}
-			}	
-			
-			current = current.next;
+			}
 		}
 		
-		return collidingEdges.iterator();
+		// report the most recently found candidates first, as we always have
+		collidingEdges.reverse();
+		return collidingEdges;
 	}
 	
 	/** The list of edges that are touched by the sweepline at a given time. 
 	 * 
-	 * Note that this implementation proved faster than one with a HashSet,
-	 * a specialized IntegerSet library and BitSet. This is mostly because
-	 * this list will rarely contain more than 10 edges at a time.
-	 * The IntegerSet and BitSet implementation both had poor performance
-	 * in the getEdges function.
+	 * Note that a plain list proved faster than a HashSet, a specialized
+	 * IntegerSet library and BitSet. This is mostly because this list will
+	 * rarely contain more than 10 edges at a time.
 	 * 
-	 * TODO: implement this with a tree to improve the performance of 'contains'?
-	 * If that is done, one should take care that it handles edges that are mostly
-	 * sorted (because that will definately be the case).
+	 * The edges are kept in the order they were added, the most recently
+	 * added edge being the last in the array.
 	 */
-	private class CurrentEdges {
-		/** The first element of the list of edges that have been inserted */
-		private LinkedEdgeList currentEdges;
+	private static class CurrentEdges {
+		/** The edges that have been inserted */
+		private int[] currentEdges = new int[INITIAL_CAPACITY];
+		/** The number of edges that have been inserted */
+		private int noCurrentEdges;
 		/** The edges that have been scheduled for removal but have not yet been removed */
-		private LinkedEdgeList scheduledForRemoval;
+		private int[] scheduledForRemoval = new int[INITIAL_CAPACITY];
+		/** The number of edges scheduled for removal */
+		private int noScheduled;
+		
+		/**
+		 * Remove all edges from this list.
+		 */
+		public void clear() {
+			noCurrentEdges = 0;
+			noScheduled = 0;
+		}
 		
 		/**
 		 * Add an edge to the top of the list.
@@ -317,7 +388,10 @@ public class EdgeSweep {
 		 * @param e The edge to be added
 		 */
 		public void addEdge(int e) {
-			currentEdges = new LinkedEdgeList(e,currentEdges);
+			if ( noCurrentEdges == currentEdges.length )
+				currentEdges = Arrays.copyOf(currentEdges, noCurrentEdges * 2);
+			
+			currentEdges[noCurrentEdges++] = e;
 		}
 		
 		/**
@@ -327,23 +401,23 @@ public class EdgeSweep {
 		 * @param e The edge to be scheduled for removal
 		 */
 		public void scheduleRemoval(int e) {
-			if ( currentEdges == null )
+			if ( noCurrentEdges == 0 )
 				return; // this shouldn't happen, but to be sure..
 			
-			if ( currentEdges.edge == e ) {
-				currentEdges = currentEdges.next;
-			} else {
-				LinkedEdgeList current = currentEdges.next;
-				LinkedEdgeList last = currentEdges;
-				
-				while ( current != null ) {
-					if ( current.edge == e ) {
-						last.next = current.next;
-						scheduledForRemoval = new LinkedEdgeList(e,scheduledForRemoval);
-						return;
-					}
-					last = current;
-					current = current.next;
+			if ( currentEdges[noCurrentEdges-1] == e ) {
+				noCurrentEdges--;
+				return;
+			}
+			
+			for ( int i = noCurrentEdges - 2; i >= 0; i-- ) {
+				if ( currentEdges[i] == e ) {
+					System.arraycopy(currentEdges, i+1, currentEdges, i, noCurrentEdges - i - 1);
+					noCurrentEdges--;
+					
+					if ( noScheduled == scheduledForRemoval.length )
+						scheduledForRemoval = Arrays.copyOf(scheduledForRemoval, noScheduled * 2);
+					scheduledForRemoval[noScheduled++] = e;
+					return;
 				}
 			}
 		}
@@ -351,7 +425,7 @@ public class EdgeSweep {
 		/** Remove the edges that have been scheduled for removal by
 		 * {@link CurrentEdges#scheduleRemoval(int)}. */
 		public void removeScheduled() {
-			scheduledForRemoval = null;
+			noScheduled = 0;
 		}
 		
 		/**
@@ -361,98 +435,48 @@ public class EdgeSweep {
 		 * @return True iff the edgelist contains the edge
 		 */
 		public boolean contains(int e) {
-			LinkedEdgeList current = currentEdges;
-			while ( current != null ) {
-				if ( current.edge == e )
+			for ( int i = 0; i < noCurrentEdges; i++ )
+				if ( currentEdges[i] == e )
 					return true;
-				current = current.next;
-			}
 			
-			current = scheduledForRemoval;
-			while ( current != null ) {
-				if ( current.edge == e )
+			for ( int i = 0; i < noScheduled; i++ )
+				if ( scheduledForRemoval[i] == e )
 					return true;
-				current = current.next;
-			}
 			
 			return false;
 		}
 		
 		/**
-		 * Get the total number of edges, this includes the edges that are
-		 * scheduled for removal.
-		 * 
-		 * @return The total number of edges
-		 */
-		public int getNoEdges() {
-			int count = 0;
-			LinkedEdgeList current = currentEdges;
-			while ( current != null ) {
-				count++;
-				current = current.next;
-			}
-			
-			current = scheduledForRemoval;
-			while ( current != null ) {
-				count++;
-				current = current.next;
-			}
-			
-			return count;
-		}
-		
-		/**
-		 * Get the list of edges in this list.
-		 * It should not contain any duplicates, but that depends on the insertion
-		 * of elements.
+		 * Pair an edge of the other polygon with every edge in this list,
+		 * including the edges that are scheduled for removal.
 		 * 
-		 * @return the list of edges
+		 * @param other The edge of the other polygon
+		 * @param otherIsA True iff the other edge belongs to polygon A
+		 * @param pairs The list to add the pairs to
 		 */
-		public int[] getEdges() {
-			int[] returnEdges = new int[getNoEdges()];
-			
-			int i = 0;
-			LinkedEdgeList current = currentEdges;
-			while ( current != null ) {
-				returnEdges[i] = current.edge;
-				i++;
-				current = current.next;
+		public void addPairs(int other, boolean otherIsA, EdgePairs pairs) {
+			for ( int i = noCurrentEdges - 1; i >= 0; i-- ) {
+				if ( otherIsA )
+					pairs.add(other, currentEdges[i]);
+				else
+					pairs.add(currentEdges[i], other);
 			}
-			current = scheduledForRemoval;
-			while ( current != null ) {
-				returnEdges[i] = current.edge;
-				i++;
-				current = current.next;
-			}
-			
-			return returnEdges;
-		}
-		
-		/** A singly linked list for edges */
-		class LinkedEdgeList {
-			/** The edge number */
-			public int edge;
-			/** The next list element */
-			public LinkedEdgeList next;
 			
-			/**
-			 * Construct a new list element with its attributes set to the
-			 * supplied values.
-			 * 
-			 * @param edge The edge number
-			 * @param next The next list element
-			 */
-			public LinkedEdgeList(int edge, LinkedEdgeList next) {
-				this.edge = edge;
-				this.next = next;
+			for ( int i = noScheduled - 1; i >= 0; i-- ) {
+				if ( otherIsA )
+					pairs.add(other, scheduledForRemoval[i]);
+				else
+					pairs.add(scheduledForRemoval[i], other);
 			}
 		}
 	}
 	
-	/** The list of collision candidates in a linked list */
-	public class EdgePairs implements Iterable<EdgePairs.EdgePair>{
-		/** The first element of the list of collision candidates */ 
-		private EdgePair first;
+	/** The list of collision candidates, stored as two parallel arrays of edges */
+	public static class EdgePairs {
+		/** The edges of polygon A */
+		private int[] edgesA = new int[INITIAL_CAPACITY];
+		/** The edges of polygon B */
+		private int[] edgesB = new int[INITIAL_CAPACITY];
 		/** The total number of collision candidates */
 		private int size = 0;
 		
@@ -463,12 +487,69 @@ public class EdgeSweep {
 		 * @param idB An edge of polygon B 
 		 */
 		public void add(int idA, int idB) {
-			first = new EdgePair(idA, idB, first);
+			if ( size == edgesA.length ) {
+				edgesA = Arrays.copyOf(edgesA, size * 2);
+				edgesB = Arrays.copyOf(edgesB, size * 2);
+			}
+			
+			edgesA[size] = idA;
+			edgesB[size] = idB;
 			size++;
 		}
 		
 		/**
-		 * Convert this linked list into a two dimensional array
+		 * Reverse the order of the pairs in this list.
+		 */
+		void reverse() {
+			for ( int i = 0, j = size - 1; i < j; i++, j-- ) {
+				int a = edgesA[i];
+				edgesA[i] = edgesA[j];
+				edgesA[j] = a;
+				
+				int b = edgesB[i];
+				edgesB[i] = edgesB[j];
+				edgesB[j] = b;
+			}
+		}
+		
+		/**
+		 * Remove all pairs from this list.
+		 */
+		public void clear() {
+			size = 0;
+		}
+		
+		/**
+		 * Get the number of collision candidates
+		 * 
+		 * @return The number of pairs in this list
+		 */
+		public int size() {
+			return size;
+		}
+		
+		/**
+		 * Get the edge of polygon A of a pair
+		 * 
+		 * @param i The index of the pair
+		 * @return The edge of polygon A
+		 */
+		public int getEdgeA(int i) {
+			return edgesA[i];
+		}
+		
+		/**
+		 * Get the edge of polygon B of a pair
+		 * 
+		 * @param i The index of the pair
+		 * @return The edge of polygon B
+		 */
+		public int getEdgeB(int i) {
+			return edgesB[i];
+		}
+		
+		/**
+		 * Convert this list into a two dimensional array
 		 * 
 		 * @return The numbers of the overlapping edges. The array will always have
 		 * dimension [n][2], where [i][0] is the edge of polygon A and [i][1] of B.
@@ -476,78 +557,14 @@ public class EdgeSweep {
 		public int[][] toList() {
 			int[][] list = new int[size][2];
 			
-			EdgePair current = first;
 			for ( int i = 0; i < size; i++ ) {
-				list[i][0] = current.a;
-				list[i][1] = current.b;
-				
-				current = current.next;
+				list[i][0] = edgesA[i];
+				list[i][1] = edgesB[i];
 			}
 			
 			return list;
 		}
-		
-		/** The singly linked list representing one pair of edges */
-		class EdgePair {
-			/** An edge of polygon A */
-			public int a;
-			/** An edge of polygon B */
-			public int b;
-			/** The next element in the list */
-			public EdgePair next;
-			
-			/** Construct a new list element with all the attributes set to the
-			 * provided values.
-			 * 
-			 * @param a An edge of polygon A
-			 * @param b An edge of polygon B
-			 * @param next The next element in the list
-			 */
-			public EdgePair(int a, int b, EdgePair next) {
-				this.a = a;
-				this.b = b;
-				this.next = next;
-			}
-		}
-                
-                private class EdgePairsIterator implements Iterator<EdgePair>
-                {
-         private EdgePair current;
-
-         @Override
-         public boolean hasNext()
-         {
-            if (current != null)
-            {
-               return current.next != null;
-            }
-
-            return first != null;
-         }
-
-         @Override
-         public EdgePair next()
-         {
-            current = current == null ? first : current.next;
-            return current;
-         }
-
-         @Override
-         public void remove()
-         {
-            throw new RuntimeException("Method not supported!");
-         }
-      }
-                
-                @Override
-                public Iterator<EdgePair> iterator()
-                {
-                   return new EdgePairsIterator();
-                 }
 	}
-        
-        
-
 	
 	/**
 	 * Insert a list of edges
@@ -146,6 +146,21 @@ public class FeaturePair {
 		outEdge2 = other.outEdge2;
 	}
 	
+	/**
+	 * Set the edges of this pair
+	 * 
+	 * @param inEdge1 The in edge of the first shape
+	 * @param inEdge2 The in edge of the second shape
+	 * @param outEdge1 The out edge of the first shape
+	 * @param outEdge2 The out edge of the second shape
+	 */
+	public void set(int inEdge1, int inEdge2, int outEdge1, int outEdge2) {
+		this.inEdge1 = inEdge1;
+		this.inEdge2 = inEdge2;
+		this.outEdge1 = outEdge1;
+		this.outEdge2 = outEdge2;
+	}
+	
 	/**
 	 * @see Object#toString()
 	 */
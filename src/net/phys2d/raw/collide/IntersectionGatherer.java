@@ -37,10 +37,6 @@
  */
 package net.phys2d.raw.collide;
 
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.LinkedList;
-
 import net.phys2d.math.Vector2f;
 
 /**
@@ -177,7 +173,7 @@ import net.phys2d.math.Vector2f;
  * intersection was created. I've had some much trouble and uncertainty here that
  * I don't know if this is still a problem.</li>
  * <li>Finally an issue that will be hard to solve: the orderings defined by
- * {@link IntersectionComparator} and {@link PointerTableComparator} suffer of
+ * {@link #compareAlongA(int, int)} and {@link #compareAlongB(int, int)} suffer of
  * floating point rounding errors when in- and outgoing edges are close together.</li>
  * </ol>
  * 
@@ -190,6 +186,11 @@ import net.phys2d.math.Vector2f;
  * TODO: This class could use some specialized data structures in stead of the
  * countless arrays which clutter the code with modulo indices.
  * 
+ * <p>The intersections are stored in primitive arrays and sorted through
+ * index tables, the Intersection objects handed out are taken from a pool.
+ * A gatherer that is {@link #reset(Vector2f[], Vector2f[]) reset} between
+ * collisions therefore does not allocate.</p>
+ * 
  * @author Gideon Smeding
  *
  */
@@ -200,18 +201,51 @@ public class IntersectionGatherer {
 	/** The size of the intersections array, thus determening the maximum number
 	 * of intersections that the IntersectionGatherer can accept. */
 	public static int MAX_INTERSECTIONS = 50;
-	/** The array of intersecting edges which is unsorted while gathering the
-	 * intersections, but will be sorted in order of occurence along the contour
-	 * of polygon A. */
-	private SortableIntersection[] intersections;
+	
+	/** The edges of polygon A that intersect, in order of gathering */
+	private int[] edgesA;
+	/** The edges of polygon B that intersect, in order of gathering */
+	private int[] edgesB;
+	/** True iff the intersection is one where polygon A enters B */
+	private boolean[] ingoing;
+	/** The squared distance from the vertice that starts edgeA */
+	private float[] distFromVertA;
+	/** The squared distance from the vertice that starts edgeB */
+	private float[] distFromVertB;
+	/** The intersections handed out, one per gathered intersection */
+	private Intersection[] intersections;
 	/** The amount of intersections gathered */
 	private int noIntersections = 0;
 	
+	/** The indices of the gathered intersections sorted in order of 
+	 * occurence along the contour of polygon A. */
+	private int[] order;
+	/** Positions in {@link #order}, sorted in order of occurence along the 
+	 * contour of polygon B. */
+	private int[] pointers;
+	/** The number of intersections left in {@link #order} after filtering */
+	private int noOrdered = 0;
+	
+	/** The ingoing intersection of each pair */
+	private int[] pairsIn;
+	/** The outgoing intersection of each pair, or -1 if the ingoing one is alone */
+	private int[] pairsOut;
+	/** The number of intersection pairs */
+	private int noPairs = 0;
+	
 	/** The vertices of polygon A */
 	private Vector2f[] vertsA;
 	/** The vertices of polygon B */
 	private Vector2f[] vertsB;
 
+	/**
+	 * Construct an IntersectionGatherer that has to be given a pair of
+	 * polygons through {@link #reset(Vector2f[], Vector2f[])} before use.
+	 */
+	public IntersectionGatherer() {
+		allocate(MAX_INTERSECTIONS);
+	}
+	
 	/**
 	 * Construct an IntersectionGatherer for a specific pair of polygons.
 	 * 
@@ -219,10 +253,46 @@ public class IntersectionGatherer {
 	 * @param vertsB The 'second' polygon involved in this collision check
 	 */
 	public IntersectionGatherer(Vector2f[] vertsA, Vector2f[] vertsB) {
-		this.intersections = new SortableIntersection[MAX_INTERSECTIONS];
-		this.noIntersections = 0;
+		this();
+		reset(vertsA, vertsB);
+	}
+	
+	/**
+	 * Discard all gathered intersections and start on a new pair of polygons.
+	 * 
+	 * @param vertsA The 'first' polygon involved in this collision check
+	 * @param vertsB The 'second' polygon involved in this collision check
+	 */
+	public void reset(Vector2f[] vertsA, Vector2f[] vertsB) {
 		this.vertsA = vertsA;
 		this.vertsB = vertsB;
+		this.noIntersections = 0;
+		this.noOrdered = 0;
+		this.noPairs = 0;
+		
+		if ( edgesA.length < MAX_INTERSECTIONS )
+			allocate(MAX_INTERSECTIONS);
+	}
+	
+	/**
+	 * Allocate the arrays holding the intersections.
+	 * 
+	 * @param capacity The number of intersections that can be held
+	 */
+	private void allocate(int capacity) {
+		edgesA = new int[capacity];
+		edgesB = new int[capacity];
+		ingoing = new boolean[capacity];
+		distFromVertA = new float[capacity];
+		distFromVertB = new float[capacity];
+		order = new int[capacity];
+		pointers = new int[capacity];
+		pairsIn = new int[capacity];
+		pairsOut = new int[capacity];
+		
+		intersections = new Intersection[capacity];
+		for ( int i = 0; i < capacity; i++ )
+			intersections[i] = new Intersection(0, 0, new Vector2f(), false);
 	}
 	
 	/**
@@ -233,7 +303,7 @@ public class IntersectionGatherer {
 	 * @param b The edge of polygon B to check for intersection with A
 	 */
 	public void intersect(int a, int b) {
-		if ( noIntersections >= MAX_INTERSECTIONS )
+		if ( noIntersections >= MAX_INTERSECTIONS || noIntersections >= edgesA.length )
 			return;
 		
 		Vector2f startA = vertsA[a];
@@ -254,105 +324,181 @@ public class IntersectionGatherer {
 		if ( uA < 0 || uA > 1 || uB < 0 || uB > 1 ) 
 			return; // intersection point isn't between the start and endpoints
 		
-		Vector2f position = new Vector2f(
-				startA.x + uA * (endA.x - startA.x),
-				startA.y + uA * (endA.y - startA.y));
-		
-		Vector2f dist = new Vector2f(position);
-		dist.sub(startA);
-		float distFromVertA = dist.lengthSquared();
-		dist = new Vector2f(position);
-		dist.sub(startB);
-		float distFromVertB = dist.lengthSquared();
+		float x = startA.x + uA * (endA.x - startA.x);
+		float y = startA.y + uA * (endA.y - startA.y);
 		
 		// z axis of 3d cross product
 		float sA = (startA.x - startB.x) * (endB.y - startB.y) - (endB.x - startB.x) * (startA.y - startB.y);
 		
-		if ( sA > 0 ) {
-			intersections[noIntersections] =
-				new SortableIntersection(a, b, position, true, distFromVertA, distFromVertB);
-		} else {
-			intersections[noIntersections] =
-				new SortableIntersection(a, b, position, false, distFromVertA, distFromVertB);
-		}
+		int i = noIntersections;
+		edgesA[i] = a;
+		edgesB[i] = b;
+		ingoing[i] = sA > 0;
+		distFromVertA[i] = (x - startA.x) * (x - startA.x) + (y - startA.y) * (y - startA.y);
+		distFromVertB[i] = (x - startB.x) * (x - startB.x) + (y - startB.y) * (y - startB.y);
+		
+		Intersection intersection = intersections[i];
+		intersection.edgeA = a;
+		intersection.edgeB = b;
+		intersection.position.set(x, y);
+		intersection.isIngoing = ingoing[i];
 		
 		noIntersections++;
 	}
 	
 	/**
-	 * Get the list of intersections, sorted by the order defined by
-	 * {@link IntersectionComparator}.
+	 * Sort the gathered intersections by the order defined by
+	 * {@link #compareAlongA(int, int)}. The sorted intersections can
+	 * be retrieved with {@link #getIntersection(int)}.
 	 * 
-	 * @return A sorted list of intersections
+	 * @return The number of intersections
 	 */
-	public Intersection[] getIntersections() {
-		Intersection[] out = new Intersection[noIntersections];
-		
-		for ( int i = 0; i < noIntersections; i++ )
-			out[i] = intersections[i];
+	public int sortIntersections() {
+		sortAlongA();
 		
-		Arrays.sort(out, new IntersectionComparator());
-		
-		return out;
+		return noOrdered;
+	}
+	
+	/**
+	 * Get the number of intersections in the order established by the last
+	 * call to {@link #sortIntersections()} or {@link #findIntersectionPairs()}.
+	 * 
+	 * @return The number of ordered intersections
+	 */
+	public int getNoIntersections() {
+		return noOrdered;
+	}
+	
+	/**
+	 * Get an intersection in the order established by the last call to 
+	 * {@link #sortIntersections()} or {@link #findIntersectionPairs()}.
+	 * The returned object is owned by this gatherer.
+	 * 
+	 * @param i The position of the intersection in the order
+	 * @return The intersection at the given position
+	 */
+	public Intersection getIntersection(int i) {
+		return intersections[order[i]];
 	}
 
 	/**
-	 * Get the pairs of ingoing and outgoing intersections encountered when tracing
+	 * Find the pairs of ingoing and outgoing intersections encountered when tracing
 	 * the contour of polygon A. Some pairs will be filtered out as described 
-	 * in detail in this class's documentation.
+	 * in detail in this class's documentation. The pairs can be retrieved
+	 * with {@link #getIngoing(int)} and {@link #getOutgoing(int)}.
 	 *  
-	 * @return An array with the intersection pairs which has the dimensions
-	 * [n][2] or [n][1], where n is the number of intersections. 
-	 * For a pair i getIntersectionPairs()[i][0] will contain the ingoing intersection
-	 * and getIntersectionPairs()[i][1] the outgoing intersection.
+	 * @return The number of pairs found, pairs that could not be matched with
+	 * an outgoing intersection included
 	 */
-	public Intersection[][] getIntersectionPairs() {
+	public int findIntersectionPairs() {
+		noPairs = 0;
 		if ( noIntersections < 2 )
-			return new Intersection[0][2];
+			return 0;
 		
-		// sort the array for a trace 
-		Arrays.sort(intersections, 0, noIntersections, new IntersectionComparator());
+		// sort the intersections for a trace 
+		sortAlongA();
 		
-		// sort a pointer table which uses the indices in the intersections array
-		Integer[] pointers = new Integer[noIntersections];
-		for ( int i = 0; i < noIntersections; i++ )
-			pointers[i] = new Integer(i);
-		Arrays.sort(pointers, new PointerTableComparator());
+		// sort a pointer table which uses the positions in the sorted order
+		for ( int i = 0; i < noOrdered; i++ ) {
+			int pointer = i;
+			int j = i - 1;
+			while ( j >= 0 && compareAlongB(order[pointer], order[pointers[j]]) < 0 ) {
+				pointers[j+1] = pointers[j];
+				j--;
+			}
+			pointers[j+1] = pointer;
+		}
+		
+		int referenceVertB = getReferencePointer();
+		filterIntersections(referenceVertB);
 		
-		int referenceVertB = getReferencePointer(pointers);
-		filterIntersections(referenceVertB, pointers);
+		if ( noOrdered == 0 )
+			return 0;
 			
 		// make sure we're starting with an ingoing edge
-		int first = intersections[0].isIngoing ? 0 : 1;
+		int first = ingoing[order[0]] ? 0 : 1;
 		
-		// now copy our results to a new array
-		LinkedList outIntersections = new LinkedList();
-		for ( int i = first; i < noIntersections + first; ) {
-			SortableIntersection in = intersections[i % noIntersections];
-			SortableIntersection out = intersections[(i+1) % noIntersections];
+		// now record our results
+		for ( int i = first; i < noOrdered + first; ) {
+			int in = order[i % noOrdered];
+			int out = order[(i+1) % noOrdered];
 			
-			if ( in == null ) {
-				i += 1;
-				continue;
-			}
-			
-			if ( out != null && in.isIngoing && !out.isIngoing ) {
+			if ( ingoing[in] && !ingoing[out] ) {
 				// pairs that are too close to eachother will
 				// often cause problems, so don't create them
-				if ( !in.position.equalsDelta(out.position, MIN_PAIR_DIST) ) {
-					Intersection[] pair = {in, out}; 
-					outIntersections.add(pair);
+				if ( !intersections[in].position.equalsDelta(intersections[out].position, MIN_PAIR_DIST) ) {
+					addPair(in, out);
 					i += 2;
 					continue;
 				}
 			}
 			
-			Intersection[] inArr = {in};
-			outIntersections.add(inArr);
+			addPair(in, -1);
 			i += 1;
 		}
 
- 		return (Intersection[][]) outIntersections.toArray(new Intersection[outIntersections.size()][]);
+ 		return noPairs;
+	}
+	
+	/**
+	 * Record a pair of intersections.
+	 * 
+	 * @param in The ingoing intersection
+	 * @param out The outgoing intersection or -1 if there is none
+	 */
+	private void addPair(int in, int out) {
+		pairsIn[noPairs] = in;
+		pairsOut[noPairs] = out;
+		noPairs++;
+	}
+	
+	/**
+	 * Get the number of pairs found by the last call to
+	 * {@link #findIntersectionPairs()}.
+	 * 
+	 * @return The number of intersection pairs
+	 */
+	public int getNoPairs() {
+		return noPairs;
+	}
+	
+	/**
+	 * Get the ingoing intersection of a pair found by
+	 * {@link #findIntersectionPairs()}.
+	 * 
+	 * @param pair The index of the pair
+	 * @return The ingoing intersection of the pair
+	 */
+	public Intersection getIngoing(int pair) {
+		return intersections[pairsIn[pair]];
+	}
+	
+	/**
+	 * Get the outgoing intersection of a pair found by
+	 * {@link #findIntersectionPairs()}.
+	 * 
+	 * @param pair The index of the pair
+	 * @return The outgoing intersection of the pair or null if the ingoing
+	 * intersection could not be paired
+	 */
+	public Intersection getOutgoing(int pair) {
+		return pairsOut[pair] < 0 ? null : intersections[pairsOut[pair]];
+	}
+	
+	/**
+	 * Fill the order table with all gathered intersections, sorted along
+	 * the contour of polygon A.
+	 */
+	private void sortAlongA() {
+		noOrdered = noIntersections;
+		for ( int i = 0; i < noOrdered; i++ ) {
+			int j = i - 1;
+			while ( j >= 0 && compareAlongA(i, order[j]) < 0 ) {
+				order[j+1] = order[j];
+				j--;
+			}
+			order[j+1] = i;
+		}
 	}
 	
 	/**
@@ -360,31 +506,27 @@ public class IntersectionGatherer {
 	 * intersection filter with. This implements the heuristic described in the
 	 * class documentation.
 	 * 
-	 * @param pointers An array of pointers which are the indices of the
-	 * intersections array. The list should be sorted with the order defined by
-	 * {@link PointerTableComparator}.
 	 * @return The reference pointer which is an outgoing intersection. 
 	 */
-	private int getReferencePointer(Integer[] pointers) {
+	private int getReferencePointer() {
 		// we want to find an ingoing edge with the largest number of edges outside of A
 		// these edges should be between the in and the nex out, when tracing the contour of B
-		int first = intersections[pointers[0].intValue()].isIngoing ? 0 : 1;
+		int first = ingoing[order[pointers[0]]] ? 0 : 1;
 		int maxInOutDist = 0;
-		int maxInIndex = first + 1 % noIntersections;//intersections[pointers[first].intValue()].edgeB;
+		int maxInIndex = first + 1 % noOrdered;
 		int lastInEdgeB = -1;	
-		for ( int i = first; i < noIntersections + first; i++ ) {
-			int k = pointers[i % noIntersections].intValue();
-			SortableIntersection intersection = intersections[k];
+		for ( int i = first; i < noOrdered + first; i++ ) {
+			int k = order[pointers[i % noOrdered]];
 			
-			if ( intersection.isIngoing ) {
-				lastInEdgeB = intersection.edgeB;
+			if ( ingoing[k] ) {
+				lastInEdgeB = edgesB[k];
 			} else if ( lastInEdgeB >= 0 ) {
-				int inOutDist = (intersection.edgeB - lastInEdgeB + vertsB.length) % vertsB.length;
+				int inOutDist = (edgesB[k] - lastInEdgeB + vertsB.length) % vertsB.length;
 				
 				// did we find a new max dist?
 				if ( inOutDist > maxInOutDist ) {
 					maxInOutDist = inOutDist;
-					maxInIndex = i % noIntersections;
+					maxInIndex = i % noOrdered;
 				}
 				lastInEdgeB = -1;
 			} 
@@ -400,133 +542,85 @@ public class IntersectionGatherer {
 	 * 
 	 * @param referencePointer The vertex of B that lies outside of A, we will start
 	 * at the first outgoing intersection after the reference vertex.
-	 * @param pointers An array of pointers which are the indices of the
-	 * intersections array. The list should be sorted with the order defined by
-	 * {@link PointerTableComparator}.
 	 */
-	private void filterIntersections(int referencePointer, Integer[] pointers) {
-		// make sure the reference vertex is real
-		if ( referencePointer >= noIntersections && referencePointer < 0 )
-			throw new RuntimeException("The reference vertex cannot be correct since B does not have that many vertices.");
-			
+	private void filterIntersections(int referencePointer) {
 		// now throw out the total penetrating intersections
 		int topOut = -2; // -2 + 1 will never give an edge number
-		for ( int i = referencePointer; i < noIntersections + referencePointer; i++ ) {
-			int j = i % noIntersections;
-			int k = pointers[j].intValue();
-			SortableIntersection intersection = intersections[k];
+		for ( int i = referencePointer; i < noOrdered + referencePointer; i++ ) {
+			int k = pointers[i % noOrdered];
+			int intersection = order[k];
 			
 			// note that we go backwards with respect to A so we expect an outgoing edge first
-			if ( intersection.isIngoing ) {
-				if ( (topOut - 1 + noIntersections) % noIntersections == k ) { // the closing 'in' intersection
+			if ( ingoing[intersection] ) {
+				if ( (topOut - 1 + noOrdered) % noOrdered == k ) { // the closing 'in' intersection
 					topOut = -2; // reset our top 'out' intersection
 				} else {
-					intersections[k] = null; // remove the 'in'
+					order[k] = -1; // remove the 'in'
 				}
 			} else {
 				if ( topOut < 0 ) {
 					topOut = k; // we encountered our new 'out' intersection
 				} else {
-					intersections[k] = null; // remove the out
+					order[k] = -1; // remove the out
 				}
 			}
 		}
 		
-		// now get rid of the nullified intersections
+		// now get rid of the removed intersections
 		int noRemoved = 0;
-		for ( int i = 0; i < noIntersections; i++ ) {
-			if ( intersections[i] == null ) {
+		for ( int i = 0; i < noOrdered; i++ ) {
+			if ( order[i] < 0 ) {
 				noRemoved++;
 			} else {
-				intersections[i-noRemoved] = intersections[i];
+				order[i-noRemoved] = order[i];
 			}
 		}
-		noIntersections -= noRemoved;
-	}
-
-	/** Class representing a single intersection. It also contains some information used
-	 * to sort the edges along the counters of the polygons A and B. */
-	class SortableIntersection extends Intersection {		
-		/** The squared distance from the vertice that starts edgeA */
-		public float distFromVertA;
-		/** The squared distance from the vertice that starts edgeB */
-		public float distFromVertB;
-
-		/**
-		 * Construct an Intersection object, immediately setting all the attributes.
-		 * 
-		 * @param edgeA The edge of polygon A that intersects
-		 * @param edgeB The edge of polygon B that intersects
-		 * @param position The position of the intersection in world (absolute) coordinates
-		 * @param isIngoing True iff this is an intersection where polygon A enters B
-		 * @param distFromVertA The squared distance from the vertice that starts edgeA
-		 * @param distFromVertB The squared distance from the vertice that starts edgeB
-		 */
-		public SortableIntersection(int edgeA, int edgeB, Vector2f position, boolean isIngoing, float distFromVertA, float distFromVertB) {
-			super(edgeA, edgeB, position, isIngoing);
-			this.distFromVertA = distFromVertA;
-			this.distFromVertB = distFromVertB;
-		}
+		noOrdered -= noRemoved;
 	}
 	
-	/** Comparator used to sort intersections by their distance from A's first
-	 * vertex. */
-	class IntersectionComparator implements Comparator {
-
-		/** Compares two intersections. Note that this function will/should never
-		 * return 0 because no two intersections can have the same distance from
-		 * vertex 0. However, due to the finite precision of floating points this
-		 * situation does occur. In those cases we try to put ingoing edges first.
-		 * 
-		 * @see Comparator#compare(Object, Object)
-		 */
-		public int compare(Object first, Object second) {
-			SortableIntersection one = (SortableIntersection) first;
-			SortableIntersection other = (SortableIntersection) second;
-					
-			if ( one.edgeA < other.edgeA ) {
-				return -1; 
-			} else if ( one.edgeA == other.edgeA ) {
-				if ( one.distFromVertA < other.distFromVertA ) 
-					return -1;
-				else if ( one.distFromVertA == other.distFromVertA && one.isIngoing )
-					return -1;
-			}
-				
-			return 1;
+	/** Compares two intersections by their distance from A's first vertex.
+	 * Note that this function will/should never return 0 because no two
+	 * intersections can have the same distance from vertex 0. However, due
+	 * to the finite precision of floating points this situation does occur.
+	 * In those cases we try to put ingoing edges first.
+	 * 
+	 * @param one The index of the first intersection
+	 * @param other The index of the second intersection
+	 * @return A negative number iff one comes before other
+	 */
+	private int compareAlongA(int one, int other) {
+		if ( edgesA[one] < edgesA[other] ) {
+			return -1; 
+		} else if ( edgesA[one] == edgesA[other] ) {
+			if ( distFromVertA[one] < distFromVertA[other] ) 
+				return -1;
+			else if ( distFromVertA[one] == distFromVertA[other] && ingoing[one] )
+				return -1;
 		}
+			
+		return 1;
 	}
 	
-	/** Comparator used to sort intersections by their distance from B's first
-	 * vertex. This sorts an array of pointers which are the indices of the
-	 * intersections array. So the actual intersections are retrieved via an
-	 * indirection. */
-	class PointerTableComparator implements Comparator {
-
-		/** Compares two intersections. Note that this function will/should never
-		 * return 0 because no two intersections can have the same distance from
-		 * vertex 0. However, due to the finite precision of floating points this
-		 * situation does occur. In those cases we try to put outgoing edges first.
-		 * 
-		 * @see Comparator#compare(Object, Object)
-		 */
-		public int compare(Object first, Object second) {
-			SortableIntersection one = intersections[((Integer) first).intValue()];
-			SortableIntersection other = intersections[((Integer) second).intValue()];
-			
-			if ( one.edgeB < other.edgeB ) {
-				return -1; 
-			} else if ( one.edgeB == other.edgeB ) {
-				if ( one.distFromVertB < other.distFromVertB )
-					return -1;
-				else if ( one.distFromVertB == other.distFromVertB && !one.isIngoing )
-					return -1;
-			}
-				
-			return 1;
+	/** Compares two intersections by their distance from B's first vertex.
+	 * Note that this function will/should never return 0 because no two
+	 * intersections can have the same distance from vertex 0. However, due
+	 * to the finite precision of floating points this situation does occur.
+	 * In those cases we try to put outgoing edges first.
+	 * 
+	 * @param one The index of the first intersection
+	 * @param other The index of the second intersection
+	 * @return A negative number iff one comes before other
+	 */
+	private int compareAlongB(int one, int other) {
+		if ( edgesB[one] < edgesB[other] ) {
+			return -1; 
+		} else if ( edgesB[one] == edgesB[other] ) {
+			if ( distFromVertB[one] < distFromVertB[other] )
+				return -1;
+			else if ( distFromVertB[one] == distFromVertB[other] && !ingoing[one] )
+				return -1;
 		}
+			
+		return 1;
 	}
-	
-	
-
 }
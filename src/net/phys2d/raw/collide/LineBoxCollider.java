@@ -41,7 +41,6 @@ import net.phys2d.math.MathUtil;
 import net.phys2d.math.Vector2f;
 import net.phys2d.raw.Body;
 import net.phys2d.raw.Contact;
-import net.phys2d.raw.shapes.Box;
 import net.phys2d.raw.shapes.Line;
 
 /**
@@ -90,7 +89,6 @@ public strictfp class LineBoxCollider implements Collider {
 		int numContacts = 0;
 		
 		Line line = (Line) bodyA.getShape();
-		Box box = (Box) bodyB.getShape();
 		
 		Vector2f lineVec = new Vector2f(line.getDX(), line.getDY());
 		lineVec.normalise();	
@@ -105,13 +103,15 @@ public strictfp class LineBoxCollider implements Collider {
 		c.projectOntoUnit(axis,res);
 		float centre = getProp(res, axis);
 		
-		Vector2f[] pts = box.getPoints(bodyB.getPosition(), bodyB.getRotation());
+		Vector2f[] boxPts = bodyB.getWorldGeometry().getVertices();
+		Vector2f[] pts = new Vector2f[4];
 		float[] tangent = new float[4];
 		float[] proj = new float[4];
 		
 		int outOfRange = 0;
 		
 		for (int i=0;i<4;i++) {
+			pts[i] = new Vector2f(boxPts[i]);
 			pts[i].sub(bodyA.getPosition());
 			pts[i].projectOntoUnit(axis, res);
 			tangent[i] = getProp(res, axis);
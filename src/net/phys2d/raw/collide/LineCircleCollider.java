@@ -59,7 +59,7 @@ public strictfp class LineCircleCollider implements Collider {
 		Line line = (Line) bodyA.getShape();
 		Circle circle = (Circle) bodyB.getShape();
 		
-		Vector2f[] vertsA = line.getVertices(bodyA.getPosition(), bodyA.getRotation());
+		Vector2f[] vertsA = bodyA.getWorldGeometry().getVertices();
 		
 		// compute intersection of the line A and a line parallel to 
 		// the line A's normal passing through the origin of B
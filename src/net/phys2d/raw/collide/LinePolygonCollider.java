@@ -37,8 +37,8 @@
  */
 package net.phys2d.raw.collide;
 
-import java.util.Iterator;
 import net.phys2d.math.MathUtil;
+import net.phys2d.math.ROVector2f;
 import net.phys2d.math.Vector2f;
 import net.phys2d.raw.Body;
 import net.phys2d.raw.Contact;
@@ -63,8 +63,10 @@ public class LinePolygonCollider  extends PolygonPolygonCollider {
 		
 		// TODO: this can be optimized using matrix multiplications and moving only one shape
 		// specifically the line, because it has only two vertices
-		Vector2f[] vertsA = line.getVertices(bodyA.getPosition(), bodyA.getRotation());
-		Vector2f[] vertsB = poly.getVertices(bodyB.getPosition(), bodyB.getRotation());
+		// the line's end points are copied since they may be swapped below
+		Vector2f[] lineVerts = bodyA.getWorldGeometry().getVertices();
+		Vector2f[] vertsA = new Vector2f[] {lineVerts[0], lineVerts[1]};
+		Vector2f[] vertsB = bodyB.getWorldGeometry().getVertices();
 
 		Vector2f pos = poly.getCentroid(bodyB.getPosition(), bodyB.getRotation());
 		
@@ -81,25 +83,20 @@ public class LinePolygonCollider  extends PolygonPolygonCollider {
 		}
 		
 		// we use the line's normal for our sweepline projection
-		Vector2f normal = new Vector2f(vertsA[1]);
-		normal.sub(vertsA[0]);
-		normal.set(normal.y, -normal.x);
-		EdgeSweep sweep = new EdgeSweep(normal);
+		EdgeSweep sweep = getSweep(vertsA[1].y - vertsA[0].y, vertsA[0].x - vertsA[1].x);
+		ROVector2f normal = sweep.getSweepDir();
 		sweep.insert(0, true, vertsA[0].dot(normal));
 		sweep.insert(0, true, vertsA[1].dot(normal));
 		sweep.addVerticesToSweep(false, vertsB);
-		Iterator<EdgeSweep.EdgePairs.EdgePair> collEdgeCands = sweep.getOverlappingEdges(); 
+		EdgeSweep.EdgePairs collEdgeCands = sweep.getOverlappingEdges(); 
 		
-		IntersectionGatherer intGath = new IntersectionGatherer(vertsA, vertsB);
-		while (collEdgeCands.hasNext())
-                {
-                    EdgeSweep.EdgePairs.EdgePair pair = collEdgeCands.next();
-                    intGath.intersect(pair.a, pair.b);
-                }
+		IntersectionGatherer intGath = getGatherer(vertsA, vertsB);
+		for ( int i = 0; i < collEdgeCands.size(); i++ )
+			intGath.intersect(collEdgeCands.getEdgeA(i), collEdgeCands.getEdgeB(i));
 		
-		Intersection[] intersections = intGath.getIntersections();
+		intGath.sortIntersections();
 		
-		return populateContacts(contacts, vertsA, vertsB, intersections);
+		return populateContacts(contacts, vertsA, vertsB, intGath);
 	}
 		
 	/**
@@ -109,19 +106,20 @@ public class LinePolygonCollider  extends PolygonPolygonCollider {
 	 * @param contacts The array of contacts to fill
 	 * @param vertsA The vertices of polygon A
 	 * @param vertsB The vertices of polygon B
-	 * @param intersections The array of intersection as returned by 
-	 * {@link IntersectionGatherer#getIntersections()}
+	 * @param intersections The gatherer holding the intersections sorted by
+	 * {@link IntersectionGatherer#sortIntersections()}
 	 * @return The number of contacts that have been set in the contact array
 	 */
-	public int populateContacts(Contact[] contacts, Vector2f[] vertsA, Vector2f[] vertsB, Intersection[] intersections) {	
-		if ( intersections.length == 0 )
+	public int populateContacts(Contact[] contacts, Vector2f[] vertsA, Vector2f[] vertsB, IntersectionGatherer intersections) {	
+		int noIntersections = intersections.getNoIntersections();
+		if ( noIntersections == 0 )
 			return 0;
 		
 		int noContacts = 0;
 		
 		// is the first intersection outgoing?
-		if ( !intersections[0].isIngoing ) {
-			setLineEndContact(contacts[noContacts], intersections[intersections.length-1], vertsA, vertsB);
+		if ( !intersections.getIntersection(0).isIngoing ) {
+			setLineEndContact(contacts[noContacts], intersections.getIntersection(noIntersections-1), vertsA, vertsB);
 			
 //			if (contacts[noContacts].getSeparation() < -10 )
 //				System.out.println("first " + contacts[noContacts].getSeparation());
@@ -131,13 +129,13 @@ public class LinePolygonCollider  extends PolygonPolygonCollider {
 
 		
 		int i = noContacts;
-		while ( i < intersections.length-1 ) {
+		while ( i < noIntersections-1 ) {
 			if ( noContacts > contacts.length-2 )
 				return noContacts;
 			
 			// check if we have an intersection pair
-			if ( !intersections[i].isIngoing || intersections[i+1].isIngoing ) {
-				setContact(contacts[noContacts], intersections[i], vertsA, vertsB);
+			if ( !intersections.getIntersection(i).isIngoing || intersections.getIntersection(i+1).isIngoing ) {
+				setContact(contacts[noContacts], intersections.getIntersection(i), vertsA, vertsB);
 				i++;
 				noContacts++;
 				continue;
@@ -146,8 +144,8 @@ public class LinePolygonCollider  extends PolygonPolygonCollider {
 			setContactPair(
 					contacts[noContacts],
 					contacts[noContacts+1],
-					intersections[i],
-					intersections[i+1],
+					intersections.getIntersection(i),
+					intersections.getIntersection(i+1),
 					vertsA, vertsB);
 			
 //			if (contacts[noContacts].getSeparation() < -10 )
@@ -158,10 +156,10 @@ public class LinePolygonCollider  extends PolygonPolygonCollider {
 		}
 		
 		// is there still an ingoing intersection left?
-		if ( i < intersections.length && 
-				intersections[intersections.length-1].isIngoing &&
+		if ( i < noIntersections && 
+				intersections.getIntersection(noIntersections-1).isIngoing &&
 				noContacts < contacts.length) {
-			setLineEndContact(contacts[noContacts], intersections[intersections.length-1], vertsA, vertsB);
+			setLineEndContact(contacts[noContacts], intersections.getIntersection(noIntersections-1), vertsA, vertsB);
 			
 //			if (contacts[noContacts].getSeparation() < -10 )
 //				System.out.println(" last " +contacts[noContacts].getSeparation());
@@ -37,12 +37,9 @@
  */
 package net.phys2d.raw.collide;
 
-import java.util.Iterator;
 import net.phys2d.math.Vector2f;
 import net.phys2d.raw.Body;
 import net.phys2d.raw.Contact;
-import net.phys2d.raw.shapes.Box;
-import net.phys2d.raw.shapes.Polygon;
 
 /**
  * Collide a Convex Polygon with a Box.
@@ -56,29 +53,24 @@ public class PolygonBoxCollider extends PolygonPolygonCollider {
 	 * @see net.phys2d.raw.collide.Collider#collide(net.phys2d.raw.Contact[], net.phys2d.raw.Body, net.phys2d.raw.Body)
 	 */
 	public int collide(Contact[] contacts, Body bodyA, Body bodyB) {
-		Polygon poly = (Polygon) bodyA.getShape();
-		Box box = (Box) bodyB.getShape();
 		
 		// TODO: this can be optimized using matrix multiplications and moving only one shape
 		// specifically the box, because it has fewer vertices.
-		Vector2f[] vertsA = poly.getVertices(bodyA.getPosition(), bodyA.getRotation());
-		Vector2f[] vertsB = box.getPoints(bodyB.getPosition(), bodyB.getRotation());
+		Vector2f[] vertsA = bodyA.getWorldGeometry().getVertices();
+		Vector2f[] vertsB = bodyB.getWorldGeometry().getVertices();
 		
 		// TODO: use a sweepline that has the smallest projection of the box
 		// now we use just an arbitrary one
-		Vector2f sweepline = new Vector2f(vertsB[1]);
-		sweepline.sub(vertsB[2]);
-		
-		EdgeSweep sweep = new EdgeSweep(sweepline);
+		EdgeSweep sweep = getSweep(vertsB[1].x - vertsB[2].x, vertsB[1].y - vertsB[2].y);
 		
 		sweep.addVerticesToSweep(true, vertsA);
 		sweep.addVerticesToSweep(false, vertsB);
 
-		Iterator<EdgeSweep.EdgePairs.EdgePair> collEdgeCands = sweep.getOverlappingEdges();
+		EdgeSweep.EdgePairs collEdgeCands = sweep.getOverlappingEdges();
 //		FeaturePair[] featurePairs = getFeaturePairs(contacts.length, vertsA, vertsB, collEdgeCands);
 //		return populateContacts(contacts, vertsA, vertsB, featurePairs);
 		
-		Intersection[][] intersections = getIntersectionPairs(vertsA, vertsB, collEdgeCands);		
+		IntersectionGatherer intersections = getIntersectionPairs(vertsA, vertsB, collEdgeCands);		
 		return populateContacts(contacts, vertsA, vertsB, intersections);
 	}
 
@@ -37,7 +37,6 @@
  */
 package net.phys2d.raw.collide;
 
-import java.util.Iterator;
 import net.phys2d.math.ROVector2f;
 import net.phys2d.math.Vector2f;
 import net.phys2d.raw.Body;
@@ -62,24 +61,22 @@ public class PolygonCircleCollider extends PolygonPolygonCollider {
 		Circle circle = (Circle) bodyB.getShape();
 		
 		// TODO: this can be optimized using matrix multiplications and moving only the circle
-		Vector2f[] vertsA = polyA.getVertices(bodyA.getPosition(), bodyA.getRotation());
+		Vector2f[] vertsA = bodyA.getWorldGeometry().getVertices();
 		
 		Vector2f centroidA = new Vector2f(polyA.getCentroid());
 		centroidA.add(bodyA.getPosition());
 
 		
-		Iterator<EdgeSweep.EdgePairs.EdgePair> collPairs = getCollisionCandidates(vertsA, centroidA, circle.getRadius(), bodyB.getPosition());
+		EdgeSweep.EdgePairs collPairs = getCollisionCandidates(vertsA, centroidA, circle.getRadius(), bodyB.getPosition());
 
 		int noContacts = 0;
-		while (collPairs.hasNext())
-                {
-                   EdgeSweep.EdgePairs.EdgePair pair = collPairs.next();
-                   
+		for ( int i = 0; i < collPairs.size(); i++ ) {
 			if ( noContacts >= contacts.length )
 				return contacts.length;
 			
-			Vector2f lineStartA = vertsA[pair.a];
-			Vector2f lineEndA = vertsA[(pair.a+1) % vertsA.length ];
+			int edgeA = collPairs.getEdgeA(i);
+			Vector2f lineStartA = vertsA[edgeA];
+			Vector2f lineEndA = vertsA[(edgeA+1) % vertsA.length ];
 			Line line = new Line(lineStartA, lineEndA);
 						
 			float dis2 = line.distanceSquared(bodyB.getPosition());
@@ -114,18 +111,24 @@ public class PolygonCircleCollider extends PolygonPolygonCollider {
 	 * @param centroid The center of the polygon
 	 * @param radius The radius of the circle
 	 * @param circlePos The position (center) of the circle
-	 * @return The list of edges that can collide with the circle
+	 * @return The list of edges that can collide with the circle, owned by the
+	 * calling thread's sweep
 	 */
-	protected Iterator<EdgeSweep.EdgePairs.EdgePair> getCollisionCandidates(Vector2f[] vertsA, ROVector2f centroid, float radius, ROVector2f circlePos) {
-		Vector2f sweepDir = new Vector2f(centroid);
-		sweepDir.sub(circlePos);
-		sweepDir.normalise(); //TODO: this normalization might not be necessary
+	protected EdgeSweep.EdgePairs getCollisionCandidates(Vector2f[] vertsA, ROVector2f centroid, float radius, ROVector2f circlePos) {
+		float dirX = centroid.getX() - circlePos.getX();
+		float dirY = centroid.getY() - circlePos.getY();
+		//TODO: this normalization might not be necessary
+		float length = (float) Math.sqrt(dirX * dirX + dirY * dirY);
+		if ( length != 0 ) {
+			dirX /= length;
+			dirY /= length;
+		}
 		
-		EdgeSweep sweep = new EdgeSweep(sweepDir);//vertsA[0], true, true, dist);
+		EdgeSweep sweep = getSweep(dirX, dirY);
 		
 		sweep.addVerticesToSweep(true, vertsA);
 		
-		float circProj = circlePos.dot(sweepDir);
+		float circProj = circlePos.dot(sweep.getSweepDir());
 		
 		sweep.insert(0, false, -radius + circProj);
 		sweep.insert(0, false, radius + circProj);
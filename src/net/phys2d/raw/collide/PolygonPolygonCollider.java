@@ -38,13 +38,12 @@
 package net.phys2d.raw.collide;
 
 import net.phys2d.math.MathUtil;
+import net.phys2d.math.ROVector2f;
 import net.phys2d.math.Vector2f;
 import net.phys2d.raw.Body;
 import net.phys2d.raw.Contact;
 import net.phys2d.raw.shapes.Polygon;
 
-import java.util.Iterator;
-
 /**
  * Collision detection functions for colliding two polygons.
  * 
@@ -52,6 +51,60 @@ import java.util.Iterator;
  *
  */
 public class PolygonPolygonCollider implements Collider {
+	/** The sweep reused by each thread, colliders are shared between bodies */
+	private static final ThreadLocal<EdgeSweep> SWEEPS = new ThreadLocal<EdgeSweep>() {
+		protected EdgeSweep initialValue() {
+			return new EdgeSweep();
+		}
+	};
+	/** The intersection gatherer reused by each thread */
+	private static final ThreadLocal<IntersectionGatherer> GATHERERS = new ThreadLocal<IntersectionGatherer>() {
+		protected IntersectionGatherer initialValue() {
+			return new IntersectionGatherer();
+		}
+	};
+	
+	/**
+	 * Get the calling thread's edge sweep, emptied and set to sweep
+	 * in the given direction.
+	 * 
+	 * @param sweepDir The direction in which to sweep
+	 * @return The edge sweep to use for this collision
+	 */
+	protected static EdgeSweep getSweep(ROVector2f sweepDir) {
+		return getSweep(sweepDir.getX(), sweepDir.getY());
+	}
+	
+	/**
+	 * Get the calling thread's edge sweep, emptied and set to sweep
+	 * in the given direction.
+	 * 
+	 * @param x The x component of the direction in which to sweep
+	 * @param y The y component of the direction in which to sweep
+	 * @return The edge sweep to use for this collision
+	 */
+	protected static EdgeSweep getSweep(float x, float y) {
+		EdgeSweep sweep = SWEEPS.get();
+		sweep.reset(x, y);
+		
+		return sweep;
+	}
+	
+	/**
+	 * Get the calling thread's intersection gatherer, emptied and set to
+	 * the given pair of polygons.
+	 * 
+	 * @param vertsA The vertices of the first polygon
+	 * @param vertsB The vertices of the second polygon
+	 * @return The intersection gatherer to use for this collision
+	 */
+	protected static IntersectionGatherer getGatherer(Vector2f[] vertsA, Vector2f[] vertsB) {
+		IntersectionGatherer gatherer = GATHERERS.get();
+		gatherer.reset(vertsA, vertsB);
+		
+		return gatherer;
+	}
+	
 	/**
 	 * @see net.phys2d.raw.collide.Collider#collide(net.phys2d.raw.Contact[], net.phys2d.raw.Body, net.phys2d.raw.Body)
 	 */
@@ -59,17 +112,18 @@ public class PolygonPolygonCollider implements Collider {
 		Polygon polyA = (Polygon) bodyA.getShape();
 		Polygon polyB = (Polygon) bodyB.getShape();
 
-		Vector2f[] vertsA = polyA.getVertices(bodyA.getPosition(), bodyA.getRotation());
-		Vector2f[] vertsB = polyB.getVertices(bodyB.getPosition(), bodyB.getRotation());
+		Vector2f[] vertsA = bodyA.getWorldGeometry().getVertices();
+		Vector2f[] vertsB = bodyB.getWorldGeometry().getVertices();
 		
-		Vector2f centroidA = new Vector2f(polyA.getCentroid());
-		centroidA.add(bodyA.getPosition());
-		Vector2f centroidB = new Vector2f(polyB.getCentroid());
-		centroidB.add(bodyB.getPosition());
+		// sweep along the line between the centroids
+		Vector2f centroidA = polyA.getCentroid();
+		Vector2f centroidB = polyB.getCentroid();
+		EdgeSweep sweep = getSweep(
+				centroidB.x + bodyB.getPosition().getX() - centroidA.x - bodyA.getPosition().getX(),
+				centroidB.y + bodyB.getPosition().getY() - centroidA.y - bodyA.getPosition().getY());
 		
-		Iterator<EdgeSweep.EdgePairs.EdgePair> collEdgeCands = getCollisionCandidates(
-              vertsA, vertsB, centroidA, centroidB);
-		Intersection[][] intersections = getIntersectionPairs(vertsA, vertsB, collEdgeCands);		
+		EdgeSweep.EdgePairs collEdgeCands = getCollisionCandidates(sweep, vertsA, vertsB);
+		IntersectionGatherer intersections = getIntersectionPairs(vertsA, vertsB, collEdgeCands);		
 		return populateContacts(contacts, vertsA, vertsB, intersections);
 	}
 		
@@ -84,23 +138,18 @@ public class PolygonPolygonCollider implements Collider {
 	 * @param collEdgeCands The edges of the two vertices that can collide. Expects the
 	 * same layout as returned by 
 	 * {@link PolygonPolygonCollider#getCollisionCandidates(EdgeSweep, Vector2f[], Vector2f[])}
-	 * @return The points where the two polygons overlap, with for each overlapping
-	 * area the ingoing and outgoing edges in feature pairs.
+	 * @return The gatherer holding the points where the two polygons overlap, with
+	 * for each overlapping area the ingoing and outgoing edges. It is owned by the
+	 * calling thread and reused by the next collision.
 	 */
-	public Intersection[][] getIntersectionPairs(Vector2f[] vertsA, Vector2f[] vertsB, Iterator<EdgeSweep.EdgePairs.EdgePair> collEdgeCands) 
-        {
-		if ( !collEdgeCands.hasNext() )
-			return new Intersection[0][2];
+	public IntersectionGatherer getIntersectionPairs(Vector2f[] vertsA, Vector2f[] vertsB, EdgeSweep.EdgePairs collEdgeCands) {
+		IntersectionGatherer fpl = getGatherer(vertsA, vertsB);
 		
-		IntersectionGatherer fpl = new IntersectionGatherer(vertsA, vertsB);
-
-            while (collEdgeCands.hasNext())
-            {
-               EdgeSweep.EdgePairs.EdgePair pair = collEdgeCands.next();
-               fpl.intersect(pair.a, pair.b);
-            }
-
-		return fpl.getIntersectionPairs();
+		for ( int i = 0; i < collEdgeCands.size(); i++ )
+			fpl.intersect(collEdgeCands.getEdgeA(i), collEdgeCands.getEdgeB(i));
+		
+		fpl.findIntersectionPairs();
+		return fpl;
 	}
 	
 	/**
@@ -110,32 +159,31 @@ public class PolygonPolygonCollider implements Collider {
 	 * @param contacts The array of contacts to fill
 	 * @param vertsA The vertices of polygon A
 	 * @param vertsB The vertices of polygon B
-	 * @param intersections The array of intersections as returned by
-	 * {@link PolygonPolygonCollider#getIntersectionPairs(Vector2f[], Vector2f[], int[][])}
+	 * @param intersections The gatherer holding the intersection pairs as returned by
+	 * {@link PolygonPolygonCollider#getIntersectionPairs(Vector2f[], Vector2f[], EdgeSweep.EdgePairs)}
 	 * @return The number of contacts that have been determined and hence
 	 * populated in the array.
 	 */
-	public int populateContacts(Contact[] contacts, Vector2f[] vertsA, Vector2f[] vertsB, Intersection[][] intersections) {
-		if ( intersections.length == 0 )
-			return 0;
-		
+	public int populateContacts(Contact[] contacts, Vector2f[] vertsA, Vector2f[] vertsB, IntersectionGatherer intersections) {
+		int noPairs = intersections.getNoPairs();
 		int noContacts = 0;
 		
-		for ( int i = 0; i < intersections.length; i++ ) {
+		for ( int i = 0; i < noPairs; i++ ) {
 			if ( noContacts >= contacts.length )
 				return contacts.length;
 			
-			if ( intersections[i].length == 2 && noContacts < contacts.length-1 ) {
+			Intersection out = intersections.getOutgoing(i);
+			if ( out != null && noContacts < contacts.length-1 ) {
 				setContactPair(
 						contacts[noContacts],
 						contacts[noContacts+1],
-						intersections[i][0],
-						intersections[i][1],
+						intersections.getIngoing(i),
+						out,
 						vertsA, vertsB);
 				
 				noContacts += 2;
-			} else if ( intersections[i].length == 1 ) {
-				setContact(contacts[noContacts], intersections[i][0], vertsA, vertsB);
+			} else if ( out == null ) {
+				setContact(contacts[noContacts], intersections.getIngoing(i), vertsA, vertsB);
 				noContacts += 1;
 			}
 		}
@@ -220,14 +268,12 @@ public class PolygonPolygonCollider implements Collider {
 	 * @param vertsA The vertices of the first polygon ordered counterclockwise (TODO: verify this/order matters?)
 	 * @param vertsB The vertices of the second polygon ordered counterclockwise
 	 * @return 
-	 * The pairs of vertices that overlap in the sweepline and are therefore collision candidates.
-	 * The returned array is of a shape int[n][2] where n is the number of overlapping edges.
-	 * For a returned array r
-	 * the edge between vertsA[r[x][0]] and vertsA[r[x][0] + 1]
-	 * overlaps with vertsB[r[x][1]] and vertsB[r[x][1] + 1].
+	 * The pairs of edges that overlap in the sweepline and are therefore collision candidates.
+	 * For a returned list r the edge between vertsA[r.getEdgeA(x)] and vertsA[r.getEdgeA(x) + 1]
+	 * overlaps with vertsB[r.getEdgeB(x)] and vertsB[r.getEdgeB(x) + 1].
+	 * The list is owned by the sweep.
 	 */
-	public Iterator<EdgeSweep.EdgePairs.EdgePair> getCollisionCandidates(
-           EdgeSweep sweep, Vector2f[] vertsA, Vector2f[] vertsB) {
+	public EdgeSweep.EdgePairs getCollisionCandidates(EdgeSweep sweep, Vector2f[] vertsA, Vector2f[] vertsB) {
 		sweep.addVerticesToSweep(true, vertsA);
 		sweep.addVerticesToSweep(false, vertsB);
 
@@ -241,24 +287,22 @@ public class PolygonPolygonCollider implements Collider {
 	 * 
 	 * This version simply calls 
 	 * {@link PolygonPolygonCollider#getCollisionCandidates(EdgeSweep, Vector2f[], Vector2f[]) }
-	 * with a new empty EdgeSweep.
+	 * with the calling thread's emptied EdgeSweep.
 	 * 
 	 * @param vertsA The vertices of the first polygon ordered counterclockwise (TODO: verify this/order matters?)
 	 * @param sweepDirStart The 'real' center of the first polygon
 	 * @param vertsB The vertices of the second polygon ordered counterclockwise
 	 * @param sweepDirEnd The 'real' center of the second polygon
 	 * @return 
-	 * The pairs of vertices that overlap in the sweepline and are therefore collision candidates.
-	 * The returned array is of a shape int[n][2] where n is the number of overlapping edges.
-	 * For a returned array r
-	 * the edge between vertsA[r[x][0]] and vertsA[r[x][0] + 1]
-	 * overlaps with vertsB[r[x][1]] and vertsB[r[x][1] + 1].
+	 * The pairs of edges that overlap in the sweepline and are therefore collision candidates.
+	 * For a returned list r the edge between vertsA[r.getEdgeA(x)] and vertsA[r.getEdgeA(x) + 1]
+	 * overlaps with vertsB[r.getEdgeB(x)] and vertsB[r.getEdgeB(x) + 1].
+	 * The list is owned by the sweep.
 	 */
-	public Iterator<EdgeSweep.EdgePairs.EdgePair> getCollisionCandidates(
-           Vector2f[] vertsA, Vector2f[] vertsB, Vector2f sweepDirStart, Vector2f sweepDirEnd) {
-		Vector2f sweepDir = new Vector2f(sweepDirEnd);
-		sweepDir.sub(sweepDirStart);
+	public EdgeSweep.EdgePairs getCollisionCandidates(
+			Vector2f[] vertsA, Vector2f[] vertsB, Vector2f sweepDirStart, Vector2f sweepDirEnd) {
+		EdgeSweep sweep = getSweep(sweepDirEnd.x - sweepDirStart.x, sweepDirEnd.y - sweepDirStart.y);
 		
-		return getCollisionCandidates(new EdgeSweep(sweepDir), vertsA, vertsB);
+		return getCollisionCandidates(sweep, vertsA, vertsB);
 	}
 }
@@ -0,0 +1,101 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw.collide;
+
+import net.phys2d.raw.Body;
+
+/**
+ * The axis last found to separate a pair of bodies, kept between steps so 
+ * a collider can test it first. Pairs that are moving apart are usually
+ * still separated along the same axis the next step, which lets the 
+ * collider stop after testing a single edge. While the bodies overlap the
+ * axis of least penetration is kept instead, since that's the most likely
+ * to separate them.
+ * <p>
+ * The axis is the normal of one edge of one of the bodies, it's recorded 
+ * by body rather than by position in the pair so it remains valid however
+ * the pair is ordered.
+ */
+public class SeparatingAxis {
+	/** The body owning the edge, or null if no axis is known */
+	private Body body;
+	/** The index of the edge whose normal is the axis */
+	private int edge;
+	
+	/**
+	 * Create an empty axis
+	 */
+	public SeparatingAxis() {
+	}
+	
+	/**
+	 * Record the axis
+	 * 
+	 * @param body The body owning the edge
+	 * @param edge The index of the edge whose normal is the axis
+	 */
+	public void set(Body body, int edge) {
+		this.body = body;
+		this.edge = edge;
+	}
+	
+	/**
+	 * Forget the axis
+	 */
+	public void clear() {
+		body = null;
+	}
+	
+	/**
+	 * Get the body owning the edge
+	 * 
+	 * @return The body owning the edge or null if no axis is known
+	 */
+	public Body getBody() {
+		return body;
+	}
+	
+	/**
+	 * Get the index of the edge whose normal is the axis
+	 * 
+	 * @return The index of the edge
+	 */
+	public int getEdge() {
+		return edge;
+	}
+}
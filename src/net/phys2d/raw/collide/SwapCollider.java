@@ -50,7 +50,7 @@ import net.phys2d.raw.Contact;
  * @author Gideon Smeding
  *
  */
-public class SwapCollider implements Collider {
+public class SwapCollider implements CachingCollider {
 	
 	/** The wrapped collider of which the result will be swapped */
 	private Collider collider;
@@ -71,6 +71,31 @@ public class SwapCollider implements Collider {
 	public int collide(Contact[] contacts, Body bodyA, Body bodyB) {
 		int count = collider.collide(contacts, bodyB, bodyA);
 		
+		return swap(contacts, count);
+	}
+
+	/**
+	 * @see net.phys2d.raw.collide.CachingCollider#collide(net.phys2d.raw.Contact[], net.phys2d.raw.Body, net.phys2d.raw.Body, net.phys2d.raw.collide.SeparatingAxis)
+	 */
+	public int collide(Contact[] contacts, Body bodyA, Body bodyB, SeparatingAxis axis) {
+		int count;
+		if (collider instanceof CachingCollider) {
+			count = ((CachingCollider) collider).collide(contacts, bodyB, bodyA, axis);
+		} else {
+			count = collider.collide(contacts, bodyB, bodyA);
+		}
+		
+		return swap(contacts, count);
+	}
+	
+	/**
+	 * Reverse the collision results of the wrapped collider
+	 * 
+	 * @param contacts The contacts found by the wrapped collider
+	 * @param count The number of contacts found
+	 * @return The number of contacts found
+	 */
+	private int swap(Contact[] contacts, int count) {
 		// reverse the collision results by inverting normals
 		for ( int i = 0; i < count; i++ ) {
 			Vector2f vec = MathUtil.scale(contacts[i].getNormal(),-1);
@@ -114,6 +114,33 @@ public strictfp class AABox {
 		return offsety;
 	}
 	
+	/**
+	 * Set the size and offset of this box
+	 * 
+	 * @param offsetx The x offset to the body's position
+	 * @param offsety The y offset to the body's position
+	 * @param width The width of the box
+	 * @param height The hieght of the box
+	 */
+	public void set(float offsetx, float offsety, float width, float height) {
+		this.width = width;
+		this.height = height;
+		this.offsetx = offsetx;
+		this.offsety = offsety;
+	}
+	
+	/**
+	 * Check if this box touches another where both boxes are given in 
+	 * world coordinates, i.e. their offsets are the centre of the boxes.
+	 * 
+	 * @param other The other box to check against
+	 * @return True if the boxes touches
+	 * @see net.phys2d.raw.Body#getWorldBounds()
+	 */
+	public boolean touches(AABox other) {
+		return touches(0, 0, other, 0, 0);
+	}
+	
 	/**
 	 * Check if this box touches another
 	 * 
@@ -48,6 +48,8 @@ import net.phys2d.math.Vector2f;
 public strictfp abstract class AbstractShape implements Shape {
 	/** The circular bounds that fit the shape based on the position of the body */
 	protected AABox bounds;
+	/** The number of times the shape has been changed since it was created */
+	private int modificationCount;
 	
 	/**
 	 * Construct a new shape as subclas swhich will specified it's
@@ -71,7 +73,40 @@ public strictfp abstract class AbstractShape implements Shape {
 	public AABox getBounds() {
 		return bounds;
 	}	
+	
+	/**
+	 * Get the number of times this shape has been changed in place. Cached
+	 * geometry built from the shape compares this to know when to rebuild.
+	 * 
+	 * @return The number of times this shape has been changed
+	 */
+	public int getModificationCount() {
+		return modificationCount;
+	}
+	
+	/**
+	 * Notify that the shape has been changed in place. Subclasses that 
+	 * alter their own geometry must call this once they've done so.
+	 */
+	protected void changed() {
+		modificationCount++;
+	}
         
         public abstract boolean contains(Vector2f p,ROVector2f displacement, float rotation);
         
+        /**
+         * Compute the tightest axis aligned box around this shape in world
+         * coordinates. This uses the rotation independent bounds of the 
+         * shape, subclasses should provide tighter bounds where they can
+         * @param displacement the position of this shape
+         * @param rotation the rotation of this shape
+         * @param result The box to store the bounds in. Its offsets are set to 
+         * the centre of the bounds in world coordinates
+         */
+        public void getWorldBounds(ROVector2f displacement, float rotation, AABox result) {
+                result.set(displacement.getX() + bounds.getOffsetX(), 
+                           displacement.getY() + bounds.getOffsetY(), 
+                           bounds.getWidth(), bounds.getHeight());
+        }
+        
 }
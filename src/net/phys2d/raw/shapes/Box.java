@@ -38,8 +38,6 @@
 package net.phys2d.raw.shapes;
 
 import java.util.ArrayList;
-import net.phys2d.math.MathUtil;
-import net.phys2d.math.Matrix2f;
 import net.phys2d.math.ROVector2f;
 import net.phys2d.math.Vector2f;
 
@@ -92,21 +90,46 @@ public strictfp class Box extends AbstractShape implements DynamicShape {
 	 * @return The points building up a box at this position and rotation
 	 */
 	public Vector2f[] getPoints(ROVector2f pos, float rotation) {
-		Matrix2f R = new Matrix2f(rotation);
 		Vector2f[] pts = new Vector2f[4];
-		ROVector2f h = MathUtil.scale(getSize(),0.5f);
-
-		pts[0] = MathUtil.mul(R, new Vector2f(-h.getX(), -h.getY()));
-		pts[0].add(pos);
-		pts[1] = MathUtil.mul(R, new Vector2f(h.getX(), -h.getY()));
-		pts[1].add(pos);
-		pts[2] = MathUtil.mul(R, new Vector2f( h.getX(),  h.getY()));
-		pts[2].add(pos);
-		pts[3] = MathUtil.mul(R, new Vector2f(-h.getX(),  h.getY()));
-		pts[3].add(pos);
+		for (int i=0;i<4;i++) {
+			pts[i] = new Vector2f();
+		}
+		getPoints(pos, rotation, pts);
 
 		return pts;
 	}
+	
+	/**
+	 * Get the current position of the points into an existing array, as
+	 * <code>getPoints(pos, rotation)</code> but without allocating.
+	 * 
+	 * @param pos The centre of the box
+	 * @param rotation The rotation of the box
+	 * @param result The array of at least four points to populate
+	 */
+	public void getPoints(ROVector2f pos, float rotation, Vector2f[] result) {
+		float cos = (float) Math.cos(rotation);
+		float sin = (float) Math.sin(rotation);
+		float hx = size.x * 0.5f;
+		float hy = size.y * 0.5f;
+		
+		result[0].set((cos * -hx) - (sin * -hy) + pos.getX(), (sin * -hx) + (cos * -hy) + pos.getY());
+		result[1].set((cos * hx) - (sin * -hy) + pos.getX(), (sin * hx) + (cos * -hy) + pos.getY());
+		result[2].set((cos * hx) - (sin * hy) + pos.getX(), (sin * hx) + (cos * hy) + pos.getY());
+		result[3].set((cos * -hx) - (sin * hy) + pos.getX(), (sin * -hx) + (cos * hy) + pos.getY());
+	}
+        
+        /**
+         * @see net.phys2d.raw.shapes.AbstractShape#getWorldBounds(net.phys2d.math.ROVector2f, float, net.phys2d.raw.shapes.AABox)
+         */
+        public void getWorldBounds(ROVector2f displacement, float rotation, AABox result) {
+                float cos = Math.abs((float) Math.cos(rotation));
+                float sin = Math.abs((float) Math.sin(rotation));
+                
+                result.set(displacement.getX(), displacement.getY(), 
+                           (size.x * cos) + (size.y * sin), 
+                           (size.x * sin) + (size.y * cos));
+        }
         
         /**
         * Checks to see if this shape contains the provided point
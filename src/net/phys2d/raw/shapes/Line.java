@@ -48,6 +48,9 @@ import net.phys2d.math.Vector2f;
  * @author Kevin Glass
  */
 public strictfp class Line extends AbstractShape implements DynamicShape {
+	/** The smallest extent the world bounds of the line are given on either axis */
+	private static final float MIN_BOUNDS_EXTENT = 0.01f;
+	
 	/** The start point of the line */
 	private ROVector2f start;
 	/** The end point of the line */
@@ -226,6 +229,7 @@ public strictfp class Line extends AbstractShape implements DynamicShape {
 		
 		lenSquared = vec.length();
 		lenSquared *= lenSquared;
+		changed();
 	}
 	
 	/**
@@ -369,20 +373,33 @@ public strictfp class Line extends AbstractShape implements DynamicShape {
 	 * @return The two endpoints of this line
 	 */
 	public Vector2f[] getVertices(ROVector2f displacement, float rotation) {
+		Vector2f[] endPoints = new Vector2f[2];
+		endPoints[0] = new Vector2f();
+		endPoints[1] = new Vector2f();
+		getVertices(displacement, rotation, endPoints);
+		
+		return endPoints;
+	}
+	
+	/**
+	 * Translate and rotate the end points of this line into an existing 
+	 * array, as <code>getVertices(displacement, rotation)</code> but without
+	 * allocating.
+	 * 
+	 * @param displacement The displacement of the line
+	 * @param rotation The rotation of the line in radians
+	 * @param result The array of at least two points to populate
+	 */
+	public void getVertices(ROVector2f displacement, float rotation, Vector2f[] result) {
 		float cos = (float) Math.cos(rotation);
 		float sin = (float) Math.sin(rotation);
 		
-		Vector2f[] endPoints = new Vector2f[2];
-		endPoints[0] = new Vector2f(//getX1(), getY1());
-				getX1() * cos - getY1() * sin,
+		result[0].set(getX1() * cos - getY1() * sin,
 				getY1() * cos + getX1() * sin);
-		endPoints[0].add(displacement);
-		endPoints[1] = new Vector2f(//getX2(), getY2());
-				getX2() * cos - getY2() * sin,
+		result[0].add(displacement);
+		result[1].set(getX2() * cos - getY2() * sin,
 				getY2() * cos + getX2() * sin);
-		endPoints[1].add(displacement);
-		
-		return endPoints;
+		result[1].add(displacement);
 	}
 	
 	/**
@@ -397,6 +414,7 @@ public strictfp class Line extends AbstractShape implements DynamicShape {
 		temp = new Vector2f(end);
 		temp.add(v);
 		end = temp;
+		changed();
 	}
 	
 	/**
@@ -436,6 +454,26 @@ public strictfp class Line extends AbstractShape implements DynamicShape {
 		return new Vector2f(ix,iy);
 	}
         
+        /**
+         * @see net.phys2d.raw.shapes.AbstractShape#getWorldBounds(net.phys2d.math.ROVector2f, float, net.phys2d.raw.shapes.AABox)
+         */
+        public void getWorldBounds(ROVector2f displacement, float rotation, AABox result) {
+                float cos = (float) Math.cos(rotation);
+                float sin = (float) Math.sin(rotation);
+                
+                float x1 = getX1() * cos - getY1() * sin;
+                float y1 = getY1() * cos + getX1() * sin;
+                float x2 = getX2() * cos - getY2() * sin;
+                float y2 = getY2() * cos + getX2() * sin;
+                
+                // an axis aligned line would have no extent across it and
+                // so never touch bounds that only meet it at an edge
+                result.set(displacement.getX() + ((x1 + x2) / 2),
+                           displacement.getY() + ((y1 + y2) / 2),
+                           Math.max(Math.abs(x2 - x1), MIN_BOUNDS_EXTENT), 
+                           Math.max(Math.abs(y2 - y1), MIN_BOUNDS_EXTENT));
+        }
+        
         public boolean contains(Vector2f p,ROVector2f displacement, float rotation)
         {
             Vector2f[] verts = this.getVertices(displacement, rotation);
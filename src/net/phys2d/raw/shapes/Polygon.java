@@ -250,6 +250,23 @@ public class Polygon extends AbstractShape implements DynamicShape {
     public Vector2f[] getVertices(ROVector2f displacement, float rotation) {
         Vector2f[] retVertices = new Vector2f[vertices.length];
 
+        for (int i = 0; i < vertices.length; i++) {
+            retVertices[i] = new Vector2f();
+        }
+        getVertices(displacement, rotation, retVertices);
+
+        return retVertices;
+    }
+
+    /**
+     * Translate and rotate this poly's vertices into an existing array, as
+     * <code>getVertices(displacement, rotation)</code> but without allocating.
+     *
+     * @param displacement The displacement with wich all the vertices are moved
+     * @param rotation The rotation of the vertices around the origin
+     * @param result The array to populate, at least as long as the vertex count
+     */
+    public void getVertices(ROVector2f displacement, float rotation, Vector2f[] result) {
         float cos = (float) Math.cos(rotation);
         float sin = (float) Math.sin(rotation);
 
@@ -259,10 +276,17 @@ public class Polygon extends AbstractShape implements DynamicShape {
             x += displacement.getX();
             y += displacement.getY();
 
-            retVertices[i] = new Vector2f(x, y);
+            result[i].set(x, y);
         }
+    }
 
-        return retVertices;
+    /**
+     * Get the number of vertices in this polygon
+     *
+     * @return The number of vertices in this polygon
+     */
+    public int getVertexCount() {
+        return vertices.length;
     }
 
     /**
@@ -306,6 +330,33 @@ public class Polygon extends AbstractShape implements DynamicShape {
         return getArea();
     }
 
+    /**
+     * @see net.phys2d.raw.shapes.AbstractShape#getWorldBounds(net.phys2d.math.ROVector2f, float, net.phys2d.raw.shapes.AABox)
+     */
+    public void getWorldBounds(ROVector2f displacement, float rotation, AABox result) {
+        float cos = (float) Math.cos(rotation);
+        float sin = (float) Math.sin(rotation);
+
+        float xMin = Float.MAX_VALUE;
+        float yMin = Float.MAX_VALUE;
+        float xMax = -Float.MAX_VALUE;
+        float yMax = -Float.MAX_VALUE;
+
+        for (int i = 0; i < vertices.length; i++) {
+            float x = vertices[i].x * cos - vertices[i].y * sin;
+            float y = vertices[i].y * cos + vertices[i].x * sin;
+
+            xMin = Math.min(xMin, x);
+            xMax = Math.max(xMax, x);
+            yMin = Math.min(yMin, y);
+            yMax = Math.max(yMax, y);
+        }
+
+        result.set(displacement.getX() + ((xMin + xMax) / 2),
+                   displacement.getY() + ((yMin + yMax) / 2),
+                   xMax - xMin, yMax - yMin);
+    }
+
     /**
          * Checks to see if this shape contains the provided point
          * @param p Point to check
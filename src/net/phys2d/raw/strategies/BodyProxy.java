@@ -0,0 +1,118 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw.strategies;
+
+import net.phys2d.raw.Body;
+import net.phys2d.raw.shapes.AABox;
+
+/**
+ * The record a persistent strategy keeps of a single body between steps.
+ * Holds the body's extents for this step.
+ */
+class BodyProxy {
+	/** The body this proxy represents */
+	Body body;
+	/** The index of the body in the list being collided */
+	int index;
+	/** The last step this proxy was seen */
+	int stamp;
+	/** A handle for the strategy's own use, e.g. a tree node */
+	int handle = -1;
+	/** The lower x bound */
+	float minX;
+	/** The upper x bound */
+	float maxX;
+	/** The lower y bound */
+	float minY;
+	/** The upper y bound */
+	float maxY;
+	/** The next proxy in a strategy's linked list */
+	BodyProxy next;
+	/** The previous proxy in a strategy's linked list */
+	BodyProxy prev;
+	/** The bit of the body's category */
+	long category;
+	/** The categories the body's category pairs with */
+	long mask;
+	
+	/**
+	 * Create a new proxy
+	 * 
+	 * @param body The body this proxy represents
+	 */
+	BodyProxy(Body body) {
+		this.body = body;
+	}
+	
+	/**
+	 * Update the extents of the proxy from the body's world bounds
+	 */
+	void update() {
+		AABox bounds = body.getWorldBounds();
+		float x = bounds.getOffsetX();
+		float y = bounds.getOffsetY();
+		float halfWidth = bounds.getWidth() / 2;
+		float halfHeight = bounds.getHeight() / 2;
+		
+		minX = x - halfWidth;
+		maxX = x + halfWidth;
+		minY = y - halfHeight;
+		maxY = y + halfHeight;
+	}
+	
+	/**
+	 * Check if this proxy's category pairs with another's
+	 * 
+	 * @param other The proxy to check against
+	 * @return True if the categories of the bodies may be paired
+	 */
+	boolean pairs(BodyProxy other) {
+		return (mask & other.category) != 0;
+	}
+	
+	/**
+	 * Check if this proxy's extents overlap another's
+	 * 
+	 * @param other The proxy to check against
+	 * @return True if the extents overlap
+	 */
+	boolean overlaps(BodyProxy other) {
+		return (minX < other.maxX) && (other.minX < maxX) &&
+			   (minY < other.maxY) && (other.minY < maxY);
+	}
+}
@@ -0,0 +1,740 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw.strategies;
+
+/**
+ * A dynamic bounding volume hierarchy of axis aligned boxes. Each leaf of the
+ * tree is a proxy holding a user object and a box that has been fattened by 
+ * a margin, so that a proxy only needs to be reinserted once the object it 
+ * bounds leaves the fattened box. The tree is kept balanced with rotations 
+ * as leaves are inserted and removed.
+ * <p>
+ * Nodes are stored in flat arrays and recycled through a free list so the
+ * tree doesn't allocate once it has grown to the size of the scene. Proxies
+ * are identified by the index of their node.
+ * <p>
+ * Besides serving as a broad phase the tree can be queried for the proxies 
+ * touching a region or crossed by a ray.
+ */
+public class DynamicAABBTree {
+	/** The value used for a node index that doesn't exist */
+	public static final int NULL_NODE = -1;
+	
+	/**
+	 * A callback notified of the proxies found by a region query
+	 */
+	public interface QueryCallback {
+		/**
+		 * Notification that a proxy's fattened box touches the region
+		 * 
+		 * @param proxy The proxy found
+		 * @return True if the query should continue
+		 */
+		public boolean queryProxy(int proxy);
+	}
+	
+	/**
+	 * A callback notified of the proxies found by a ray cast
+	 */
+	public interface RayCastCallback {
+		/**
+		 * Notification that a ray crosses a proxy's fattened box. The callback
+		 * should perform the exact test against the object the proxy holds.
+		 * 
+		 * @param proxy The proxy crossed by the ray
+		 * @param maxFraction The fraction along the ray the cast is currently clipped to
+		 * @return The fraction to clip the ray to, 0 to stop the cast or <code>maxFraction</code>
+		 * to continue unchanged 
+		 */
+		public float rayCastProxy(int proxy, float maxFraction);
+	}
+	
+	/** The lower x bound of each node */
+	private float[] minX;
+	/** The lower y bound of each node */
+	private float[] minY;
+	/** The upper x bound of each node */
+	private float[] maxX;
+	/** The upper y bound of each node */
+	private float[] maxY;
+	/** The parent of each node, or the next free node for free nodes */
+	private int[] parent;
+	/** The first child of each node */
+	private int[] child1;
+	/** The second child of each node */
+	private int[] child2;
+	/** The height of each node, leaves are 0 and free nodes -1 */
+	private int[] height;
+	/** The user object held by each leaf */
+	private Object[] userData;
+	/** The number of nodes the arrays have space for */
+	private int capacity;
+	/** The number of nodes in use */
+	private int nodeCount;
+	/** The root of the tree */
+	private int root = NULL_NODE;
+	/** The head of the list of free nodes */
+	private int freeList;
+	/** The margin added to each side of a proxy's box */
+	private float margin;
+	/** The stack used to traverse the tree */
+	private int[] stack = new int[64];
+	
+	/**
+	 * Create a new tree
+	 * 
+	 * @param margin The margin added to each side of a proxy's box
+	 */
+	public DynamicAABBTree(float margin) {
+		this.margin = margin;
+		allocate(16);
+	}
+	
+	/**
+	 * Grow the node arrays and link the new nodes into the free list
+	 * 
+	 * @param newCapacity The number of nodes to make space for
+	 */
+	private void allocate(int newCapacity) {
+		minX = grow(minX, newCapacity);
+		minY = grow(minY, newCapacity);
+		maxX = grow(maxX, newCapacity);
+		maxY = grow(maxY, newCapacity);
+		parent = grow(parent, newCapacity);
+		child1 = grow(child1, newCapacity);
+		child2 = grow(child2, newCapacity);
+		height = grow(height, newCapacity);
+		
+		Object[] data = new Object[newCapacity];
+		if (userData != null) {
+			System.arraycopy(userData, 0, data, 0, capacity);
+		}
+		userData = data;
+		
+		for (int i=capacity;i<newCapacity-1;i++) {
+			parent[i] = i + 1;
+			height[i] = -1;
+		}
+		parent[newCapacity-1] = NULL_NODE;
+		height[newCapacity-1] = -1;
+		
+		freeList = capacity;
+		capacity = newCapacity;
+	}
+	
+	/**
+	 * Copy an array into a larger one
+	 * 
+	 * @param array The array to copy, may be null
+	 * @param size The size of the new array
+	 * @return The new array
+	 */
+	private float[] grow(float[] array, int size) {
+		float[] result = new float[size];
+		if (array != null) {
+			System.arraycopy(array, 0, result, 0, array.length);
+		}
+		return result;
+	}
+	
+	/**
+	 * Copy an array into a larger one
+	 * 
+	 * @param array The array to copy, may be null
+	 * @param size The size of the new array
+	 * @return The new array
+	 */
+	private int[] grow(int[] array, int size) {
+		int[] result = new int[size];
+		if (array != null) {
+			System.arraycopy(array, 0, result, 0, array.length);
+		}
+		return result;
+	}
+	
+	/**
+	 * Take a node from the free list
+	 * 
+	 * @return The index of the node
+	 */
+	private int allocateNode() {
+		if (freeList == NULL_NODE) {
+			allocate(capacity * 2);
+		}
+		
+		int node = freeList;
+		freeList = parent[node];
+		parent[node] = NULL_NODE;
+		child1[node] = NULL_NODE;
+		child2[node] = NULL_NODE;
+		height[node] = 0;
+		userData[node] = null;
+		nodeCount++;
+		
+		return node;
+	}
+	
+	/**
+	 * Return a node to the free list
+	 * 
+	 * @param node The index of the node
+	 */
+	private void freeNode(int node) {
+		parent[node] = freeList;
+		height[node] = -1;
+		userData[node] = null;
+		freeList = node;
+		nodeCount--;
+	}
+	
+	/**
+	 * Create a proxy in the tree
+	 * 
+	 * @param x1 The lower x bound of the object
+	 * @param y1 The lower y bound of the object
+	 * @param x2 The upper x bound of the object
+	 * @param y2 The upper y bound of the object
+	 * @param data The object the proxy represents
+	 * @return The proxy created
+	 */
+	public int createProxy(float x1, float y1, float x2, float y2, Object data) {
+		int proxy = allocateNode();
+		
+		minX[proxy] = x1 - margin;
+		minY[proxy] = y1 - margin;
+		maxX[proxy] = x2 + margin;
+		maxY[proxy] = y2 + margin;
+		userData[proxy] = data;
+		
+		insertLeaf(proxy);
+		
+		return proxy;
+	}
+	
+	/**
+	 * Remove a proxy from the tree
+	 * 
+	 * @param proxy The proxy to remove
+	 */
+	public void destroyProxy(int proxy) {
+		removeLeaf(proxy);
+		freeNode(proxy);
+	}
+	
+	/**
+	 * Move a proxy to the new bounds of its object. The proxy is only 
+	 * reinserted if the bounds have left the proxy's fattened box.
+	 * 
+	 * @param proxy The proxy to move
+	 * @param x1 The lower x bound of the object
+	 * @param y1 The lower y bound of the object
+	 * @param x2 The upper x bound of the object
+	 * @param y2 The upper y bound of the object
+	 * @return True if the proxy was reinserted
+	 */
+	public boolean moveProxy(int proxy, float x1, float y1, float x2, float y2) {
+		if ((minX[proxy] <= x1) && (minY[proxy] <= y1) && 
+			(maxX[proxy] >= x2) && (maxY[proxy] >= y2)) {
+			return false;
+		}
+		
+		removeLeaf(proxy);
+		
+		minX[proxy] = x1 - margin;
+		minY[proxy] = y1 - margin;
+		maxX[proxy] = x2 + margin;
+		maxY[proxy] = y2 + margin;
+		
+		insertLeaf(proxy);
+		
+		return true;
+	}
+	
+	/**
+	 * Get the object a proxy represents
+	 * 
+	 * @param proxy The proxy
+	 * @return The object given when the proxy was created
+	 */
+	public Object getUserData(int proxy) {
+		return userData[proxy];
+	}
+	
+	/**
+	 * Get the lower x bound of a proxy's fattened box
+	 * 
+	 * @param proxy The proxy
+	 * @return The lower x bound
+	 */
+	public float getMinX(int proxy) {
+		return minX[proxy];
+	}
+	
+	/**
+	 * Get the lower y bound of a proxy's fattened box
+	 * 
+	 * @param proxy The proxy
+	 * @return The lower y bound
+	 */
+	public float getMinY(int proxy) {
+		return minY[proxy];
+	}
+	
+	/**
+	 * Get the upper x bound of a proxy's fattened box
+	 * 
+	 * @param proxy The proxy
+	 * @return The upper x bound
+	 */
+	public float getMaxX(int proxy) {
+		return maxX[proxy];
+	}
+	
+	/**
+	 * Get the upper y bound of a proxy's fattened box
+	 * 
+	 * @param proxy The proxy
+	 * @return The upper y bound
+	 */
+	public float getMaxY(int proxy) {
+		return maxY[proxy];
+	}
+	
+	/**
+	 * Get the height of the tree
+	 * 
+	 * @return The height of the tree, 0 when it holds a single proxy
+	 */
+	public int getHeight() {
+		if (root == NULL_NODE) {
+			return 0;
+		}
+		return height[root];
+	}
+	
+	/**
+	 * Get the number of proxies in the tree
+	 * 
+	 * @return The number of proxies in the tree
+	 */
+	public int getProxyCount() {
+		return (nodeCount + 1) / 2;
+	}
+	
+	/**
+	 * Remove all the proxies from the tree
+	 */
+	public void clear() {
+		for (int i=0;i<capacity-1;i++) {
+			parent[i] = i + 1;
+			height[i] = -1;
+			userData[i] = null;
+		}
+		parent[capacity-1] = NULL_NODE;
+		height[capacity-1] = -1;
+		userData[capacity-1] = null;
+		
+		freeList = 0;
+		nodeCount = 0;
+		root = NULL_NODE;
+	}
+	
+	/**
+	 * Find the proxies whose fattened boxes touch a region
+	 * 
+	 * @param x1 The lower x bound of the region
+	 * @param y1 The lower y bound of the region
+	 * @param x2 The upper x bound of the region
+	 * @param y2 The upper y bound of the region
+	 * @param callback The callback notified of each proxy found
+	 */
+	public void query(float x1, float y1, float x2, float y2, QueryCallback callback) {
+		if (root == NULL_NODE) {
+			return;
+		}
+		
+		int top = 0;
+		stack[top++] = root;
+		
+		while (top > 0) {
+			int node = stack[--top];
+			
+			if ((minX[node] > x2) || (x1 > maxX[node]) ||
+				(minY[node] > y2) || (y1 > maxY[node])) {
+				continue;
+			}
+			
+			if (child1[node] == NULL_NODE) {
+				if (!callback.queryProxy(node)) {
+					return;
+				}
+			} else {
+				if (top + 2 > stack.length) {
+					stack = grow(stack, stack.length * 2);
+				}
+				stack[top++] = child1[node];
+				stack[top++] = child2[node];
+			}
+		}
+	}
+	
+	/**
+	 * Find the proxies whose fattened boxes are crossed by a line segment
+	 * 
+	 * @param x1 The x coordinate of the start of the ray
+	 * @param y1 The y coordinate of the start of the ray
+	 * @param x2 The x coordinate of the end of the ray
+	 * @param y2 The y coordinate of the end of the ray
+	 * @param callback The callback notified of each proxy crossed 
+	 */
+	public void rayCast(float x1, float y1, float x2, float y2, RayCastCallback callback) {
+		if (root == NULL_NODE) {
+			return;
+		}
+		
+		float dx = x2 - x1;
+		float dy = y2 - y1;
+		float maxFraction = 1;
+		
+		int top = 0;
+		stack[top++] = root;
+		
+		while (top > 0) {
+			int node = stack[--top];
+			
+			if (!segmentTouches(node, x1, y1, dx, dy, maxFraction)) {
+				continue;
+			}
+			
+			if (child1[node] == NULL_NODE) {
+				float fraction = callback.rayCastProxy(node, maxFraction);
+				if (fraction == 0) {
+					return;
+				}
+				if ((fraction > 0) && (fraction < maxFraction)) {
+					maxFraction = fraction;
+				}
+			} else {
+				if (top + 2 > stack.length) {
+					stack = grow(stack, stack.length * 2);
+				}
+				stack[top++] = child1[node];
+				stack[top++] = child2[node];
+			}
+		}
+	}
+	
+	/**
+	 * Check if a segment crosses a node's box using the slab test
+	 * 
+	 * @param node The node to check
+	 * @param x The x coordinate of the start of the segment
+	 * @param y The y coordinate of the start of the segment
+	 * @param dx The x extent of the segment
+	 * @param dy The y extent of the segment
+	 * @param maxFraction The fraction of the segment to consider
+	 * @return True if the segment crosses the box
+	 */
+	private boolean segmentTouches(int node, float x, float y, float dx, float dy, float maxFraction) {
+		float tmin = 0;
+		float tmax = maxFraction;
+		
+		if (dx == 0) {
+			if ((x < minX[node]) || (x > maxX[node])) {
+				return false;
+			}
+		} else {
+			float inv = 1 / dx;
+			float t1 = (minX[node] - x) * inv;
+			float t2 = (maxX[node] - x) * inv;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+			if (tmin > tmax) {
+				return false;
+			}
+		}
+		
+		if (dy == 0) {
+			if ((y < minY[node]) || (y > maxY[node])) {
+				return false;
+			}
+		} else {
+			float inv = 1 / dy;
+			float t1 = (minY[node] - y) * inv;
+			float t2 = (maxY[node] - y) * inv;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+			if (tmin > tmax) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Get the perimeter of the box enclosing two nodes
+	 * 
+	 * @param a The first node
+	 * @param b The second node
+	 * @return The perimeter of the combined box
+	 */
+	private float combinedPerimeter(int a, int b) {
+		float w = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+		float h = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+		return 2 * (w + h);
+	}
+	
+	/**
+	 * Get the perimeter of a node's box
+	 * 
+	 * @param node The node
+	 * @return The perimeter of the box
+	 */
+	private float perimeter(int node) {
+		return 2 * ((maxX[node] - minX[node]) + (maxY[node] - minY[node]));
+	}
+	
+	/**
+	 * Set a node's box and height to enclose its children
+	 * 
+	 * @param node The node to update
+	 */
+	private void fitToChildren(int node) {
+		int a = child1[node];
+		int b = child2[node];
+		
+		minX[node] = Math.min(minX[a], minX[b]);
+		minY[node] = Math.min(minY[a], minY[b]);
+		maxX[node] = Math.max(maxX[a], maxX[b]);
+		maxY[node] = Math.max(maxY[a], maxY[b]);
+		height[node] = 1 + Math.max(height[a], height[b]);
+	}
+	
+	/**
+	 * Insert a leaf into the tree next to the sibling that increases the
+	 * area of the tree the least
+	 * 
+	 * @param leaf The leaf to insert
+	 */
+	private void insertLeaf(int leaf) {
+		if (root == NULL_NODE) {
+			root = leaf;
+			parent[root] = NULL_NODE;
+			return;
+		}
+		
+		int index = root;
+		while (child1[index] != NULL_NODE) {
+			int c1 = child1[index];
+			int c2 = child2[index];
+			
+			float area = perimeter(index);
+			float combinedArea = combinedPerimeter(index, leaf);
+			
+			// cost of creating a new parent for this node and the new leaf
+			float cost = 2 * combinedArea;
+			// minimum cost of pushing the leaf further down the tree
+			float inheritanceCost = 2 * (combinedArea - area);
+			
+			float cost1 = descendCost(c1, leaf) + inheritanceCost;
+			float cost2 = descendCost(c2, leaf) + inheritanceCost;
+			
+			if ((cost < cost1) && (cost < cost2)) {
+				break;
+			}
+			
+			index = cost1 < cost2 ? c1 : c2;
+		}
+		
+		int sibling = index;
+		int oldParent = parent[sibling];
+		int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+		fitToChildren(newParent);
+		
+		if (oldParent != NULL_NODE) {
+			if (child1[oldParent] == sibling) {
+				child1[oldParent] = newParent;
+			} else {
+				child2[oldParent] = newParent;
+			}
+		} else {
+			root = newParent;
+		}
+		
+		refit(parent[leaf]);
+	}
+	
+	/**
+	 * Get the cost of descending into a child when inserting a leaf
+	 * 
+	 * @param child The child being considered
+	 * @param leaf The leaf being inserted
+	 * @return The increase in area caused by inserting the leaf under the child
+	 */
+	private float descendCost(int child, int leaf) {
+		if (child1[child] == NULL_NODE) {
+			return combinedPerimeter(child, leaf);
+		}
+		return combinedPerimeter(child, leaf) - perimeter(child);
+	}
+	
+	/**
+	 * Remove a leaf from the tree, its sibling takes the place of their parent
+	 * 
+	 * @param leaf The leaf to remove
+	 */
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL_NODE;
+			return;
+		}
+		
+		int oldParent = parent[leaf];
+		int grandParent = parent[oldParent];
+		int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+		
+		if (grandParent != NULL_NODE) {
+			if (child1[grandParent] == oldParent) {
+				child1[grandParent] = sibling;
+			} else {
+				child2[grandParent] = sibling;
+			}
+			parent[sibling] = grandParent;
+			freeNode(oldParent);
+			
+			refit(grandParent);
+		} else {
+			root = sibling;
+			parent[sibling] = NULL_NODE;
+			freeNode(oldParent);
+		}
+	}
+	
+	/**
+	 * Walk back up the tree from a node balancing and refitting the boxes
+	 * 
+	 * @param node The node to start from
+	 */
+	private void refit(int node) {
+		while (node != NULL_NODE) {
+			node = balance(node);
+			fitToChildren(node);
+			node = parent[node];
+		}
+	}
+	
+	/**
+	 * Perform a left or right rotation if a node is imbalanced
+	 * 
+	 * @param a The node to balance
+	 * @return The node now at the position of the given node
+	 */
+	private int balance(int a) {
+		if ((child1[a] == NULL_NODE) || (height[a] < 2)) {
+			return a;
+		}
+		
+		int b = child1[a];
+		int c = child2[a];
+		int diff = height[c] - height[b];
+		
+		if (diff > 1) {
+			return rotate(a, c, b);
+		}
+		if (diff < -1) {
+			return rotate(a, b, c);
+		}
+		
+		return a;
+	}
+	
+	/**
+	 * Rotate the taller child of a node up into the node's place
+	 * 
+	 * @param a The imbalanced node
+	 * @param up The taller child of the node, moved up
+	 * @param other The shorter child of the node
+	 * @return The node now at the position of the imbalanced node
+	 */
+	private int rotate(int a, int up, int other) {
+		int f = child1[up];
+		int g = child2[up];
+		
+		child1[up] = a;
+		parent[up] = parent[a];
+		parent[a] = up;
+		
+		if (parent[up] != NULL_NODE) {
+			if (child1[parent[up]] == a) {
+				child1[parent[up]] = up;
+			} else {
+				child2[parent[up]] = up;
+			}
+		} else {
+			root = up;
+		}
+		
+		// the taller grandchild stays under the node moved up, the other
+		// replaces it as the child of the imbalanced node 
+		int keep = f;
+		int give = g;
+		if (height[f] < height[g]) {
+			keep = g;
+			give = f;
+		}
+		
+		child2[up] = keep;
+		if (child1[a] == up) {
+			child1[a] = give;
+		} else {
+			child2[a] = give;
+		}
+		parent[give] = a;
+		
+		fitToChildren(a);
+		fitToChildren(up);
+		
+		return up;
+	}
+}
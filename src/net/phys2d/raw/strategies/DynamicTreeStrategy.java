@@ -0,0 +1,163 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw.strategies;
+
+import net.phys2d.raw.BodyList;
+import net.phys2d.raw.BroadCollisionStrategy;
+import net.phys2d.raw.CollisionContext;
+
+/**
+ * A strategy that keeps the bodies in a dynamic bounding volume hierarchy
+ * from one step to the next. Each body is given a proxy in the tree with
+ * a box fattened by a margin, and the proxy is only reinserted when the 
+ * body leaves that box. Bodies are then paired by querying the tree with
+ * each body's bounds.
+ * <p>
+ * The tree is available through <code>getTree()</code> for region queries 
+ * and ray casts, the user object of each proxy is the <code>Body</code>.
+ */
+public class DynamicTreeStrategy implements BroadCollisionStrategy {
+	/** The default margin added to each side of a body's bounds */
+	public static final float DEFAULT_MARGIN = 5;
+	
+	/** The tree holding the body proxies */
+	private DynamicAABBTree tree;
+	/** The proxies of the bodies */
+	private ProxyList proxies = new ProxyList();
+	/** The body proxy for each node in the tree */
+	private BodyProxy[] nodes = new BodyProxy[64];
+	/** The callback pairing the bodies found by each query */
+	private PairQuery pairQuery = new PairQuery();
+	
+	/**
+	 * Create a new strategy using the default margin
+	 */
+	public DynamicTreeStrategy() {
+		this(DEFAULT_MARGIN);
+	}
+	
+	/**
+	 * Create a new strategy
+	 * 
+	 * @param margin The margin added to each side of a body's bounds. Larger
+	 * margins mean bodies are reinserted less often but produce more candidate
+	 * pairs.
+	 */
+	public DynamicTreeStrategy(float margin) {
+		tree = new DynamicAABBTree(margin);
+	}
+	
+	/**
+	 * Get the tree holding the bodies. The user object of each proxy 
+	 * in the tree is the <code>Body</code> it bounds.
+	 * 
+	 * @return The tree holding the bodies
+	 */
+	public DynamicAABBTree getTree() {
+		return tree;
+	}
+	
+	/**
+	 * @see net.phys2d.raw.BroadCollisionStrategy#collideBodies(net.phys2d.raw.CollisionContext, net.phys2d.raw.BodyList, float)
+	 */
+	public void collideBodies(CollisionContext context, BodyList bodies, float dt) {
+		proxies.update(bodies, context.getCategoryFilter());
+		
+		BodyProxy[] removed = proxies.getRemoved();
+		for (int i=0;i<proxies.getRemovedCount();i++) {
+			nodes[removed[i].handle] = null;
+			tree.destroyProxy(removed[i].handle);
+			removed[i].handle = -1;
+		}
+		
+		BodyProxy[] list = proxies.getProxies();
+		int count = proxies.size();
+		for (int i=0;i<count;i++) {
+			BodyProxy proxy = list[i];
+			if (proxy.handle == -1) {
+				proxy.handle = tree.createProxy(proxy.minX, proxy.minY, proxy.maxX, proxy.maxY, proxy.body);
+				if (proxy.handle >= nodes.length) {
+					BodyProxy[] temp = new BodyProxy[Math.max(proxy.handle + 1, nodes.length * 2)];
+					System.arraycopy(nodes, 0, temp, 0, nodes.length);
+					nodes = temp;
+				}
+				nodes[proxy.handle] = proxy;
+			} else {
+				tree.moveProxy(proxy.handle, proxy.minX, proxy.minY, proxy.maxX, proxy.maxY);
+			}
+		}
+		
+		for (int i=0;i<count;i++) {
+			BodyProxy proxy = list[i];
+			if (!proxies.pairsWithAny(proxy)) {
+				continue;
+			}
+			pairQuery.querying = proxy;
+			tree.query(proxy.minX, proxy.minY, proxy.maxX, proxy.maxY, pairQuery);
+		}
+		pairQuery.querying = null;
+		
+		proxies.resolvePairs(context, dt);
+	}
+	
+	/**
+	 * The callback that pairs the body being queried with the bodies 
+	 * found in the tree
+	 */
+	private class PairQuery implements DynamicAABBTree.QueryCallback {
+		/** The proxy the tree is currently being queried for */
+		private BodyProxy querying;
+		
+		/**
+		 * @see net.phys2d.raw.strategies.DynamicAABBTree.QueryCallback#queryProxy(int)
+		 */
+		public boolean queryProxy(int proxy) {
+			BodyProxy other = nodes[proxy];
+			
+			// each pair is found from both sides, only take it from the
+			// body with the lower ID
+			if ((querying.body.getID() < other.body.getID()) && querying.pairs(other)) {
+				if (querying.overlaps(other)) {
+					proxies.addPair(querying, other);
+				}
+			}
+			
+			return true;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw.strategies;
+
+import net.phys2d.raw.BodyList;
+import net.phys2d.raw.BroadCollisionStrategy;
+import net.phys2d.raw.CollisionContext;
+
+/**
+ * A strategy that keeps bodies in a loose quad tree covering a fixed region
+ * of the world. Each node's bounds are loosened to twice the size of the 
+ * space it divides, so a body can always be placed in the deepest level with
+ * cells at least as big as the body, in the cell holding the body's centre.
+ * <p>
+ * The tree is complete to a fixed depth and stored in flat arrays, with the 
+ * bodies in each node held in a linked list. Bodies are only relinked when 
+ * they move to another node so the tree doesn't allocate once the bodies 
+ * have been added. Bodies outside the region, or too large for the first
+ * subdivision, are held at the root. 
+ */
+public class LooseQuadTreeStrategy implements BroadCollisionStrategy {
+	/** The deepest level of subdivision supported */
+	public static final int MAX_DEPTH = 8;
+	
+	/** The x coordinate of the region covered */
+	private float x;
+	/** The y coordinate of the region covered */
+	private float y;
+	/** The width of the region covered */
+	private float width;
+	/** The height of the region covered */
+	private float height;
+	/** The number of levels of subdivision */
+	private int depth;
+	/** The index of the first node of each level */
+	private int[] levelOffset;
+	/** The number of bodies held at each level */
+	private int[] levelCount;
+	/** The first body held in each node */
+	private BodyProxy[] heads;
+	/** The proxies of the bodies */
+	private ProxyList proxies = new ProxyList();
+	
+	/**
+	 * Create a new strategy
+	 * 
+	 * @param x The x coordinate of the region covered by the tree
+	 * @param y The y coordinate of the region covered by the tree
+	 * @param width The width of the region covered by the tree
+	 * @param height The height of the region covered by the tree
+	 * @param depth The number of levels of subdivision, at most <code>MAX_DEPTH</code>
+	 */
+	public LooseQuadTreeStrategy(float x, float y, float width, float height, int depth) {
+		if ((depth < 0) || (depth > MAX_DEPTH)) {
+			throw new IllegalArgumentException("Depth must be between 0 and "+MAX_DEPTH);
+		}
+		
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		
+		levelOffset = new int[depth+1];
+		levelCount = new int[depth+1];
+		int nodes = 0;
+		for (int level=0;level<=depth;level++) {
+			levelOffset[level] = nodes;
+			nodes += (1 << level) * (1 << level);
+		}
+		heads = new BodyProxy[nodes];
+	}
+	
+	/**
+	 * @see net.phys2d.raw.BroadCollisionStrategy#collideBodies(net.phys2d.raw.CollisionContext, net.phys2d.raw.BodyList, float)
+	 */
+	public void collideBodies(CollisionContext context, BodyList bodies, float dt) {
+		proxies.update(bodies, context.getCategoryFilter());
+		
+		BodyProxy[] removed = proxies.getRemoved();
+		for (int i=0;i<proxies.getRemovedCount();i++) {
+			unlink(removed[i]);
+		}
+		
+		BodyProxy[] list = proxies.getProxies();
+		int count = proxies.size();
+		for (int i=0;i<count;i++) {
+			BodyProxy proxy = list[i];
+			int node = findNode(proxy);
+			if (node != proxy.handle) {
+				unlink(proxy);
+				link(proxy, node);
+			}
+		}
+		
+		for (int i=0;i<count;i++) {
+			BodyProxy proxy = list[i];
+			if (!proxies.pairsWithAny(proxy)) {
+				continue;
+			}
+			
+			for (int level=0;level<=depth;level++) {
+				if (levelCount[level] == 0) {
+					continue;
+				}
+				
+				int cells = 1 << level;
+				float cellWidth = width / cells;
+				float cellHeight = height / cells;
+				
+				// the range of cells whose loose bounds could touch the body
+				int x1 = clamp((int) Math.floor((proxy.minX - x) / cellWidth - 1.5f), cells);
+				int x2 = clamp((int) Math.floor((proxy.maxX - x) / cellWidth + 0.5f), cells);
+				int y1 = clamp((int) Math.floor((proxy.minY - y) / cellHeight - 1.5f), cells);
+				int y2 = clamp((int) Math.floor((proxy.maxY - y) / cellHeight + 0.5f), cells);
+				
+				for (int cy=y1;cy<=y2;cy++) {
+					int row = levelOffset[level] + (cy * cells);
+					for (int cx=x1;cx<=x2;cx++) {
+						for (BodyProxy other=heads[row+cx];other!=null;other=other.next) {
+							// each pair is found from both sides, only take it from the
+							// body with the lower ID
+							if ((proxy.body.getID() < other.body.getID()) && proxy.pairs(other)) {
+								if (proxy.overlaps(other)) {
+									proxies.addPair(proxy, other);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		proxies.resolvePairs(context, dt);
+	}
+	
+	/**
+	 * Clamp a cell coordinate into the grid of a level
+	 * 
+	 * @param cell The cell coordinate
+	 * @param cells The number of cells along each axis of the level
+	 * @return The clamped coordinate
+	 */
+	private int clamp(int cell, int cells) {
+		if (cell < 0) {
+			return 0;
+		}
+		if (cell >= cells) {
+			return cells - 1;
+		}
+		return cell;
+	}
+	
+	/**
+	 * Find the node a proxy should be held in
+	 * 
+	 * @param proxy The proxy to place
+	 * @return The index of the node
+	 */
+	private int findNode(BodyProxy proxy) {
+		float w = proxy.maxX - proxy.minX;
+		float h = proxy.maxY - proxy.minY;
+		float cx = ((proxy.minX + proxy.maxX) / 2) - x;
+		float cy = ((proxy.minY + proxy.maxY) / 2) - y;
+		
+		if ((cx < 0) || (cy < 0) || (cx >= width) || (cy >= height)) {
+			return 0;
+		}
+		
+		int level = depth;
+		while (level > 0) {
+			int cells = 1 << level;
+			if ((w <= width / cells) && (h <= height / cells)) {
+				break;
+			}
+			level--;
+		}
+		
+		int cells = 1 << level;
+		int col = clamp((int) (cx * cells / width), cells);
+		int row = clamp((int) (cy * cells / height), cells);
+		
+		return levelOffset[level] + (row * cells) + col;
+	}
+	
+	/**
+	 * Get the level a node belongs to
+	 * 
+	 * @param node The index of the node
+	 * @return The level of the node
+	 */
+	private int getLevel(int node) {
+		int level = depth;
+		while (levelOffset[level] > node) {
+			level--;
+		}
+		return level;
+	}
+	
+	/**
+	 * Add a proxy to a node
+	 * 
+	 * @param proxy The proxy to add
+	 * @param node The node to add it to
+	 */
+	private void link(BodyProxy proxy, int node) {
+		proxy.handle = node;
+		proxy.prev = null;
+		proxy.next = heads[node];
+		if (heads[node] != null) {
+			heads[node].prev = proxy;
+		}
+		heads[node] = proxy;
+		levelCount[getLevel(node)]++;
+	}
+	
+	/**
+	 * Remove a proxy from the node it's held in, if any
+	 * 
+	 * @param proxy The proxy to remove
+	 */
+	private void unlink(BodyProxy proxy) {
+		if (proxy.handle == -1) {
+			return;
+		}
+		
+		if (proxy.prev != null) {
+			proxy.prev.next = proxy.next;
+		} else {
+			heads[proxy.handle] = proxy.next;
+		}
+		if (proxy.next != null) {
+			proxy.next.prev = proxy.prev;
+		}
+		levelCount[getLevel(proxy.handle)]--;
+		
+		proxy.next = null;
+		proxy.prev = null;
+		proxy.handle = -1;
+	}
+}
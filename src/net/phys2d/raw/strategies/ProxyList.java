@@ -0,0 +1,212 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw.strategies;
+
+import java.util.HashMap;
+
+import net.phys2d.raw.Body;
+import net.phys2d.raw.BodyList;
+import net.phys2d.raw.CategoryFilter;
+import net.phys2d.raw.CollisionContext;
+import net.phys2d.raw.PairList;
+
+/**
+ * The set of body proxies kept by a persistent strategy. The proxies are 
+ * synchronised with the list of bodies being collided each step and pairs
+ * are collected through this list so each is passed to the context once.
+ * Pairs that stop overlapping simply aren't passed on, the context drops
+ * the arbiters of pairs it isn't given.
+ */
+class ProxyList {
+	/** The proxies of the bodies known to this list */
+	private BodyProxy[] proxies = new BodyProxy[64];
+	/** The number of proxies in the list */
+	private int count;
+	/** The proxies removed during the last update */
+	private BodyProxy[] removed = new BodyProxy[16];
+	/** The number of proxies removed during the last update */
+	private int removedCount;
+	/** The proxy for each body */
+	private HashMap<Body, BodyProxy> map = new HashMap<Body, BodyProxy>();
+	/** The step counter used to spot bodies that have left the simulation */
+	private int stamp;
+	/** The pairs found this step */
+	private PairList pairs = new PairList();
+	/** The bits of the categories of the bodies this step */
+	private long categories;
+	
+	/**
+	 * Synchronise the proxies with the bodies being collided this step. Proxies
+	 * are created for new bodies and the extents and categories of all proxies
+	 * are updated. The proxies of bodies that have been removed or disabled are
+	 * dropped and can be retrieved with <code>getRemoved()</code> until the 
+	 * next update. 
+	 * 
+	 * @param bodies The bodies being collided
+	 * @param filter The filter deciding which categories of body are paired
+	 */
+	void update(BodyList bodies, CategoryFilter filter) {
+		stamp++;
+		pairs.clear();
+		categories = 0;
+		
+		for (int i=0;i<bodies.size();i++) {
+			Body body = bodies.get(i);
+			if (body.disabled()) {
+				continue;
+			}
+			
+			BodyProxy proxy = map.get(body);
+			if (proxy == null) {
+				proxy = new BodyProxy(body);
+				map.put(body, proxy);
+				if (count == proxies.length) {
+					BodyProxy[] temp = new BodyProxy[count * 2];
+					System.arraycopy(proxies, 0, temp, 0, count);
+					proxies = temp;
+				}
+				proxies[count++] = proxy;
+			}
+			proxy.stamp = stamp;
+			proxy.index = i;
+			proxy.update();
+			proxy.category = 1L << body.getCategory();
+			proxy.mask = filter.getMask(body.getCategory());
+			categories |= proxy.category;
+		}
+		
+		for (int i=0;i<removedCount;i++) {
+			removed[i] = null;
+		}
+		removedCount = 0;
+		
+		int kept = 0;
+		for (int i=0;i<count;i++) {
+			BodyProxy proxy = proxies[i];
+			if (proxy.stamp == stamp) {
+				proxies[kept++] = proxy;
+			} else {
+				map.remove(proxy.body);
+				if (removedCount == removed.length) {
+					BodyProxy[] temp = new BodyProxy[removedCount * 2];
+					System.arraycopy(removed, 0, temp, 0, removedCount);
+					removed = temp;
+				}
+				removed[removedCount++] = proxy;
+			}
+		}
+		for (int i=kept;i<count;i++) {
+			proxies[i] = null;
+		}
+		count = kept;
+	}
+	
+	/**
+	 * Get the proxies in the list. The strategy owning the list may reorder
+	 * the entries up to <code>size()</code>.
+	 * 
+	 * @return The proxies in the list 
+	 */
+	BodyProxy[] getProxies() {
+		return proxies;
+	}
+	
+	/**
+	 * Get the number of proxies in the list
+	 * 
+	 * @return The number of proxies in the list
+	 */
+	int size() {
+		return count;
+	}
+	
+	/**
+	 * Check if a proxy may be paired with any of the proxies in the list. 
+	 * Proxies that can't needn't be looked up at all.
+	 * 
+	 * @param proxy The proxy to check
+	 * @return True if the category of any proxy pairs with the proxy's
+	 */
+	boolean pairsWithAny(BodyProxy proxy) {
+		return (proxy.mask & categories) != 0;
+	}
+	
+	/**
+	 * Get the proxies dropped by the last update
+	 * 
+	 * @return The proxies dropped by the last update
+	 */
+	BodyProxy[] getRemoved() {
+		return removed;
+	}
+	
+	/**
+	 * Get the number of proxies dropped by the last update
+	 * 
+	 * @return The number of proxies dropped by the last update
+	 */
+	int getRemovedCount() {
+		return removedCount;
+	}
+	
+	/**
+	 * Record an overlapping pair found this step
+	 * 
+	 * @param a The first proxy of the pair
+	 * @param b The second proxy of the pair
+	 */
+	void addPair(BodyProxy a, BodyProxy b) {
+		// the bodies are given in the order they appear in the list being
+		// collided
+		if (a.index < b.index) {
+			pairs.add(a.body, b.body);
+		} else {
+			pairs.add(b.body, a.body);
+		}
+	}
+	
+	/**
+	 * Pass the pairs found this step on to the collision context
+	 * 
+	 * @param context The context to resolve the pairs in
+	 * @param dt The amount of time passed since the last step
+	 */
+	void resolvePairs(CollisionContext context, float dt) {
+		context.resolvePairs(pairs, dt);
+	}
+}
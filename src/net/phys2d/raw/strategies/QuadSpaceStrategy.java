@@ -42,7 +42,9 @@ import java.util.ArrayList;
 import net.phys2d.raw.Body;
 import net.phys2d.raw.BodyList;
 import net.phys2d.raw.BroadCollisionStrategy;
+import net.phys2d.raw.CategoryFilter;
 import net.phys2d.raw.CollisionContext;
+import net.phys2d.raw.PairList;
 import net.phys2d.raw.shapes.AABox;
 
 /**
@@ -59,6 +61,8 @@ public class QuadSpaceStrategy implements BroadCollisionStrategy {
 	private int maxLevels;
 	/** The maximum number of bodies in a given space acceptable */
 	private int maxInSpace;
+	/** The pairs of bodies sharing a space, each held once */
+	private PairList pairs = new PairList();
 	
 	/**
 	 * Create a new strategy
@@ -85,18 +89,31 @@ public class QuadSpaceStrategy implements BroadCollisionStrategy {
                         if(!body.disabled())
                         {
 			
-                            space.addAABox(body.getShape().getBounds(), 
-                                                       body.getPosition().getX(), 
-                                                       body.getPosition().getY());
+                            AABox bounds = body.getWorldBounds();
+                            space.addAABox(bounds, bounds.getOffsetX(), bounds.getOffsetY());
                             space.addBody(body);
                         }
 		}
 		
 		splitSpace(space, 0, maxInSpace, spaces);
 		
+		// bodies can appear in several spaces, collect the pairs so each
+		// is only resolved once
+		CategoryFilter filter = context.getCategoryFilter();
+		pairs.clear();
 		for (int i=0;i<spaces.size();i++) {
-			context.resolve((Space) spaces.get(i), dt);
+			Space leaf = (Space) spaces.get(i);
+			for (int a=0;a<leaf.size();a++) {
+				Body bodyA = leaf.get(a);
+				for (int b=a+1;b<leaf.size();b++) {
+					if (filter.collides(bodyA, leaf.get(b))) {
+						pairs.add(bodyA, leaf.get(b));
+					}
+				}
+			}
 		}
+		
+		context.resolvePairs(pairs, dt);
 	}
 
 	/**
@@ -192,10 +209,9 @@ public class QuadSpaceStrategy implements BroadCollisionStrategy {
 			
 			for (int i=0;i<size();i++) {
 				Body body = get(i);
+				AABox bounds = body.getWorldBounds();
 				for (int j=0;j<4;j++) {
-					if (spaces[j].touches(body.getShape().getBounds(),
-										  body.getPosition().getX(),
-										  body.getPosition().getY())) {
+					if (spaces[j].touches(bounds, bounds.getOffsetX(), bounds.getOffsetY())) {
 						spaces[j].add(body);
 					}
 				}
@@ -0,0 +1,318 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw.strategies;
+
+import net.phys2d.raw.BodyList;
+import net.phys2d.raw.BroadCollisionStrategy;
+import net.phys2d.raw.CollisionContext;
+
+/**
+ * A strategy that buckets bodies into a uniform grid of square cells held
+ * in a hash table, so only bodies sharing a cell are compared. This works 
+ * best when most bodies are around the size of a cell or smaller. Bodies 
+ * that would cover too many cells are kept aside and compared against every 
+ * other body instead.
+ * <p>
+ * The table is keyed on the packed cell coordinates and uses open addressing,
+ * the storage is reused from one step to the next.
+ */
+public class SpatialHashStrategy implements BroadCollisionStrategy {
+	/** The maximum number of cells a body may cover before it's kept aside */
+	private static final int MAX_CELLS = 16;
+	/** The size of each cell */
+	private float cellSize;
+	/** The inverse of the cell size */
+	private float invCellSize;
+	/** The proxies of the bodies */
+	private ProxyList proxies = new ProxyList();
+	/** The cell key held in each slot of the table */
+	private long[] keys = new long[256];
+	/** True for each slot of the table holding a cell this step */
+	private boolean[] occupied = new boolean[256];
+	/** The first entry of the cell held in each slot of the table */
+	private int[] heads = new int[256];
+	/** The slots in use this step */
+	private int[] used = new int[128];
+	/** The number of slots in use this step */
+	private int usedCount;
+	/** The proxy held by each entry */
+	private BodyProxy[] entries = new BodyProxy[256];
+	/** The next entry in the same cell */
+	private int[] next = new int[256];
+	/** The number of entries this step */
+	private int entryCount;
+	/** The proxies that cover too many cells to be placed in the grid */
+	private BodyProxy[] large = new BodyProxy[16];
+	/** The number of large proxies */
+	private int largeCount;
+	
+	/**
+	 * Create a new strategy
+	 * 
+	 * @param cellSize The size of each cell of the grid, ideally around the
+	 * size of the typical body
+	 */
+	public SpatialHashStrategy(float cellSize) {
+		this.cellSize = cellSize;
+		this.invCellSize = 1 / cellSize;
+	}
+	
+	/**
+	 * Get the size of each cell of the grid
+	 * 
+	 * @return The size of each cell
+	 */
+	public float getCellSize() {
+		return cellSize;
+	}
+	
+	/**
+	 * @see net.phys2d.raw.BroadCollisionStrategy#collideBodies(net.phys2d.raw.CollisionContext, net.phys2d.raw.BodyList, float)
+	 */
+	public void collideBodies(CollisionContext context, BodyList bodies, float dt) {
+		proxies.update(bodies, context.getCategoryFilter());
+		clearCells();
+		
+		BodyProxy[] list = proxies.getProxies();
+		int count = proxies.size();
+		for (int i=0;i<count;i++) {
+			// bodies that can't be paired with any other are left out
+			if (proxies.pairsWithAny(list[i])) {
+				insert(list[i]);
+			} else {
+				list[i].handle = -1;
+			}
+		}
+		
+		for (int i=0;i<usedCount;i++) {
+			int slot = used[i];
+			long key = keys[slot];
+			
+			for (int a=heads[slot];a!=-1;a=next[a]) {
+				BodyProxy proxyA = entries[a];
+				for (int b=next[a];b!=-1;b=next[b]) {
+					BodyProxy proxyB = entries[b];
+					if (!proxyA.pairs(proxyB) || !proxyA.overlaps(proxyB)) {
+						continue;
+					}
+					
+					// a pair sharing several cells is only taken from the
+					// cell holding the corner of their overlap
+					int cx = cell(Math.max(proxyA.minX, proxyB.minX));
+					int cy = cell(Math.max(proxyA.minY, proxyB.minY));
+					if (key(cx, cy) == key) {
+						proxies.addPair(proxyA, proxyB);
+					}
+				}
+			}
+		}
+		
+		for (int i=0;i<largeCount;i++) {
+			BodyProxy proxyA = large[i];
+			for (int j=0;j<count;j++) {
+				BodyProxy proxyB = list[j];
+				if (proxyB == proxyA) {
+					continue;
+				}
+				// pairs of two large bodies are found from both sides
+				if ((proxyB.handle == 1) && (proxyB.body.getID() < proxyA.body.getID())) {
+					continue;
+				}
+				if (proxyA.pairs(proxyB) && proxyA.overlaps(proxyB)) {
+					proxies.addPair(proxyA, proxyB);
+				}
+			}
+		}
+		
+		proxies.resolvePairs(context, dt);
+	}
+	
+	/**
+	 * Get the cell coordinate containing a position 
+	 * 
+	 * @param value The position along an axis
+	 * @return The cell coordinate along the same axis 
+	 */
+	private int cell(float value) {
+		return (int) Math.floor(value * invCellSize);
+	}
+	
+	/**
+	 * Get the key of a cell
+	 * 
+	 * @param cx The x coordinate of the cell
+	 * @param cy The y coordinate of the cell
+	 * @return The key of the cell
+	 */
+	private long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Get the slot of the table a cell key would ideally be held in
+	 * 
+	 * @param key The key of the cell
+	 * @param mask The mask of the table's size
+	 * @return The slot to start probing from
+	 */
+	private int home(long key, int mask) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+	
+	/**
+	 * Empty the slots used in the last step
+	 */
+	private void clearCells() {
+		for (int i=0;i<usedCount;i++) {
+			occupied[used[i]] = false;
+		}
+		usedCount = 0;
+		entryCount = 0;
+		
+		for (int i=0;i<largeCount;i++) {
+			large[i] = null;
+		}
+		largeCount = 0;
+	}
+	
+	/**
+	 * Add a proxy to each cell it covers
+	 * 
+	 * @param proxy The proxy to add
+	 */
+	private void insert(BodyProxy proxy) {
+		int x1 = cell(proxy.minX);
+		int y1 = cell(proxy.minY);
+		int x2 = cell(proxy.maxX);
+		int y2 = cell(proxy.maxY);
+		
+		if ((long) (x2 - x1 + 1) * (y2 - y1 + 1) > MAX_CELLS) {
+			proxy.handle = 1;
+			if (largeCount == large.length) {
+				BodyProxy[] temp = new BodyProxy[largeCount * 2];
+				System.arraycopy(large, 0, temp, 0, largeCount);
+				large = temp;
+			}
+			large[largeCount++] = proxy;
+			return;
+		}
+		
+		proxy.handle = 0;
+		for (int cx=x1;cx<=x2;cx++) {
+			for (int cy=y1;cy<=y2;cy++) {
+				int slot = findSlot(key(cx, cy));
+				
+				if (entryCount == entries.length) {
+					BodyProxy[] temp = new BodyProxy[entryCount * 2];
+					System.arraycopy(entries, 0, temp, 0, entryCount);
+					entries = temp;
+					int[] tempNext = new int[entryCount * 2];
+					System.arraycopy(next, 0, tempNext, 0, entryCount);
+					next = tempNext;
+				}
+				
+				entries[entryCount] = proxy;
+				next[entryCount] = heads[slot];
+				heads[slot] = entryCount;
+				entryCount++;
+			}
+		}
+	}
+	
+	/**
+	 * Find the slot of the table holding a cell, claiming a slot for
+	 * the cell if it isn't in the table yet
+	 * 
+	 * @param key The key of the cell
+	 * @return The slot holding the cell
+	 */
+	private int findSlot(long key) {
+		if ((usedCount + 1) * 2 > keys.length) {
+			growTable();
+		}
+		
+		int mask = keys.length - 1;
+		int slot = home(key, mask);
+		while (occupied[slot]) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		occupied[slot] = true;
+		keys[slot] = key;
+		heads[slot] = -1;
+		if (usedCount == used.length) {
+			int[] temp = new int[usedCount * 2];
+			System.arraycopy(used, 0, temp, 0, usedCount);
+			used = temp;
+		}
+		used[usedCount++] = slot;
+		
+		return slot;
+	}
+	
+	/**
+	 * Double the size of the table, moving the cells in use to their 
+	 * new slots
+	 */
+	private void growTable() {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+		
+		keys = new long[oldKeys.length * 2];
+		heads = new int[oldKeys.length * 2];
+		occupied = new boolean[oldKeys.length * 2];
+		
+		int mask = keys.length - 1;
+		for (int i=0;i<usedCount;i++) {
+			int oldSlot = used[i];
+			long key = oldKeys[oldSlot];
+			
+			int slot = home(key, mask);
+			while (occupied[slot]) {
+				slot = (slot + 1) & mask;
+			}
+			occupied[slot] = true;
+			keys[slot] = key;
+			heads[slot] = oldHeads[oldSlot];
+			used[i] = slot;
+		}
+	}
+}
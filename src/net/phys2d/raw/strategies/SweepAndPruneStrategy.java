@@ -0,0 +1,118 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw.strategies;
+
+import net.phys2d.raw.BodyList;
+import net.phys2d.raw.BroadCollisionStrategy;
+import net.phys2d.raw.CollisionContext;
+
+/**
+ * A sort and sweep strategy. The bodies are kept sorted by the lower bound
+ * of their bounds along the x axis from one step to the next. Since bodies
+ * only move a little between steps the list is nearly sorted and an insertion
+ * sort restores the order in close to linear time. Sweeping along the sorted
+ * list then only considers bodies whose extents overlap on the x axis, and
+ * only pairs that overlap on both axis are passed on for detailed collision.
+ * <p>
+ * Only pairs that overlap on this step are passed on. The collision context
+ * stamps the arbiters of the pairs it's given and drops those left unstamped
+ * at the end of the step, so pairs that have moved apart need no tracking 
+ * here.
+ */
+public class SweepAndPruneStrategy implements BroadCollisionStrategy {
+	/** The proxies of the bodies, kept sorted by minimum x */
+	private ProxyList proxies = new ProxyList();
+	
+	/**
+	 * Create a new strategy
+	 */
+	public SweepAndPruneStrategy() {
+	}
+	
+	/**
+	 * @see net.phys2d.raw.BroadCollisionStrategy#collideBodies(net.phys2d.raw.CollisionContext, net.phys2d.raw.BodyList, float)
+	 */
+	public void collideBodies(CollisionContext context, BodyList bodies, float dt) {
+		proxies.update(bodies, context.getCategoryFilter());
+		sort();
+		
+		BodyProxy[] sorted = proxies.getProxies();
+		int count = proxies.size();
+		for (int i=0;i<count;i++) {
+			BodyProxy a = sorted[i];
+			
+			for (int j=i+1;j<count;j++) {
+				BodyProxy b = sorted[j];
+				if (b.minX >= a.maxX) {
+					break;
+				}
+				if (!a.pairs(b)) {
+					continue;
+				}
+				if ((b.minY >= a.maxY) || (a.minY >= b.maxY)) {
+					continue;
+				}
+				
+				proxies.addPair(a, b);
+			}
+		}
+		
+		proxies.resolvePairs(context, dt);
+	}
+	
+	/**
+	 * Insertion sort the proxies on their minimum x. The order from the 
+	 * last step is kept so this is close to linear for slowly moving bodies.
+	 */
+	private void sort() {
+		BodyProxy[] sorted = proxies.getProxies();
+		int count = proxies.size();
+		
+		for (int i=1;i<count;i++) {
+			BodyProxy proxy = sorted[i];
+			float key = proxy.minX;
+			
+			int j = i - 1;
+			while ((j >= 0) && (sorted[j].minX > key)) {
+				sorted[j+1] = sorted[j];
+				j--;
+			}
+			sorted[j+1] = proxy;
+		}
+	}
+}
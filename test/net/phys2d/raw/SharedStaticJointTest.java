@@ -0,0 +1,118 @@
+/*
+ * Phys2D - a 2D physics engine based on the work of Erin Catto.
+ * 
+ * This source is provided under the terms of the BSD License.
+ * 
+ * Copyright (c) 2006, Phys2D
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the following 
+ * conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above 
+ *    copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  * Redistributions in binary form must reproduce the above 
+ *    copyright notice, this list of conditions and the following 
+ *    disclaimer in the documentation and/or other materials provided 
+ *    with the distribution.
+ *  * Neither the name of the Phys2D/New Dawn Software nor the names of 
+ *    its contributors may be used to endorse or promote products 
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS 
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, 
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR 
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ */
+package net.phys2d.raw;
+
+import java.util.concurrent.ForkJoinPool;
+
+import net.phys2d.math.Vector2f;
+import net.phys2d.raw.shapes.Box;
+
+/**
+ * Checks that solving islands on a pool gives the same result as solving
+ * them on one thread when two islands are jointed to the same static body.
+ * The static body is turned every step so its geometry has to be brought
+ * up to date while the islands are being solved.
+ */
+public class SharedStaticJointTest {
+	/** The number of steps to run each world for */
+	private static final int STEPS = 600;
+	
+	/**
+	 * Entry point to the test
+	 * 
+	 * @param argv The arguments passed to the test
+	 */
+	public static void main(String[] argv) {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		float[] serial = run(null);
+		float[] pooled = run(pool);
+		pool.shutdown();
+		
+		for (int i = 0; i < serial.length; i++) {
+			if (serial[i] != pooled[i]) {
+				System.err.println("Pooled solve differs from serial solve at "+i
+						+": "+pooled[i]+" != "+serial[i]);
+				System.exit(1);
+			}
+		}
+		System.out.println("OK");
+	}
+	
+	/**
+	 * Run the test scene and record where its bodies came to rest
+	 * 
+	 * @param pool The pool to solve the islands on, or null to solve them 
+	 * on the calling thread
+	 * @return The positions and rotations of the bodies after the run
+	 */
+	private static float[] run(ForkJoinPool pool) {
+		World world = new World(new Vector2f(0, 10), 10);
+		world.setSolverPool(pool);
+		
+		StaticBody anchor = new StaticBody("Anchor", new Box(40, 10));
+		anchor.setPosition(200, 50);
+		world.add(anchor);
+		
+		for (int c = 0; c < 2; c++) {
+			Body prev = anchor;
+			float x = 180 + (c * 40);
+			for (int k = 0; k < 6; k++) {
+				Body link = new Body("Link", new Box(8, 20), 1);
+				link.setPosition(x + (k * 3), 70 + (k * 22));
+				world.add(link);
+				world.add(new BasicJoint(prev, link, new Vector2f(x + (k * 3), 60 + (k * 22))));
+				prev = link;
+			}
+		}
+		
+		for (int i = 0; i < STEPS; i++) {
+			anchor.setRotation(i * 0.01f);
+			world.step(1 / 60f);
+		}
+		
+		BodyList bodies = world.getBodies();
+		float[] result = new float[bodies.size() * 3];
+		for (int i = 0; i < bodies.size(); i++) {
+			Body body = bodies.get(i);
+			result[(i * 3)] = body.getPosition().getX();
+			result[(i * 3) + 1] = body.getPosition().getY();
+			result[(i * 3) + 2] = body.getRotation();
+		}
+		return result;
+	}
+}